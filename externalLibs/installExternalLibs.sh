@@ -3,3 +3,10 @@ mvn install:install-file -Dfile=slf4j-android-1.6.1-CUSTOM.jar \
                          -DartifactId=slf4j-android \
                          -Dversion=1.6.1-CUSTOM \
                          -Dpackaging=jar
+
+# Android API 18 platform, from the Android SDK
+mvn install:install-file -Dfile=$ANDROID_HOME/platforms/android-18/android.jar \
+                         -DgroupId=com.google.android \
+                         -DartifactId=android \
+                         -Dversion=4.3_r2 \
+                         -Dpackaging=jar
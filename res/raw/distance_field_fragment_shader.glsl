@@ -0,0 +1,15 @@
+#extension GL_OES_standard_derivatives : enable
+precision mediump float;
+
+uniform sampler2D u_Texture; // Distance field atlas of the glyphs, 0.5 alpha on their edges
+
+varying vec4 v_Color;
+varying vec2 v_TexCoord;
+
+void main() {
+    float distance = texture2D(u_Texture, v_TexCoord).a;
+    float smoothing = fwidth(distance); // About a pixel of antialiasing at any scale
+    float coverage = smoothstep(0.5 - smoothing, 0.5 + smoothing, distance);
+    
+    gl_FragColor = vec4(v_Color.rgb, v_Color.a * coverage);
+}
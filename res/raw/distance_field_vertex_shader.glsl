@@ -0,0 +1,14 @@
+uniform mat4 u_MVPMatrix;	// Model-View-Projection matrix to transform the vertex by
+
+attribute vec4 a_Position;	// Position of the vertex
+attribute vec4 a_Color;		// Color of the vertex
+attribute vec2 a_TexCoord;	// Texture coordinate of the vertex
+
+varying vec4 v_Color;		// Output vertex color
+varying vec2 v_TexCoord;	// Output texture coordinate
+
+void main() {
+	v_Color = a_Color;
+	v_TexCoord = a_TexCoord;
+	gl_Position = u_MVPMatrix * a_Position;	// Final vertex position
+}
@@ -0,0 +1,13 @@
+#version 300 es
+precision mediump float;
+
+uniform sampler2D u_Texture; // Texture of the sprite, 1x1 white when untextured
+
+in vec4 v_Color;
+in vec2 v_TexCoord;
+
+out vec4 fragColor;
+
+void main() {
+    fragColor = v_Color * texture(u_Texture, v_TexCoord);
+}
@@ -0,0 +1,19 @@
+#version 300 es
+
+in vec4 a_Position;		// Position of the quad corner
+in vec2 a_TexCoord;		// Texture coordinate of the quad corner
+in vec4 a_Transform0;	// Columns of the instance's Model-View-Projection matrix
+in vec4 a_Transform1;
+in vec4 a_Transform2;
+in vec4 a_Transform3;
+in vec4 a_Color;		// Color of the instance
+in vec4 a_TexRegion;	// Left, top, right, and bottom texture coordinates of the instance
+
+out vec4 v_Color;		// Output vertex color
+out vec2 v_TexCoord;	// Output texture coordinate
+
+void main() {
+	v_Color = a_Color;
+	v_TexCoord = mix(a_TexRegion.xy, a_TexRegion.zw, a_TexCoord);
+	gl_Position = mat4(a_Transform0, a_Transform1, a_Transform2, a_Transform3) * a_Position;	// Final vertex position
+}
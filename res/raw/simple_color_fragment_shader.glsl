@@ -1,10 +1,23 @@
 precision mediump float;
 
+#ifdef USE_OPACITY
 uniform float u_Opacity; // Opacity of the color
+#endif
 
+#ifdef UNIFORM_COLOR
+uniform vec4 u_Color;	// Color of every vertex
+#else
 varying vec4 v_Color;	// Input vertex 
+#endif
 
 void main() {
-	gl_FragColor = v_Color * u_Opacity;
+#ifdef UNIFORM_COLOR
+	gl_FragColor = u_Color;
+#else
+	gl_FragColor = v_Color;
+#endif
+#ifdef USE_OPACITY
+	gl_FragColor *= u_Opacity;
+#endif
 }
 
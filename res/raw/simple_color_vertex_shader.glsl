@@ -3,10 +3,14 @@ uniform mat4     u_MVPMatrix; 	// Model-View-Projection matrix to transform the
 attribute vec4   a_Position; 	// Input Position of the vertex
 attribute vec4   a_Color;		// Input color of the vertex
 
+#ifndef UNIFORM_COLOR
 varying vec4	 v_Color;		// Output vertex color
+#endif
 
 void main() {
+#ifndef UNIFORM_COLOR
 	v_Color = a_Color;
+#endif
 
 	gl_Position = u_MVPMatrix * a_Position;	// Final vertex position
 }
\ No newline at end of file
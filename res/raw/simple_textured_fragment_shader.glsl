@@ -1,11 +1,22 @@
 precision mediump float;
 
+#ifdef USE_OPACITY
 uniform float u_Opacity; // Opacity of the texture
+#endif
 uniform sampler2D u_Texture;
+#ifdef ALPHA_TEXTURE
+uniform vec4 u_Tint; // Color of the alpha-only texture
+#endif
 
 varying vec2 v_TexCoord;
 
 void main() {
+#ifdef ALPHA_TEXTURE
+    gl_FragColor = vec4(u_Tint.rgb, u_Tint.a * texture2D(u_Texture, v_TexCoord).a);
+#else
     gl_FragColor = texture2D(u_Texture, v_TexCoord);
+#endif
+#ifdef USE_OPACITY
     gl_FragColor.a *= u_Opacity;
+#endif
 }
\ No newline at end of file
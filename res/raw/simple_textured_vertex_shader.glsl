@@ -1,4 +1,7 @@
 uniform mat4 u_MVPMatrix;	// Model-View-Projection matrix to transform the vertex by
+#ifdef TEX_REGION
+uniform vec4 u_TexRegion;	// Left, top, right, and bottom texture coordinates of the drawn region
+#endif
 
 attribute vec4 a_Position;	// Position of the vertex
 attribute vec2 a_TexCoord;	// Input color of the vertex
@@ -7,6 +10,10 @@ attribute vec2 a_TexCoord;	// Input color of the vertex
 varying vec2 v_TexCoord;		// Output vertex color
 
 void main() {
+#ifdef TEX_REGION
+	v_TexCoord = mix(u_TexRegion.xy, u_TexRegion.zw, a_TexCoord);
+#else
 	v_TexCoord = a_TexCoord; // Pass through the texture coordinate
+#endif
 	gl_Position = u_MVPMatrix * a_Position;	// Final vertex position
 }
\ No newline at end of file
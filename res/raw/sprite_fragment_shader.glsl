@@ -0,0 +1,24 @@
+precision mediump float;
+
+#ifdef USE_OPACITY
+uniform float u_Opacity; // Opacity of the sprite
+#endif
+uniform sampler2D u_Texture; // Texture of the sprite, 1x1 white when untextured
+
+varying vec4 v_Color;
+varying vec2 v_TexCoord;
+
+void main() {
+#ifdef ALPHA_TEXTURE
+    gl_FragColor = vec4(v_Color.rgb, v_Color.a * texture2D(u_Texture, v_TexCoord).a);
+#else
+    gl_FragColor = v_Color * texture2D(u_Texture, v_TexCoord);
+#endif
+#ifdef USE_OPACITY
+#ifdef SOLID_OPACITY
+    gl_FragColor *= u_Opacity; // Solid quads fade as SimpleColorShader's do
+#else
+    gl_FragColor.a *= u_Opacity;
+#endif
+#endif
+}
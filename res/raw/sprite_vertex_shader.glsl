@@ -0,0 +1,21 @@
+uniform mat4 u_MVPMatrix;	// Model-View-Projection matrix to transform the vertex by
+#ifdef TEX_REGION
+uniform vec4 u_TexRegion;	// Left, top, right, and bottom texture coordinates of the drawn region
+#endif
+
+attribute vec4 a_Position;	// Position of the vertex
+attribute vec4 a_Color;		// Color of the vertex
+attribute vec2 a_TexCoord;	// Texture coordinate of the vertex
+
+varying vec4 v_Color;		// Output vertex color
+varying vec2 v_TexCoord;	// Output texture coordinate
+
+void main() {
+	v_Color = a_Color;
+#ifdef TEX_REGION
+	v_TexCoord = mix(u_TexRegion.xy, u_TexRegion.zw, a_TexCoord);
+#else
+	v_TexCoord = a_TexCoord;
+#endif
+	gl_Position = u_MVPMatrix * a_Position;	// Final vertex position
+}
@@ -4,20 +4,25 @@ import android.app.Activity;
 import android.content.Context;
 import android.hardware.SensorManager;
 import android.location.LocationManager;
-import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.eventbus.EventBus;
+import com.google.common.primitives.Ints;
 import com.google.inject.AbstractModule;
 import com.google.inject.Key;
 import com.google.inject.Provides;
 import com.google.inject.name.Names;
 import com.rogue.bauble.device.SensorMeister;
+import com.rogue.bauble.graphics.GeometryCache;
+import com.rogue.bauble.graphics.RenderQueue;
+import com.rogue.bauble.graphics.shaders.ShaderRegistry;
 import com.rogue.bauble.graphics.textures.Animation;
 import com.rogue.bauble.graphics.textures.Texture;
+import com.rogue.bauble.graphics.textures.TextureAtlas;
 import com.rogue.bauble.graphics.textures.TextureFactory;
-import com.rogue.bauble.misc.Constants;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -35,13 +40,17 @@ public abstract class BaseModule extends AbstractModule {
     /** Used to load textures into the OpenGL context. */
     private final TextureFactory textureFactory;
     
+    /** Handles of the atlas pages and textures loaded for the module's textures. */
+    private final List<Integer> textureHandles = new ArrayList<Integer>();
+    
     /** References to all textures used in the module. */
     private final Map<String, Texture> textures = new HashMap<String, Texture>();
     
     /** @param renderer Must not be null. */
     public BaseModule(ProxyRenderer renderer) {
         this.renderer = checkNotNull(renderer);
-        this.textureFactory = new TextureFactory(renderer.getContext());
+        this.textureFactory = new TextureFactory(renderer.getContext(),
+                renderer.getShaderRegistry());
     }
     
     /** Cleans up textures allocated by the module. */
@@ -49,14 +58,8 @@ public abstract class BaseModule extends AbstractModule {
         getView().queueEvent(new Runnable() {
             @Override
             public void run() {
-                int[] toBeDeleted = new int[textures.size()];
-                
-                int texturePos = 0;
-                for (Texture texture : textures.values()) {
-                    toBeDeleted[texturePos++] = texture.getHandle();
-                }
-                
-                GLES20.glDeleteTextures(textures.size(), toBeDeleted, Constants.NO_OFFSET);
+                textureFactory.deleteTextures(Ints.toArray(textureHandles));
+                textureHandles.clear();
             }
         });
     }
@@ -67,11 +70,14 @@ public abstract class BaseModule extends AbstractModule {
         bind(Activity.class).toInstance(renderer.getActivity());
         bind(Context.class).toInstance(renderer.getContext());
         bind(EventBus.class).asEagerSingleton();
+        bind(GeometryCache.class).toInstance(renderer.getGeometryCache());
         bind(GLSurfaceView.class).toInstance(renderer.getView());
         bind(ProxyActivity.class).toInstance(renderer.getActivity());
         bind(ProxyRenderer.class).toInstance(renderer);
         bind(ProxyView.class).toInstance(renderer.getView());
+        bind(RenderQueue.class).toInstance(renderer.getRenderQueue());
         bind(SensorMeister.class).asEagerSingleton();
+        bind(ShaderRegistry.class).toInstance(renderer.getShaderRegistry());
         bind(TextureFactory.class).toInstance(textureFactory);
     }
     
@@ -79,26 +85,40 @@ public abstract class BaseModule extends AbstractModule {
     protected Map<String, Texture> getTextures() { return textures; }
     protected ProxyView getView() { return renderer.getView(); }
     
-    /** Loads the animations registered for this module. */
+    /** 
+     * Loads the animations registered for this module, packing their frames
+     * into atlas pages.
+     */
     protected void loadAnimations() {
-        for (Map.Entry<String, Animation> entry : animations.entrySet()) { // Load the animation textures
-            Animation animation = entry.getValue();
-            
+        final TextureAtlas atlas = new TextureAtlas(textureFactory);
+        
+        for (Animation animation : animations.values()) { // Load the animation textures
             for (Texture texture : animation.getFrames()) {
-                texture.setHandle(textureFactory.loadTexture(texture.getRawImage()));
+                atlas.add(texture, textureFactory.decodeResource(texture.getRawImage()));
             }
-            
-            bind(Key.get(Animation.class, Names.named(entry.getKey()))).toInstance(animation);
+        }
+        textureHandles.addAll(atlas.build());
+        
+        for (Map.Entry<String, Animation> entry : animations.entrySet()) {
+            bind(Key.get(Animation.class, Names.named(entry.getKey()))).toInstance(entry.getValue());
         }
     }
     
-    /** Loads the textures registered for this module. */
+    /**
+     * Loads the textures registered for this module, packing them into atlas
+     * pages. Each texture locates its image within its page, see
+     * Texture.getU0() etc.
+     */
     protected void loadTextures() {
+        final TextureAtlas atlas = new TextureAtlas(textureFactory);
+        
+        for (Texture texture : textures.values()) {
+            atlas.add(texture, textureFactory.decodeResource(texture.getRawImage()));
+        }
+        textureHandles.addAll(atlas.build());
+        
         for (Map.Entry<String, Texture> entry : textures.entrySet()) {
-            Texture texture = entry.getValue();
-            texture.setHandle(textureFactory.loadTexture(texture.getRawImage()));
-            
-            bind(Key.get(Texture.class, Names.named(entry.getKey()))).toInstance(texture);
+            bind(Key.get(Texture.class, Names.named(entry.getKey()))).toInstance(entry.getValue());
         }
     }
     
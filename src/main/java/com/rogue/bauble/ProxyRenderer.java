@@ -7,14 +7,22 @@ import static com.google.common.base.Preconditions.*;
 import com.google.common.eventbus.EventBus;
 import com.rogue.bauble.device.OnPauseEvent;
 import com.rogue.bauble.device.OnResumeEvent;
+import com.rogue.bauble.graphics.DrawUtils;
+import com.rogue.bauble.graphics.FrameContext;
+import com.rogue.bauble.graphics.GeometryCache;
 import com.rogue.bauble.graphics.MVP;
+import com.rogue.bauble.graphics.RenderQueue;
 import com.rogue.bauble.graphics.Renderer;
+import com.rogue.bauble.graphics.shaders.ProgramBinaryCache;
+import com.rogue.bauble.graphics.shaders.ShaderRegistry;
+import com.rogue.bauble.graphics.shaders.ShaderSourceLoader;
 import com.rogue.bauble.io.touch.ClickHandler;
 import com.rogue.bauble.io.touch.DragHandler;
 import com.rogue.bauble.io.touch.GlassTouchHandler;
 import com.rogue.bauble.io.touch.LongPressHandler;
 import com.rogue.bauble.io.touch.ZoomHandler;
 import com.rogue.unipoint.FloatPoint2D;
+import java.io.File;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 import org.slf4j.Logger;
@@ -31,12 +39,30 @@ public abstract class ProxyRenderer implements ClickHandler, DragHandler,
     /** Activity registered with the Android OS. */
     private final ProxyActivity activity;
     
+    /** Name of the cache directory holding linked shader program binaries. */
+    private static final String PROGRAM_BINARY_CACHE_DIR = "shader_programs";
+    
+    /** Time each frame may spend compiling scheduled shaders, in nanoseconds. */
+    private static final long SHADER_WARM_UP_BUDGET_NANOS = 4000000L;
+    
     /** Currently active renderer. */
     private Renderer currentRenderer;
     
+    /** Rendering state reused by every frame to avoid per-frame garbage. */
+    private final FrameContext frame = new FrameContext();
+    
+    /** VBOs shared between everything drawing the same geometry. */
+    private final GeometryCache geometryCache;
+    
     /** Interface for logging events. */
     private static final Logger logger = LoggerFactory.getLogger("ProxyRenderer");
     
+    /** Draws submitted for sorting during the frame. */
+    private final RenderQueue renderQueue;
+    
+    /** Tracks the OpenGL state of the rendering context. */
+    private final ShaderRegistry shaderRegistry = new ShaderRegistry();
+    
     /** Android rendering interface. */
     private ProxyView view;
     
@@ -47,14 +73,29 @@ public abstract class ProxyRenderer implements ClickHandler, DragHandler,
      */
     public ProxyRenderer(final ProxyActivity activity) {
         this.activity = checkNotNull(activity);
+        this.geometryCache = new GeometryCache(shaderRegistry);
+        this.renderQueue = new RenderQueue(shaderRegistry);
+        
+        // Cache linked shader programs across launches and context losses
+        shaderRegistry.setProgramBinaryCache(new ProgramBinaryCache(
+                new File(activity.getCacheDir(), PROGRAM_BINARY_CACHE_DIR)));
+        
+        // Read shader sources off of the GL thread
+        shaderRegistry.setSourceLoader(new ShaderSourceLoader(activity.getApplicationContext()));
     }
     
     public ProxyActivity getActivity() { return activity; }
     
     public Context getContext() { return activity.getApplicationContext(); }
     
+    public GeometryCache getGeometryCache() { return geometryCache; }
+    
     public EventBus getNotifier() { return currentRenderer.getNotifier(); }
     
+    public RenderQueue getRenderQueue() { return renderQueue; }
+    
+    public ShaderRegistry getShaderRegistry() { return shaderRegistry; }
+    
     public ProxyView getView() { return view; }
     
     /** {@inheritDocs} */
@@ -125,7 +166,22 @@ public abstract class ProxyRenderer implements ClickHandler, DragHandler,
         // Draw the background color
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
         
-        currentRenderer.drawFrame(new MVP());
+        frame.beginFrame(System.nanoTime());
+        currentRenderer.drawFrame(frame);
+        
+        // Issue the draws still batched or submitted for sorting
+        shaderRegistry.flushPendingBatch();
+        
+        // Spend some of the frame compiling shaders ahead of their first use
+        shaderRegistry.warmUp(SHADER_WARM_UP_BUDGET_NANOS);
+        
+        // Record how many GL calls the frame needed, how many were avoided, and what was streamed
+        shaderRegistry.endFrame();
+        if (logger.isDebugEnabled()) {
+            logger.debug("GL state changes issued: " + shaderRegistry.getLastFrameIssuedCalls()
+                    + ", elided: " + shaderRegistry.getLastFrameElidedCalls()
+                    + ", vertex bytes streamed: " + shaderRegistry.getLastFrameStreamedBytes());
+        }
     }
 
     /** Posts a pause event when the activity is paused. */
@@ -151,13 +207,30 @@ public abstract class ProxyRenderer implements ClickHandler, DragHandler,
         
         // Set up the view-port
         GLES20.glViewport(0, 0, width, height);
+        
+        // Rebuild the cached projection
+        frame.setSurfaceSize(width, height);
     }
 
     /** {@inheritDocs} */
     @Override
     public void onSurfaceCreated(GL10 arg0, EGLConfig arg1) {
         logger.debug("onSurfaceCreated()...");
+        
+        // The context is new, so none of the tracked state can be trusted
+        shaderRegistry.invalidate();
+        shaderRegistry.selectBackend();
+        geometryCache.invalidate();
+        DrawUtils.invalidate(shaderRegistry);
+        
+        // Enable transparency blending, through the registry so it knows the blend state
+        shaderRegistry.setBlendEnabled(true);
+        shaderRegistry.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        
         currentRenderer = onSurfaceCreatedExt();
+        
+        // Compile the shaders the renderer initialized over the first frames, rather than all at once
+        shaderRegistry.scheduleWarmUp();
     }
     
     /** 
@@ -11,6 +11,10 @@ import com.rogue.bauble.graphics.MVP;
 import com.rogue.bauble.io.touch.PressTimer;
 import com.rogue.bauble.misc.PointHelper;
 import com.rogue.unipoint.FloatPoint2D;
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +39,9 @@ public class ProxyView extends GLSurfaceView {
     /** Interface for logging events. */
     private static final Logger logger = LoggerFactory.getLogger("ProxyView");
     
+    /** Transformation space reused by the click and pick up hit tests. */
+    private final MVP inputSpace = new MVP();
+    
     /** Used for handling drag related input. */
     private final ProxyRenderer renderer;
     
@@ -54,8 +61,9 @@ public class ProxyView extends GLSurfaceView {
         // Set the OpenGL context to be preserved when the application is paused
         setPreserveEGLContextOnPause(true);
         
-        // Enable OpenGL ES 2.0
+        // Enable OpenGL ES 2.0 configurations, preferring an OpenGL ES 3.0 context on them
         setEGLContextClientVersion(2);
+        setEGLContextFactory(new ContextFactory());
         
         // Bind the renderer
         setRenderer(renderer);
@@ -107,7 +115,8 @@ public class ProxyView extends GLSurfaceView {
                     pressTimer.setIsShuttingDown(true);
                     
                     if (!isDragAction) { 
-                        isDragAction = renderer.handlePickUp(new MVP(),
+                        inputSpace.reset();
+                        isDragAction = renderer.handlePickUp(inputSpace,
                                 touchLocation.scaleXBy(1 / device.getWidth())
                                              .scaleYBy(1 / device.getHeight()));
                     }
@@ -137,7 +146,8 @@ public class ProxyView extends GLSurfaceView {
                 }
                 // Otherwise the action was a simple click gesture
                 else {
-                    return renderer.handleClick(new MVP(),
+                    inputSpace.reset();
+                    return renderer.handleClick(inputSpace,
                             touchLocation.scaleXBy(1 / device.getWidth())
                                          .scaleYBy(1 / device.getHeight()));
                 }
@@ -146,6 +156,48 @@ public class ProxyView extends GLSurfaceView {
         return true;
     }
     
+    /**
+     * Creates an OpenGL ES 3.0 context where the device supports one, and
+     * an OpenGL ES 2.0 context otherwise. ES 3.0 is backwards compatible, so
+     * the renderer picks its path from the context it gets (see
+     * ShaderRegistry.selectBackend()).
+     */
+    static final class ContextFactory implements GLSurfaceView.EGLContextFactory {
+        /** EGL_CONTEXT_CLIENT_VERSION, which EGL10 doesn't define. */
+        private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+        
+        /** {@inheritDoc} */
+        @Override
+        public EGLContext createContext(final EGL10 egl, final EGLDisplay display,
+                                        final EGLConfig config) {
+            final EGLContext context = createContext(egl, display, config, 3);
+            
+            if (context != null) {
+                return context;
+            }
+            
+            logger.info("OpenGL ES 3.0 context unavailable, falling back to OpenGL ES 2.0.");
+            return createContext(egl, display, config, 2);
+        }
+        
+        /** @return The context, or null if the version isn't supported. */
+        private EGLContext createContext(final EGL10 egl, final EGLDisplay display,
+                                         final EGLConfig config, final int version) {
+            final int[] attributes = new int[] {EGL_CONTEXT_CLIENT_VERSION, version, EGL10.EGL_NONE};
+            final EGLContext context = egl.eglCreateContext(display, config,
+                    EGL10.EGL_NO_CONTEXT, attributes);
+            
+            return ((context == null) || (context == EGL10.EGL_NO_CONTEXT)) ? null : context;
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public void destroyContext(final EGL10 egl, final EGLDisplay display,
+                                   final EGLContext context) {
+            egl.eglDestroyContext(display, context);
+        }
+    }
+    
     /** Simple zoom gesture detector. */
     final class ZoomGestureDetector extends ScaleGestureDetector.SimpleOnScaleGestureListener {
         private final ProxyRenderer handler;
@@ -0,0 +1,19 @@
+package com.rogue.bauble.graphics;
+
+/**
+ * A draw deferred to a RenderQueue.
+ * 
+ * @author R. Matt McCann
+ */
+public interface DrawCommand {
+    /**
+     * Issues the draw. Called from the GL thread when the queue is flushed.
+     * 
+     * @param tag Value submitted with the command, such as which part of a
+     *            widget to draw.
+     * @param matrix Array holding the Model-View-Projection matrix submitted
+     *               with the command. Must not be modified or held.
+     * @param offset Offset of the matrix within the array.
+     */
+    void draw(int tag, float[] matrix, int offset);
+}
@@ -4,23 +4,32 @@ import android.opengl.GLES20;
 import android.opengl.Matrix;
 import android.util.FloatMath;
 import static com.google.common.base.Preconditions.*;
+import com.rogue.bauble.graphics.shaders.ShaderRegistry;
 import com.rogue.bauble.misc.Constants;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
 import java.util.Stack;
 
 /**
  * Provides a collection of generic drawing functionalities
  * and definitions.
  * 
+ * Each build*Vbo() call uploads a new VBO. Geometry shared between widgets
+ * should instead be acquired from the GeometryCache with the matching
+ * build*Data() vertices, so identical geometry is uploaded once.
+ * 
+ * The shared VBOs and index buffer belong to the current GL context, so
+ * invalidate() must be called whenever the context is (re)created.
+ * 
  * @author R. Matt McCann
  */
 public final class DrawUtils {
     /** Hidden constructor. */
     private DrawUtils() { }
 
-    public static int buildCustomPcVbo(float[] vertexPos, final Color color) {
+    /** @return The vertex positions packed with the provided vertex color. */
+    public static float[] buildCustomPcData(float[] vertexPos, final Color color) {
         checkArgument(vertexPos.length % 3 == 0, "Expected vertexPos.length to"
                 + " be a multiple of 3, got %s", vertexPos.length);
         
@@ -38,16 +47,20 @@ public final class DrawUtils {
             data[iter * stride + 6] = color.getAlpha();
         }
         
-        return packVerticesIntoVbo(data);
+        return data;
+    }
+    
+    public static int buildCustomPcVbo(float[] vertexPos, final Color color) {
+        return packVerticesIntoVbo(buildCustomPcData(vertexPos, color));
     }
     
     /**
-     * Returns the handle to a VBO packed with unit square vertices,
+     * Returns the packed vertex data of unit square vertices,
      * the provided vertex color, and texture coordinates.
      * @param color Uniform color for the vertices
-     * @return Handle to packed VBO.
+     * @return Packed vertex data.
      */
-    public static int buildUnitSquarePctVbo(final Color color) {
+    public static float[] buildUnitSquarePctData(final Color color) {
         final int stride = POS_COLOR_TEX_STRIDE;
         final float[] data = new float[stride * NUM_SQUARE_VERTICES];
         
@@ -60,32 +73,31 @@ public final class DrawUtils {
             data[iter * stride + 4] = color.getGreen();
             data[iter * stride + 5] = color.getBlue();
             data[iter * stride + 6] = color.getAlpha();
-            data[iter * stride + 7] = UNIT_TEX_COORDS[iter * COLOR_DATA_SIZE];
-            data[iter * stride + 8] = UNIT_TEX_COORDS[iter * COLOR_DATA_SIZE + 1];
+            data[iter * stride + 7] = UNIT_TEX_COORDS[iter * TEX_COORD_DATA_SIZE];
+            data[iter * stride + 8] = UNIT_TEX_COORDS[iter * TEX_COORD_DATA_SIZE + 1];
         }
         
-        // Pack the array into a buffer
-        FloatBuffer buffer = ByteBuffer.allocateDirect(data.length * Constants.BYTES_PER_FLOAT)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer();
-        buffer.put(data);
-        
-        // Generate a VBO, load it, and get the handle 
-        final int[] handle = new int[1];
-        GLES20.glGenBuffers(1, handle, Constants.NO_OFFSET);
-        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, 
-                buffer.capacity() * Constants.BYTES_PER_FLOAT, buffer, GLES20.GL_STATIC_DRAW);
-        
-        return handle[0];
+        return data;
     }
     
     /**
-     * Returns the handle of a VBO packed with the unit circle vertices
+     * Returns the handle to a VBO packed with unit square vertices,
+     * the provided vertex color, and texture coordinates.
+     * @param color Uniform color for the vertices
+     * @return Handle to packed VBO.
+     */
+    public static int buildUnitSquarePctVbo(final Color color) {
+        return packVerticesIntoVbo(buildUnitSquarePctData(color));
+    }
+    
+    /**
+     * Returns the packed vertex data of the unit circle vertices
      * of the specified color.
      * 
      * @param color Color of the vertices.
-     * @return Handle of the VBO.
+     * @return Packed vertex data.
      */
-    public static int buildUnitCirclePcVbo(final Color color) {
+    public static float[] buildUnitCirclePcData(final Color color) {
         final int stride = POS_COLOR_STRIDE;
         final float[] data = new float[stride * NUM_CIRCLE_VERTICES];
         final float radius = 0.5f;
@@ -110,17 +122,152 @@ public final class DrawUtils {
             data[vertexIter * stride + 6] = color.getAlpha();
         }
 
-        return packVerticesIntoVbo(data);
+        return data;
+    }
+    
+    /**
+     * Returns the handle of a VBO packed with the unit circle vertices
+     * of the specified color.
+     * 
+     * @param color Color of the vertices.
+     * @return Handle of the VBO.
+     */
+    public static int buildUnitCirclePcVbo(final Color color) {
+        return packVerticesIntoVbo(buildUnitCirclePcData(color));
     }
      
     /**
-     * Returns the handle to a VBO packed with unit square vertices
-     * and the provided vertex color.
+     * Returns the packed vertex data of the 4 unit quad vertices
+     * and the provided vertex color, to be drawn with the quad index buffer.
+     * 
+     * @param color Color of the vertices
+     * @return Packed vertex data.
+     */
+    public static float[] buildUnitQuadPcData(final Color color) {
+        final int stride = POS_COLOR_STRIDE;
+        final float[] data = new float[stride * NUM_QUAD_VERTICES];
+        
+        // Populate the data array
+        for (int iter = 0; iter < NUM_QUAD_VERTICES; iter++) {
+            data[iter * stride] = UNIT_QUAD_POSITIONS[iter * POSITION_DATA_SIZE];
+            data[iter * stride + 1] = UNIT_QUAD_POSITIONS[iter * POSITION_DATA_SIZE + 1];
+            data[iter * stride + 2] = UNIT_QUAD_POSITIONS[iter * POSITION_DATA_SIZE + 2];
+            data[iter * stride + 3] = color.getRed();
+            data[iter * stride + 4] = color.getGreen();
+            data[iter * stride + 5] = color.getBlue();
+            data[iter * stride + 6] = color.getAlpha();
+        }
+        
+        return data;
+    }
+    
+    /**
+     * Returns the handle to a VBO packed with the 4 unit quad vertices
+     * and the provided vertex color, to be drawn with the quad index buffer.
      * 
      * @param color Color of the vertices
      * @return Handle to the VBO
      */
-    public static int buildUnitSquarePcVbo(final Color color) {
+    public static int buildUnitQuadPcVbo(final Color color) {
+        return packVerticesIntoVbo(buildUnitQuadPcData(color));
+    }
+    
+    /**
+     * Returns the packed vertex data of the 4 unit quad vertices, the
+     * provided vertex color, and texture coordinates, to be drawn with the
+     * quad index buffer.
+     * 
+     * @param color Uniform color for the vertices
+     * @return Packed vertex data.
+     */
+    public static float[] buildUnitQuadPctData(final Color color) {
+        final int stride = POS_COLOR_TEX_STRIDE;
+        final float[] data = new float[stride * NUM_QUAD_VERTICES];
+        
+        // Populate the data array
+        for (int iter = 0; iter < NUM_QUAD_VERTICES; iter++) {
+            data[iter * stride] = UNIT_QUAD_POSITIONS[iter * POSITION_DATA_SIZE];
+            data[iter * stride + 1] = UNIT_QUAD_POSITIONS[iter * POSITION_DATA_SIZE + 1];
+            data[iter * stride + 2] = UNIT_QUAD_POSITIONS[iter * POSITION_DATA_SIZE + 2];
+            data[iter * stride + 3] = color.getRed();
+            data[iter * stride + 4] = color.getGreen();
+            data[iter * stride + 5] = color.getBlue();
+            data[iter * stride + 6] = color.getAlpha();
+            data[iter * stride + 7] = UNIT_QUAD_TEX_COORDS[iter * TEX_COORD_DATA_SIZE];
+            data[iter * stride + 8] = UNIT_QUAD_TEX_COORDS[iter * TEX_COORD_DATA_SIZE + 1];
+        }
+        
+        return data;
+    }
+    
+    /**
+     * Returns the handle to a VBO packed with the 4 unit quad vertices, the
+     * provided vertex color, and texture coordinates, to be drawn with the
+     * quad index buffer.
+     * 
+     * @param color Uniform color for the vertices
+     * @return Handle to packed VBO.
+     */
+    public static int buildUnitQuadPctVbo(final Color color) {
+        return packVerticesIntoVbo(buildUnitQuadPctData(color));
+    }
+    
+    /**
+     * Returns the vertex data of the 4 unit quad vertices packed as the
+     * layout describes, to be drawn with the quad index buffer.
+     * 
+     * @param layout Layout of the vertices. Must not be null.
+     * @param color Color of the vertices. Must not be null if the layout holds colors.
+     * @return Packed vertex data.
+     */
+    public static ByteBuffer buildUnitQuadData(final VertexLayout layout, final Color color) {
+        return layout.pack(NUM_QUAD_VERTICES, UNIT_QUAD_POSITIONS, color, UNIT_QUAD_TEX_COORDS);
+    }
+    
+    /**
+     * Returns the handle to a VBO packed with the 4 unit quad vertices as the
+     * layout describes, to be drawn with the quad index buffer.
+     * 
+     * @param layout Layout of the vertices. Must not be null.
+     * @param color Color of the vertices. Must not be null if the layout holds colors.
+     * @return Handle to packed VBO.
+     */
+    public static int buildUnitQuadVbo(final VertexLayout layout, final Color color) {
+        return packVerticesIntoVbo(buildUnitQuadData(layout, color));
+    }
+    
+    /**
+     * Returns the vertex data of the unit square vertices packed as the
+     * layout describes.
+     * 
+     * @param layout Layout of the vertices. Must not be null.
+     * @param color Color of the vertices. Must not be null if the layout holds colors.
+     * @return Packed vertex data.
+     */
+    public static ByteBuffer buildUnitSquareData(final VertexLayout layout, final Color color) {
+        return layout.pack(NUM_SQUARE_VERTICES, UNIT_POSITIONS, color, UNIT_TEX_COORDS);
+    }
+    
+    /**
+     * Returns the handle to a VBO packed with the unit square vertices as the
+     * layout describes.
+     * 
+     * @param layout Layout of the vertices. Must not be null.
+     * @param color Color of the vertices. Must not be null if the layout holds colors.
+     * @return Handle to packed VBO.
+     */
+    public static int buildUnitSquareVbo(final VertexLayout layout, final Color color) {
+        return packVerticesIntoVbo(buildUnitSquareData(layout, color));
+    }
+    
+    /**
+     * Returns the packed vertex data of unit square vertices
+     * and the provided vertex color.
+     * 
+     * @param color Color of the vertices
+     * @return Packed vertex data.
+     */
+    public static float[] buildUnitSquarePcData(final Color color) {
         final int stride = POS_COLOR_STRIDE;
         final float[] data = new float[stride * NUM_SQUARE_VERTICES];
         
@@ -135,7 +282,18 @@ public final class DrawUtils {
             data[iter * stride + 6] = color.getAlpha();
         }
         
-        return packVerticesIntoVbo(data);
+        return data;
+    }
+    
+    /**
+     * Returns the handle to a VBO packed with unit square vertices
+     * and the provided vertex color.
+     * 
+     * @param color Color of the vertices
+     * @return Handle to the VBO
+     */
+    public static int buildUnitSquarePcVbo(final Color color) {
+        return packVerticesIntoVbo(buildUnitSquarePcData(color));
     }
     
     public static float[] collapseMVP(float[] modelViewMatrix, float[] projectionMatrix) {
@@ -150,30 +308,94 @@ public final class DrawUtils {
     
     /**
      * Returns the handle to a VBO packed with unit square vertices
-     * and texture coordinates.
+     * and texture coordinates, as VertexLayout.PACKED_POS_TEX lays out.
      * 
      * @return Handle to packed VBO.
      */
     public static int getUnitSquarePtVbo() {
         if (mUnitSquareVBOHandle == null) {
-            final int stride = POS_TEX_STRIDE;
-            final float[] data = new float[stride * NUM_SQUARE_VERTICES];
-            
-            // Populate the data array
-            for (int iter = 0; iter < NUM_SQUARE_VERTICES; iter++) {
-                data[iter * stride] = UNIT_POSITIONS[iter * POSITION_DATA_SIZE];
-                data[iter * stride + 1] = UNIT_POSITIONS[iter * POSITION_DATA_SIZE + 1];
-                data[iter * stride + 2] = UNIT_POSITIONS[iter * POSITION_DATA_SIZE + 2];
-                data[iter * stride + 3] = UNIT_TEX_COORDS[iter * TEX_COORD_DATA_SIZE];
-                data[iter * stride + 4] = UNIT_TEX_COORDS[iter * TEX_COORD_DATA_SIZE + 1];
-            }
-
-            // Generate a VBO, load it, and get the handle 
-            mUnitSquareVBOHandle = packVerticesIntoVbo(data);
+            mUnitSquareVBOHandle = buildUnitSquareVbo(VertexLayout.PACKED_POS_TEX, null);
         }
         
         return mUnitSquareVBOHandle;
     }
+    
+    /**
+     * Returns the handle of the shared element buffer of quad indices,
+     * covering MAX_INDEXED_QUADS quads of 4 vertices each, laid out as in
+     * the unit quad VBOs. Draw n quads with n * NUM_QUAD_INDICES indices.
+     * 
+     * @return Handle of the element buffer.
+     */
+    public static int getQuadIndexBuffer() {
+        if (mQuadIndexBufferHandle == null) {
+            final ShortBuffer indices = ByteBuffer.allocateDirect(
+                    MAX_INDEXED_QUADS * NUM_QUAD_INDICES * Constants.BYTES_PER_SHORT)
+                    .order(ByteOrder.nativeOrder()).asShortBuffer();
+            for (int quad = 0; quad < MAX_INDEXED_QUADS; quad++) {
+                final int first = quad * NUM_QUAD_VERTICES;
+                
+                for (int index : UNIT_QUAD_INDICES) {
+                    indices.put((short) (first + index));
+                }
+            }
+            indices.position(Constants.NO_OFFSET);
+            
+            final int[] handle = new int[1];
+            GLES20.glGenBuffers(1, handle, Constants.NO_OFFSET);
+            bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, handle[0]);
+            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 
+                    indices.capacity() * Constants.BYTES_PER_SHORT, indices, GLES20.GL_STATIC_DRAW);
+            
+            mQuadIndexBufferHandle = handle[0];
+        }
+        
+        return mQuadIndexBufferHandle;
+    }
+    
+    /**
+     * Returns the handle to a VBO packed with the 4 white unit quad vertices
+     * and texture coordinates, as VertexLayout.PACKED_POS_COLOR_TEX lays out,
+     * to be drawn with the quad index buffer.
+     * 
+     * @return Handle to packed VBO.
+     */
+    public static int getUnitQuadPctVbo() {
+        if (mUnitQuadPctVBOHandle == null) {
+            mUnitQuadPctVBOHandle = buildUnitQuadVbo(VertexLayout.PACKED_POS_COLOR_TEX, Color.WHITE);
+        }
+        
+        return mUnitQuadPctVBOHandle;
+    }
+    
+    /**
+     * Returns the handle to a VBO packed with the 4 unit quad vertices and
+     * texture coordinates, as VertexLayout.PACKED_POS_TEX lays out, to be
+     * drawn with the quad index buffer.
+     * 
+     * @return Handle to packed VBO.
+     */
+    public static int getUnitQuadPtVbo() {
+        if (mUnitQuadVBOHandle == null) {
+            mUnitQuadVBOHandle = buildUnitQuadVbo(VertexLayout.PACKED_POS_TEX, null);
+        }
+        
+        return mUnitQuadVBOHandle;
+    }
+    
+    /**
+     * Returns the handle to a VBO packed with white unit square vertices
+     * and texture coordinates, as VertexLayout.PACKED_POS_COLOR_TEX lays out.
+     * 
+     * @return Handle to packed VBO.
+     */
+    public static int getUnitSquarePctVbo() {
+        if (mUnitSquarePctVBOHandle == null) {
+            mUnitSquarePctVBOHandle = buildUnitSquareVbo(VertexLayout.PACKED_POS_COLOR_TEX, Color.WHITE);
+        }
+        
+        return mUnitSquarePctVBOHandle;
+    }
 
     /**
      * Sets up a 2D orthographic projection.
@@ -204,21 +426,63 @@ public final class DrawUtils {
      */
     public static int packVerticesIntoVbo(final float[] data) {
         // Pack the array into a buffer
-        FloatBuffer buffer = ByteBuffer.allocateDirect(data.length * Constants.BYTES_PER_FLOAT)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer();
-        buffer.put(data);
-        buffer.position(Constants.NO_OFFSET);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length * Constants.BYTES_PER_FLOAT)
+                .order(ByteOrder.nativeOrder());
+        buffer.asFloatBuffer().put(data);
         
+        return packVerticesIntoVbo(buffer);
+    }
+    
+    /**
+     * Packs the vertex data into a VBO.
+     * 
+     * @param data Data to pack, such as from VertexLayout.pack(), from its position to its limit.
+     * @return Handle of the VBO.
+     */
+    public static int packVerticesIntoVbo(final ByteBuffer data) {
         // Generate a VBO, load it, and get the handle 
         final int[] handle = new int[1];
         GLES20.glGenBuffers(1, handle, Constants.NO_OFFSET);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, handle[0]);
-        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, 
-                buffer.capacity() * Constants.BYTES_PER_FLOAT, buffer, GLES20.GL_STATIC_DRAW);
+        bindBuffer(GLES20.GL_ARRAY_BUFFER, handle[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, data.remaining(), data, GLES20.GL_STATIC_DRAW);
         
         return handle[0];
     }
     
+    /**
+     * Binds a buffer through the ShaderRegistry passed to invalidate(), so its
+     * view of the binding stays accurate, or directly if there is none yet.
+     * 
+     * @param target GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER.
+     * @param buffer OpenGL buffer handle.
+     */
+    private static void bindBuffer(final int target, final int buffer) {
+        if (mShaderRegistry == null) {
+            GLES20.glBindBuffer(target, buffer);
+        } else if (target == GLES20.GL_ARRAY_BUFFER) {
+            mShaderRegistry.bindArrayBuffer(buffer);
+        } else {
+            mShaderRegistry.bindElementBuffer(buffer);
+        }
+    }
+    
+    /**
+     * Forgets the shared VBOs and index buffer, which don't survive the loss
+     * of the GL context, so they are built again when next requested. Must be
+     * called when the GL context is (re)created.
+     * 
+     * @param shaderRegistry Tracks the buffer bindings from now on. Must not be null.
+     */
+    public static void invalidate(final ShaderRegistry shaderRegistry) {
+        mShaderRegistry = checkNotNull(shaderRegistry);
+        
+        mQuadIndexBufferHandle = null;
+        mUnitQuadPctVBOHandle = null;
+        mUnitQuadVBOHandle = null;
+        mUnitSquarePctVBOHandle = null;
+        mUnitSquareVBOHandle = null;
+    }
+    
     public static float[] popMatrix() {
         return mMatrixStack.pop();
     }
@@ -247,6 +511,15 @@ public final class DrawUtils {
     private static final int NUM_SQUARE_VERTICES = 6;
     private static final int TEX_COORD_DATA_SIZE = 2;
     
+    /** Number of quads covered by the quad index buffer, as many as 16-bit indices can address. */
+    public static final int MAX_INDEXED_QUADS = 16384;
+    
+    /** Number of indices drawn per quad. */
+    public static final int NUM_QUAD_INDICES = 6;
+    
+    /** Number of vertices per indexed quad. */
+    public static final int NUM_QUAD_VERTICES = 4;
+    
     public static final int POS_COLOR_STRIDE = POSITION_DATA_SIZE 
             + COLOR_DATA_SIZE;
     public static final int POS_COLOR_TEX_STRIDE = POSITION_DATA_SIZE
@@ -262,6 +535,22 @@ public final class DrawUtils {
         0.5f, -0.5f, 0.0f, // Bottom right
         0.5f, 0.5f, 0.0f // Top right
     };
+    private static final float[] UNIT_QUAD_POSITIONS = new float[] {
+        -0.5f, 0.5f, 0.0f, // Top left
+        -0.5f, -0.5f, 0.0f, // Bottom left
+        0.5f, 0.5f, 0.0f, // Top right
+        0.5f, -0.5f, 0.0f // Bottom right
+    };
+    private static final float[] UNIT_QUAD_TEX_COORDS = new float[] {
+        0.0f, 0.0f,
+        0.0f, 1.0f,
+        1.0f, 0.0f,
+        1.0f, 1.0f
+    };
+    
+    /** Indices of the unit quad's two triangles, wound as UNIT_POSITIONS. */
+    private static final int[] UNIT_QUAD_INDICES = new int[] {0, 1, 2, 1, 3, 2};
+    
     private static final float[] UNIT_TEX_COORDS = new float[] {
         0.0f, 0.0f,                 
         0.0f, 1.0f,
@@ -271,6 +560,11 @@ public final class DrawUtils {
         1.0f, 0.0f
     };
 
+    private static Integer mQuadIndexBufferHandle;
+    private static ShaderRegistry mShaderRegistry;
+    private static Integer mUnitQuadPctVBOHandle;
+    private static Integer mUnitQuadVBOHandle;
+    private static Integer mUnitSquarePctVBOHandle;
     private static Integer mUnitSquareVBOHandle;
     private static Stack<float[]> mMatrixStack = new Stack<float[]>();
 }
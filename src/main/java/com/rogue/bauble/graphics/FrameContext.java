@@ -0,0 +1,136 @@
+package com.rogue.bauble.graphics;
+
+import android.opengl.Matrix;
+import static com.google.common.base.Preconditions.checkArgument;
+import com.rogue.bauble.misc.Constants;
+import com.rogue.unipoint.FloatPoint2D;
+
+/**
+ * Per-frame rendering state that is reused from frame to frame, so that a
+ * steady state render pass produces no garbage. Owns the MVP stacks, the
+ * projection matrix (rebuilt only when the surface changes), a ring of
+ * scratch points, and the start time and index of the current frame.
+ * 
+ * Scratch points, and the scratch matrices of getMVP().scratch(), are handed
+ * out round-robin and reclaimed at the start of every frame. They must not be
+ * held across frames, nor across render calls of child objects, which may
+ * cycle through the same ring.
+ * 
+ * @author R. Matt McCann
+ */
+public class FrameContext {
+    /** Number of points in the scratch point ring. */
+    public static final int NUM_SCRATCH_POINTS = 32;
+    
+    /** Number of frames started since the context was created. */
+    private long frameIndex = -1;
+    
+    /** Start time of the current frame in nanoseconds, per System.nanoTime(). */
+    private long frameTime = 0;
+    
+    /** Transformation space of the frame. */
+    private final MVP mvp = new MVP();
+    
+    /** Index of the next scratch point to be handed out. */
+    private int nextScratchPoint = 0;
+    
+    /** Orthographic projection matrix, cached between surface changes. */
+    private final float[] projection = new float[Constants.MATRIX_SIZE];
+    
+    /** Ring of scratch points. */
+    private final FloatPoint2D[] scratchPoints = new FloatPoint2D[NUM_SCRATCH_POINTS];
+    
+    /** Height of the rendering surface in pixels. */
+    private int surfaceHeight = 1;
+    
+    /** Width of the rendering surface in pixels. */
+    private int surfaceWidth = 1;
+    
+    /** Constructor. */
+    public FrameContext() {
+        for (int pointIter = 0; pointIter < NUM_SCRATCH_POINTS; pointIter++) {
+            scratchPoints[pointIter] = new FloatPoint2D(0, 0);
+        }
+        
+        buildProjection();
+    }
+    
+    /**
+     * Starts a new frame, resetting the MVP stacks to the cached projection
+     * and reclaiming every scratch point and matrix.
+     * 
+     * @param frameTime Start time of the frame in nanoseconds, per System.nanoTime().
+     */
+    public void beginFrame(final long frameTime) {
+        frameIndex++;
+        this.frameTime = frameTime;
+        nextScratchPoint = 0;
+        
+        mvp.reset();
+        mvp.pushP(projection, Constants.NO_OFFSET);
+    }
+    
+    /** Calculates the orthographic projection matrix. */
+    private void buildProjection() {
+        // Set up the parameters of the projection matrix
+        float near = -1.0f;
+        float far = 1.0f;
+        float left = -0.5f;
+        float right = 0.5f;
+        float top = 0.5f;
+        float bottom = -0.5f;
+        
+        Matrix.orthoM(projection, Constants.NO_OFFSET, left, right, bottom, top, near, far);
+    }
+    
+    public float getAspectRatio() { return (float) surfaceWidth / surfaceHeight; }
+    
+    public long getFrameIndex() { return frameIndex; }
+    
+    public long getFrameTime() { return frameTime; }
+    
+    public MVP getMVP() { return mvp; }
+    
+    /**
+     * Returns the cached projection matrix. Must not be modified.
+     * 
+     * @return Projection matrix.
+     */
+    public float[] getProjection() { return projection; }
+    
+    public int getSurfaceHeight() { return surfaceHeight; }
+    
+    public int getSurfaceWidth() { return surfaceWidth; }
+    
+    /**
+     * Hands out the next scratch point of the ring, zeroed.
+     * 
+     * @return Scratch point, valid until the ring wraps or the frame ends.
+     */
+    public FloatPoint2D scratchPoint() {
+        final FloatPoint2D point = scratchPoints[nextScratchPoint];
+        
+        nextScratchPoint = (nextScratchPoint + 1) % NUM_SCRATCH_POINTS;
+        point.setX(0);
+        point.setY(0);
+        
+        return point;
+    }
+    
+    /**
+     * Updates the surface dimensions and rebuilds the cached projection.
+     * Should be called from GLSurfaceView.Renderer.onSurfaceChanged().
+     * 
+     * @param width Must be > 0.
+     * @param height Must be > 0.
+     */
+    public void setSurfaceSize(final int width, final int height) {
+        checkArgument(width > 0, "Width must be > 0, got %s", width);
+        checkArgument(height > 0, "Height must be > 0, got %s", height);
+        
+        this.surfaceWidth = width;
+        this.surfaceHeight = height;
+        
+        buildProjection();
+    }
+}
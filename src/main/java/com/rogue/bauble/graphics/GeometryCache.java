@@ -0,0 +1,210 @@
+package com.rogue.bauble.graphics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.rogue.bauble.graphics.shaders.ShaderRegistry;
+import com.rogue.bauble.misc.Constants;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares VBOs between everything drawing the same geometry. VBOs are keyed
+ * by the name of their shape and their vertex data, so 200 identical panels
+ * upload one VBO between them. Each acquire() returns a Geometry that must be
+ * passed to release() once its VBO is no longer drawn, and the VBO is deleted
+ * when its last user releases it, so buffer memory stays flat as widgets come
+ * and go. As buffer handles are reused by later GL contexts, releases are
+ * matched by Geometry rather than by handle, so a release left over from a
+ * lost context never touches a VBO of the current one.
+ * 
+ * Must only be used from the GL thread.
+ * 
+ * @author R. Matt McCann
+ */
+public class GeometryCache {
+    /** Cached VBOs, by shape and vertex data. */
+    private final Map<Key, Geometry> entries = new HashMap<Key, Geometry>();
+    
+    /** Size of the vertex data of the cached VBOs in bytes. */
+    private long numBytes = 0;
+    
+    /** Used to delete released VBOs. */
+    private final ShaderRegistry registry;
+    
+    /** @param registry Must not be null. */
+    public GeometryCache(final ShaderRegistry registry) {
+        this.registry = checkNotNull(registry);
+    }
+    
+    /**
+     * Returns a VBO packed with the vertex data, uploading it only if no
+     * other user holds the same geometry.
+     * 
+     * @param shape Name of the shape, such as "UnitSquarePc". Must not be null.
+     * @param data Packed vertex data, such as from DrawUtils.buildUnitSquarePcData(). Must not
+     *             be null, nor modified afterwards, as it keys the cached VBO.
+     * @return The shared VBO. Must be released with release().
+     */
+    public Geometry acquire(final String shape, final float[] data) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length * Constants.BYTES_PER_FLOAT)
+                .order(ByteOrder.nativeOrder());
+        buffer.asFloatBuffer().put(data);
+        
+        return acquire(shape, buffer);
+    }
+    
+    /**
+     * Returns a VBO packed with the vertex data, uploading it only if no
+     * other user holds the same geometry.
+     * 
+     * @param shape Name of the shape, such as "UnitSquare/PackedPosColor". Must not be null.
+     * @param data Packed vertex data from its position to its limit, such as from
+     *             DrawUtils.buildUnitSquareData(). Must not be null, nor modified afterwards,
+     *             as it keys the cached VBO.
+     * @return The shared VBO. Must be released with release().
+     */
+    public Geometry acquire(final String shape, final ByteBuffer data) {
+        final Key key = new Key(checkNotNull(shape), checkNotNull(data));
+        Geometry entry = entries.get(key);
+        
+        if (entry == null) { // If no one holds the geometry yet
+            entry = new Geometry(key, DrawUtils.packVerticesIntoVbo(data));
+            entries.put(key, entry);
+            numBytes += data.remaining();
+        }
+        entry.refCount++;
+        
+        return entry;
+    }
+    
+    /**
+     * @param vertexPos Vertex positions, 3 floats per vertex. Must not be null.
+     * @param color Must not be null.
+     * @return A VBO, as DrawUtils.buildCustomPcVbo() builds. Must be released.
+     */
+    public Geometry acquireCustomPcVbo(final float[] vertexPos, final Color color) {
+        return acquire("CustomPc", DrawUtils.buildCustomPcData(vertexPos, color));
+    }
+    
+    /**
+     * @param color Must not be null.
+     * @return A VBO, as DrawUtils.buildUnitCirclePcVbo() builds. Must be released.
+     */
+    public Geometry acquireUnitCirclePcVbo(final Color color) {
+        return acquire("UnitCirclePc", DrawUtils.buildUnitCirclePcData(color));
+    }
+    
+    /**
+     * @param color Must not be null.
+     * @return A VBO, as DrawUtils.buildUnitSquarePcVbo() builds. Must be released.
+     */
+    public Geometry acquireUnitSquarePcVbo(final Color color) {
+        return acquire("UnitSquarePc", DrawUtils.buildUnitSquarePcData(color));
+    }
+    
+    /**
+     * @param color Must not be null.
+     * @return A VBO, as DrawUtils.buildUnitSquarePctVbo() builds. Must be released.
+     */
+    public Geometry acquireUnitSquarePctVbo(final Color color) {
+        return acquire("UnitSquarePct", DrawUtils.buildUnitSquarePctData(color));
+    }
+    
+    /**
+     * @param layout Layout of the vertices. Must not be null.
+     * @param color Must not be null if the layout holds colors.
+     * @return A VBO, as DrawUtils.buildUnitSquareVbo() builds. Must be released.
+     */
+    public Geometry acquireUnitSquareVbo(final VertexLayout layout, final Color color) {
+        return acquire("UnitSquare/" + layout.getName(), DrawUtils.buildUnitSquareData(layout, color));
+    }
+    
+    /** @return Size of the vertex data of the cached VBOs in bytes. */
+    public long getNumBytes() { return numBytes; }
+    
+    /** @return Number of VBOs held by the cache. */
+    public int getNumVbos() { return entries.size(); }
+    
+    /**
+     * Forgets the cached VBOs without deleting them, as after the GL context
+     * is lost. Releases of geometry acquired before are ignored.
+     */
+    public void invalidate() {
+        entries.clear();
+        numBytes = 0;
+    }
+    
+    /**
+     * Releases geometry returned by acquire(), deleting its VBO if this was
+     * its last user. Geometry no longer cached, such as from a lost context,
+     * is ignored.
+     * 
+     * @param geometry Must not be null.
+     */
+    public void release(final Geometry geometry) {
+        if (entries.get(checkNotNull(geometry).key) != geometry) { // If the VBO is already gone
+            return;
+        }
+        
+        geometry.refCount--;
+        if (geometry.refCount == 0) { // If this was the last user of the geometry
+            entries.remove(geometry.key);
+            numBytes -= geometry.key.data.remaining();
+            registry.deleteBuffers(geometry.vbo);
+        }
+    }
+    
+    /** A cached VBO and the number of users holding it. */
+    public static final class Geometry {
+        /** Shape and vertex data of the VBO. */
+        private final Key key;
+        
+        /** Number of acquires not yet released. */
+        private int refCount = 0;
+        
+        /** Handle of the VBO. */
+        private final int vbo;
+        
+        Geometry(final Key key, final int vbo) {
+            this.key = key;
+            this.vbo = vbo;
+        }
+        
+        /** @return Handle of the VBO, valid until the geometry is released. */
+        public int getVbo() { return vbo; }
+    }
+    
+    /** Shape and vertex data of a VBO. */
+    private static final class Key {
+        /** Packed vertex data. */
+        private final ByteBuffer data;
+        
+        /** Hash of the shape and vertex data. */
+        private final int hash;
+        
+        /** Name of the shape. */
+        private final String shape;
+        
+        Key(final String shape, final ByteBuffer data) {
+            this.data = data;
+            this.hash = 31 * shape.hashCode() + data.hashCode();
+            this.shape = shape;
+        }
+        
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            
+            final Key key = (Key) other;
+            return (hash == key.hash) && shape.equals(key.shape) && data.equals(key.data);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
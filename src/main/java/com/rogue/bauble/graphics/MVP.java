@@ -2,29 +2,123 @@ package com.rogue.bauble.graphics;
 
 import android.opengl.Matrix;
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import com.rogue.bauble.misc.Constants;
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
- * Model-View-Projection matrices manager. This class manages 
- * the transformations applied to each of these matrices using 
+ * Model-View-Projection matrices manager. This class manages
+ * the transformations applied to each of these matrices using
  * stacks. Note: Model and View are treated as one entity
  * 
+ * The model stack, projection stack, and a ring of scratch matrices all live
+ * in a single preallocated arena, so the offset based operations
+ * (pushM(), scratchM(), collapseScratch(), etc.) never allocate. Offsets
+ * returned by these operations index into getArena(). As the stacks no longer
+ * hold their own arrays, peekM() and peekP() can't hand out the top matrix
+ * itself, and are kept only as deprecated wrappers over peekCopyM() and
+ * peekCopyP(). To modify the top matrix, use the arena at topM() and topP().
+ * 
+ * The projection-model product of each model stack level is cached in the
+ * arena as well, alongside a copy of the model matrix it was collapsed from
+ * and a single copy of the projection matrix the products were collapsed
+ * with, and is only recomputed after that level (or the projection) changes.
+ * As the cache compares the stacks against those copies, the matrices at
+ * offsets handed out by pushM(), topM(), pushP() and topP() may be modified
+ * in place at any time, without invalidating anything. Use collapseTop() and collapseLocal() to take
+ * advantage of it.
+ * Pushing a 2D affine transformation with pushM(Affine2D) extends the cached
+ * product of the parent level instead of recomputing it.
+ * 
  * @author R. Matt McCann
  */
 public class MVP {
-    /** Transformation history of the model matrix. */
-    private Stack<float[]> modelMatrices = new Stack<float[]>();
+    /** Default maximum depth of the model-view stack. */
+    public static final int DEFAULT_MAX_MODEL_DEPTH = 32;
+    
+    /** Default maximum depth of the projection stack. */
+    public static final int DEFAULT_MAX_PROJECTION_DEPTH = 4;
+    
+    /** Number of matrices in the scratch ring. */
+    public static final int NUM_SCRATCH_MATRICES = 16;
+    
+    /** Backing storage of the model stack, projection stack, and scratch ring. */
+    private final float[] arena;
+    
+    /** Arena offset of the cached collapsed matrix of the bottom model stack level. */
+    private final int collapsedBase;
+    
+    /** Arena offset of the projection matrix the cached collapsed matrices were collapsed with. */
+    private final int collapsedProjection;
+    
+    /** Arena offset of the model matrix the bottom model stack level was last collapsed from. */
+    private final int collapsedSourceBase;
+    
+    /** Cached 2D inverse of the collapsed matrix of each model stack level. */
+    private final Affine2D[] collapsedInverses;
+    
+    /** Whether or not the cached collapsed matrix of each model stack level is up to date. */
+    private final boolean[] isCollapsedValid;
+    
+    /** Whether or not the cached collapsed inverse of each model stack level is up to date. */
+    private final boolean[] isInverseValid;
     
-    /** Transformation history of the projection matrix. */
-    private Stack<float[]> projectionMatrices = new Stack<float[]>();
+    /** Whether or not the collapsed matrix of each model stack level is invertible. */
+    private final boolean[] isInvertible;
+    
+    /** Maximum depth of the model-view stack. */
+    private final int maxModelDepth;
+    
+    /** Maximum depth of the projection stack. */
+    private final int maxProjectionDepth;
+    
+    /** Index of the matrix on top of the model-view stack. */
+    private int modelDepth = 0;
+    
+    /** Index of the next scratch matrix to be handed out. */
+    private int nextScratch = 0;
+    
+    /** Arena offset of the bottom of the projection stack. */
+    private final int projectionBase;
+    
+    /** Index of the matrix on top of the projection stack. */
+    private int projectionDepth = 0;
+    
+    /** Arena offset of the first scratch matrix. */
+    private final int scratchBase;
     
     /** Constructor. */
     public MVP() {
-        float[] identityMatrix = new float[Constants.MATRIX_SIZE];
-        Matrix.setIdentityM(identityMatrix, Constants.NO_OFFSET);
-        modelMatrices.push(identityMatrix);
-        projectionMatrices.push(identityMatrix);
+        this(DEFAULT_MAX_MODEL_DEPTH, DEFAULT_MAX_PROJECTION_DEPTH);
+    }
+    
+    /**
+     * @param maxModelDepth Must be > 0.
+     * @param maxProjectionDepth Must be > 0.
+     */
+    public MVP(final int maxModelDepth, final int maxProjectionDepth) {
+        checkArgument(maxModelDepth > 0, "MaxModelDepth must be > 0, got %s", maxModelDepth);
+        checkArgument(maxProjectionDepth > 0, "MaxProjectionDepth must be > 0, got %s",
+                maxProjectionDepth);
+        
+        this.maxModelDepth = maxModelDepth;
+        this.maxProjectionDepth = maxProjectionDepth;
+        this.projectionBase = maxModelDepth * Constants.MATRIX_SIZE;
+        this.scratchBase = projectionBase + maxProjectionDepth * Constants.MATRIX_SIZE;
+        this.collapsedBase = scratchBase + NUM_SCRATCH_MATRICES * Constants.MATRIX_SIZE;
+        this.collapsedSourceBase = collapsedBase + maxModelDepth * Constants.MATRIX_SIZE;
+        this.collapsedProjection = collapsedSourceBase + maxModelDepth * Constants.MATRIX_SIZE;
+        this.arena = new float[collapsedProjection + Constants.MATRIX_SIZE];
+        this.isCollapsedValid = new boolean[maxModelDepth];
+        this.isInverseValid = new boolean[maxModelDepth];
+        this.isInvertible = new boolean[maxModelDepth];
+        this.collapsedInverses = new Affine2D[maxModelDepth];
+        for (int level = 0; level < maxModelDepth; level++) {
+            collapsedInverses[level] = new Affine2D();
+        }
+        
+        reset();
     }
 
     /**
@@ -34,7 +128,11 @@ public class MVP {
      * @return Collapsed MVP matrix.
      */
     public float[] collapse() {
-        return collapse(modelMatrices.peek(), projectionMatrices.peek());
+        float[] mvp = new float[Constants.MATRIX_SIZE];
+        
+        System.arraycopy(arena, collapseTop(), mvp, Constants.NO_OFFSET, mvp.length);
+        
+        return mvp;
     }
     
     /**
@@ -57,7 +155,7 @@ public class MVP {
                 "Projection matrix must have a length of 16, got %s", projection.length);
         
         float[] mvp = new float[Constants.MATRIX_SIZE];
-       
+        
         // Factor in the model-view and projection matrices
         Matrix.multiplyMM(mvp, 0, projection, 0, model, 0);
         
@@ -72,57 +170,200 @@ public class MVP {
      * @return Collapsed MVP matrix.
      */
     public float[] collapseM(final float[] modelMatrix) {
-        return collapse(modelMatrix, projectionMatrices.peek());
+        checkArgument(modelMatrix != null, "Model matrix must not be null!");
+        checkArgument(modelMatrix.length == Constants.MATRIX_SIZE,
+                "Model matrix must have a length of 16, got %s", modelMatrix.length);
+        
+        float[] mvp = new float[Constants.MATRIX_SIZE];
+        
+        Matrix.multiplyMM(mvp, Constants.NO_OFFSET, arena, topP(),
+                modelMatrix, Constants.NO_OFFSET);
+        
+        return mvp;
     }
     
     /**
-     * Removes the matrix on the top of the model-view stack.
+     * Hands out a scratch matrix loaded with the collapsed MVP matrix of the
+     * top of the stacks. Applying local transformations to it in place (using
+     * Matrix.translateM(), Matrix.scaleM(), etc.) yields the same result as
+     * applying them to the model matrix and collapsing, minus the full matrix
+     * multiply.
      * 
-     * @return The matrix on the top of the model-view stack.
+     * @return Arena offset of the scratch matrix.
      */
-    public float[] popM() { return modelMatrices.pop(); }
+    public int collapseLocal() {
+        final int mvpOffset = scratch();
+        
+        System.arraycopy(arena, collapseTop(), arena, mvpOffset, Constants.MATRIX_SIZE);
+        
+        return mvpOffset;
+    }
     
     /**
-     * Removes the matrix on top of the projection stack.
+     * Hands out a scratch matrix loaded with the collapsed MVP matrix of the
+     * top of the stacks post-multiplied by a 2D affine local transformation.
      * 
-     * @return The matrix on top of the projection stack. 
+     * @param local Must not be null.
+     * @return Arena offset of the scratch matrix.
      */
-    public float[] popP() { return projectionMatrices.pop(); }
+    public int collapseLocal(final Affine2D local) {
+        final int mvpOffset = collapseLocal();
+        
+        local.applyTo(arena, mvpOffset);
+        
+        return mvpOffset;
+    }
     
     /**
-     * Pushes a matrix onto the top of the model-view stack.
+     * Collapses a local transformation with the cached collapsed MVP matrix
+     * of the top of the stacks.
      * 
-     * @param matrix Must not be null. Must have a length of 16 
+     * @param local Must not be null.
+     * @param localOffset Offset of the local transformation within local.
+     * @return Arena offset of the collapsed MVP matrix, held in a scratch matrix.
      */
-    public void pushM(float[] matrix) {
-        checkArgument(matrix.length == Constants.MATRIX_SIZE, 
-                "Matrix must have a length of 16, got %s", matrix.length);
+    public int collapseLocal(final float[] local, final int localOffset) {
+        final int mvpOffset = scratch();
         
-        // Copy the matrix
-        float[] copy = new float[Constants.MATRIX_SIZE];
-        System.arraycopy(matrix, Constants.NO_OFFSET,
-                         copy, Constants.NO_OFFSET, matrix.length);
+        Matrix.multiplyMM(arena, mvpOffset, arena, collapseTop(), local, localOffset);
         
-        // Push the matrix
-        modelMatrices.push(copy);
+        return mvpOffset;
     }
     
     /**
-     * Pushes a matrix onto the top of the projection stack.
+     * Collapses the matrix on top of the model-view stack with the matrix on
+     * top of the projection stack into a scratch matrix.
      * 
-     * @param matrix Must not be null. Must have a length of 16.
+     * @return Arena offset of the collapsed MVP matrix.
      */
-    public void pushP(float[] matrix) {
-        checkArgument(matrix.length == Constants.MATRIX_SIZE, 
-                "Matrix must have a length of 16, got %s", matrix.length);
+    public int collapseScratch() {
+        return collapseLocal();
+    }
+    
+    /**
+     * Collapses the arena model matrix at the provided offset with the matrix
+     * on top of the projection stack into a scratch matrix.
+     * 
+     * @param modelOffset Arena offset of the model matrix.
+     * @return Arena offset of the collapsed MVP matrix.
+     */
+    public int collapseScratch(final int modelOffset) {
+        if (modelOffset == topM()) { // If the top of the stack is being collapsed
+            return collapseScratch();
+        }
         
-        // Copy the matrix
-        float[] copy = new float[Constants.MATRIX_SIZE];
-        System.arraycopy(matrix, Constants.NO_OFFSET,
-                         copy, Constants.NO_OFFSET, matrix.length);
+        final int mvpOffset = scratch();
         
-        // Push the matrix
-        projectionMatrices.push(copy);
+        Matrix.multiplyMM(arena, mvpOffset, arena, topP(), arena, modelOffset);
+        
+        return mvpOffset;
+    }
+    
+    /**
+     * Returns the collapsed MVP matrix of the top of the stacks, multiplying
+     * it out only if the top of either stack has changed since it was last
+     * collapsed, including by being modified in place. The matrix must not be
+     * modified, and is only valid until the stacks are next changed.
+     * 
+     * @return Arena offset of the collapsed MVP matrix.
+     */
+    public int collapseTop() {
+        checkProjection();
+        
+        final int modelOffset = topM();
+        final int mvpOffset = collapsedBase + modelOffset;
+        final int sourceOffset = collapsedSourceBase + modelOffset;
+        
+        // If the cached product is out of date
+        if (!isCollapsedValid[modelDepth] || !isSameMatrix(modelOffset, sourceOffset)) {
+            Matrix.multiplyMM(arena, mvpOffset, arena, topP(), arena, modelOffset);
+            System.arraycopy(arena, modelOffset, arena, sourceOffset, Constants.MATRIX_SIZE);
+            isCollapsedValid[modelDepth] = true;
+            isInverseValid[modelDepth] = false;
+        }
+        
+        return mvpOffset;
+    }
+    
+    /**
+     * Returns the inverse of the 2D portion of the collapsed MVP matrix of the
+     * top of the stacks, mapping screen space points back into the object space
+     * of the top model-view level. The inverse is cached alongside the
+     * collapsed matrix, so repeated hit tests against the same level only pay
+     * for it once. Assumes the projection is orthographic (w = 1).
+     * 
+     * The transformation must not be modified, and is only valid until the
+     * stacks are next changed.
+     * 
+     * @return Cached inverse, or null if the collapsed matrix collapses an axis
+     * (such as for a zero sized object).
+     */
+    public Affine2D collapseTopInverse() {
+        final int mvpOffset = collapseTop();
+        
+        if (!isInverseValid[modelDepth]) { // If the cached inverse is out of date
+            final Affine2D inverse = collapsedInverses[modelDepth];
+            
+            inverse.set(arena[mvpOffset],     arena[mvpOffset + 4],
+                        arena[mvpOffset + 1], arena[mvpOffset + 5],
+                        arena[mvpOffset + 12], arena[mvpOffset + 13]);
+            isInvertible[modelDepth] = inverse.invert(inverse);
+            isInverseValid[modelDepth] = true;
+        }
+        
+        return isInvertible[modelDepth] ? collapsedInverses[modelDepth] : null;
+    }
+    
+    /**
+     * Marks every cached collapsed matrix as out of date if the matrix on top
+     * of the projection stack differs from the one they were collapsed with,
+     * such as after being modified in place.
+     */
+    private void checkProjection() {
+        if (!isSameMatrix(topP(), collapsedProjection)) { // If the projection has changed
+            System.arraycopy(arena, topP(), arena, collapsedProjection, Constants.MATRIX_SIZE);
+            invalidateAll();
+        }
+    }
+    
+    /** Removes the matrix on top of the model-view stack without copying it. */
+    public void dropM() {
+        checkState(modelDepth > 0, "Model-view stack underflow!");
+        
+        isCollapsedValid[modelDepth] = false;
+        modelDepth--;
+    }
+    
+    /** Removes the matrix on top of the projection stack without copying it. */
+    public void dropP() {
+        checkState(projectionDepth > 0, "Projection stack underflow!");
+        
+        projectionDepth--;
+        invalidateAll();
+    }
+    
+    /**
+     * Returns the storage backing every offset handed out by this MVP. Callers
+     * may transform the matrices at those offsets in place.
+     * 
+     * @return Matrix arena.
+     */
+    public float[] getArena() { return arena; }
+    
+    /** Marks every cached collapsed matrix as out of date. */
+    private void invalidateAll() {
+        Arrays.fill(isCollapsedValid, false);
+    }
+    
+    /** @return Whether or not the arena matrices at the two offsets are equal. */
+    private boolean isSameMatrix(final int offset, final int otherOffset) {
+        for (int iter = 0; iter < Constants.MATRIX_SIZE; iter++) {
+            if (arena[offset + iter] != arena[otherOffset + iter]) {
+                return false;
+            }
+        }
+        
+        return true;
     }
     
     /**
@@ -131,9 +372,8 @@ public class MVP {
      * @return Copy of the peeked matrix.
      */
     public float[] peekCopyM() {
-        final float[] copy = new float[Constants.MATRIX_SIZE];    
-        System.arraycopy(modelMatrices.peek(), Constants.NO_OFFSET, 
-                         copy, Constants.NO_OFFSET, copy.length);
+        final float[] copy = new float[Constants.MATRIX_SIZE];
+        System.arraycopy(arena, topM(), copy, Constants.NO_OFFSET, copy.length);
         return copy;
     }
     
@@ -143,27 +383,211 @@ public class MVP {
      * @return Copy of the peeked matrix.
      */
     public float[] peekCopyP() {
-        final float[] copy = new float[Constants.MATRIX_SIZE];    
-        System.arraycopy(projectionMatrices.peek(), Constants.NO_OFFSET, 
-                         copy, Constants.NO_OFFSET, copy.length);
+        final float[] copy = new float[Constants.MATRIX_SIZE];
+        System.arraycopy(arena, topP(), copy, Constants.NO_OFFSET, copy.length);
         return copy;
     }
     
     /**
-     * Returns a reference to the matrix on top of the model-view stack.
+     * Returns a copy of the matrix on top of the model-view stack. Modifying
+     * the copy doesn't affect the stack.
      * 
-     * @return Matrix on top of the stack.
+     * @return Copy of the peeked matrix.
+     * @deprecated Use peekCopyM(), or the arena at topM() to modify the matrix in place.
      */
+    @Deprecated
     public float[] peekM() {
-        return modelMatrices.peek();
+        return peekCopyM();
     }
     
     /**
-     * Returns a reference to the matrix on top of the projection stack.
+     * Returns a copy of the matrix on top of the projection stack. Modifying
+     * the copy doesn't affect the stack.
      * 
-     * @return Matrix on top of the stack.
+     * @return Copy of the peeked matrix.
+     * @deprecated Use peekCopyP(), or the arena at topP() to modify the matrix in place.
      */
+    @Deprecated
     public float[] peekP() {
-        return projectionMatrices.peek();
+        return peekCopyP();
+    }
+    
+    /**
+     * Removes the matrix on the top of the model-view stack.
+     * 
+     * @return The matrix on the top of the model-view stack.
+     */
+    public float[] popM() {
+        final float[] matrix = peekCopyM();
+        dropM();
+        return matrix;
+    }
+    
+    /**
+     * Removes the matrix on top of the projection stack.
+     * 
+     * @return The matrix on top of the projection stack.
+     */
+    public float[] popP() {
+        final float[] matrix = peekCopyP();
+        dropP();
+        return matrix;
+    }
+    
+    /**
+     * Pushes a copy of the matrix on top of the model-view stack onto the
+     * model-view stack.
+     * 
+     * @return Arena offset of the new top of the model-view stack.
+     */
+    public int pushM() {
+        return pushM(arena, topM());
+    }
+    
+    /**
+     * Pushes a copy of the matrix on top of the model-view stack, post-multiplied
+     * by a 2D affine transformation, onto the model-view stack. If the collapsed
+     * MVP matrix of the current top is cached, the new level's collapsed matrix
+     * is derived from it with the same affine multiply rather than a full 4x4
+     * multiply.
+     * 
+     * @param local Must not be null.
+     * @return Arena offset of the new top of the model-view stack.
+     */
+    public int pushM(final Affine2D local) {
+        checkNotNull(local);
+        checkProjection();
+        
+        final boolean isParentCollapsed = isCollapsedValid[modelDepth] &&
+                isSameMatrix(topM(), collapsedSourceBase + topM());
+        final int     parentCollapsed   = collapsedBase + topM();
+        final int     modelOffset       = pushM();
+        
+        local.applyTo(arena, modelOffset);
+        if (isParentCollapsed) { // If the parent's product can be extended
+            final int mvpOffset = collapsedBase + modelOffset;
+            
+            System.arraycopy(arena, parentCollapsed, arena, mvpOffset, Constants.MATRIX_SIZE);
+            local.applyTo(arena, mvpOffset);
+            System.arraycopy(arena, modelOffset, arena, collapsedSourceBase + modelOffset,
+                    Constants.MATRIX_SIZE);
+            isCollapsedValid[modelDepth] = true;
+            isInverseValid[modelDepth] = false;
+        }
+        
+        return modelOffset;
+    }
+    
+    /**
+     * Pushes a matrix onto the top of the model-view stack.
+     * 
+     * @param matrix Must not be null. Must have a length of 16
+     */
+    public void pushM(float[] matrix) {
+        checkArgument(matrix.length == Constants.MATRIX_SIZE,
+                "Matrix must have a length of 16, got %s", matrix.length);
+        
+        pushM(matrix, Constants.NO_OFFSET);
+    }
+    
+    /**
+     * Pushes a copy of the matrix at the provided offset onto the model-view
+     * stack.
+     * 
+     * @param matrix Must not be null.
+     * @param offset Offset of the matrix within the array.
+     * @return Arena offset of the new top of the model-view stack.
+     */
+    public int pushM(final float[] matrix, final int offset) {
+        checkState(modelDepth + 1 < maxModelDepth,
+                "Model-view stack overflow, max depth is %s", maxModelDepth);
+        
+        modelDepth++;
+        System.arraycopy(matrix, offset, arena, topM(), Constants.MATRIX_SIZE);
+        isCollapsedValid[modelDepth] = false;
+        
+        return topM();
+    }
+    
+    /**
+     * Pushes a matrix onto the top of the projection stack.
+     * 
+     * @param matrix Must not be null. Must have a length of 16.
+     */
+    public void pushP(float[] matrix) {
+        checkArgument(matrix.length == Constants.MATRIX_SIZE,
+                "Matrix must have a length of 16, got %s", matrix.length);
+        
+        pushP(matrix, Constants.NO_OFFSET);
+    }
+    
+    /**
+     * Pushes a copy of the matrix at the provided offset onto the projection
+     * stack.
+     * 
+     * @param matrix Must not be null.
+     * @param offset Offset of the matrix within the array.
+     * @return Arena offset of the new top of the projection stack.
+     */
+    public int pushP(final float[] matrix, final int offset) {
+        checkState(projectionDepth + 1 < maxProjectionDepth,
+                "Projection stack overflow, max depth is %s", maxProjectionDepth);
+        
+        projectionDepth++;
+        System.arraycopy(matrix, offset, arena, topP(), Constants.MATRIX_SIZE);
+        invalidateAll();
+        
+        return topP();
+    }
+    
+    /** Empties both stacks back down to the identity matrix so the MVP can be reused. */
+    public void reset() {
+        modelDepth = 0;
+        projectionDepth = 0;
+        nextScratch = 0;
+        
+        Matrix.setIdentityM(arena, topM());
+        Matrix.setIdentityM(arena, topP());
+        invalidateAll();
+    }
+    
+    /**
+     * Hands out the next matrix of the scratch ring. Scratch matrices are
+     * recycled, so they must not be held across calls that may themselves use
+     * scratch matrices (such as rendering child objects); push the matrix
+     * instead.
+     * 
+     * @return Arena offset of the scratch matrix. Contents are undefined.
+     */
+    public int scratch() {
+        final int offset = scratchBase + nextScratch * Constants.MATRIX_SIZE;
+        
+        nextScratch = (nextScratch + 1) % NUM_SCRATCH_MATRICES;
+        
+        return offset;
+    }
+    
+    /**
+     * Hands out the next matrix of the scratch ring loaded with a copy of the
+     * matrix on top of the model-view stack.
+     * 
+     * @return Arena offset of the scratch matrix.
+     */
+    public int scratchM() {
+        final int offset = scratch();
+        
+        System.arraycopy(arena, topM(), arena, offset, Constants.MATRIX_SIZE);
+        
+        return offset;
+    }
+    
+    /** @return Arena offset of the matrix on top of the model-view stack. */
+    public int topM() {
+        return modelDepth * Constants.MATRIX_SIZE;
+    }
+    
+    /** @return Arena offset of the matrix on top of the projection stack. */
+    public int topP() {
+        return projectionBase + projectionDepth * Constants.MATRIX_SIZE;
     }
 }
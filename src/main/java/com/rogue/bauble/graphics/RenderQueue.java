@@ -0,0 +1,281 @@
+package com.rogue.bauble.graphics;
+
+import static com.google.common.base.Preconditions.*;
+import com.rogue.bauble.graphics.shaders.Batch;
+import com.rogue.bauble.graphics.shaders.ShaderRegistry;
+import com.rogue.bauble.misc.Constants;
+import java.util.Arrays;
+
+/**
+ * Collects draw commands and issues them sorted by a 64-bit key. Submitting a
+ * draw marks the queue as the ShaderRegistry's pending batch, so the queued
+ * draws are issued before the next immediate draw, and by the end of the
+ * frame at the latest. Draws submitted back to back are thus sorted together,
+ * while the painter's order with the draws around them is preserved.
+ * 
+ * Keys are built by opaqueKey() and translucentKey(). The layer is the most
+ * significant part of the key, so a lower layer is always drawn first. Draws
+ * with equal keys keep their submission order.
+ * 
+ * By default the queue is stable (see setStable()): keys are reduced to their
+ * layer, so every draw within a layer keeps its submission order, as
+ * overlapping widgets require. With stability turned off, the opaque draws of
+ * a layer come first and are sorted by program, texture, then VBO, so draws
+ * sharing state run back to back, and translucent draws follow in submission
+ * order. Only turn it off when the opaque draws of a layer never overlap.
+ * Must only be used from the GL thread.
+ * 
+ * @author R. Matt McCann
+ */
+public class RenderQueue implements Batch {
+    /** Largest layer. */
+    public static final int MAX_LAYER = 0xff;
+    
+    /** Number of key bits sorted per radix pass. */
+    private static final int RADIX_BITS = 8;
+    
+    /** Number of buckets per radix pass. */
+    private static final int RADIX_SIZE = 1 << RADIX_BITS;
+    
+    /** Number of radix passes over a 64-bit key. */
+    private static final int NUM_PASSES = Long.SIZE / RADIX_BITS;
+    
+    /** Key bits holding the layer. */
+    private static final int LAYER_SHIFT = 56;
+    
+    /** Key bit marking translucent draws. */
+    private static final long TRANSLUCENT_BIT = 1L << 55;
+    
+    /** Key bits holding the program of opaque draws. */
+    private static final int PROGRAM_SHIFT = 40;
+    
+    /** Mask of the program id. */
+    private static final long PROGRAM_MASK = 0x7fffL;
+    
+    /** Key bits holding the texture of opaque draws. */
+    private static final int TEXTURE_SHIFT = 20;
+    
+    /** Mask of texture and VBO handles. */
+    private static final long HANDLE_MASK = 0xfffffL;
+    
+    /** Submitted commands, by submission. */
+    private DrawCommand[] commands;
+    
+    /** Bucket counts of the radix sort. */
+    private final int[] counts = new int[RADIX_SIZE];
+    
+    /** Whether or not every draw within a layer keeps its submission order. */
+    private boolean isStable = true;
+    
+    /** Sort keys, by submission. */
+    private long[] keys;
+    
+    /** Model-View-Projection matrices, by submission. */
+    private float[] matrices;
+    
+    /** Flushes the queue before the draws that follow it. */
+    private final ShaderRegistry registry;
+    
+    /** Scratch copy of the sort keys used by the radix sort. */
+    private long[] scratchKeys;
+    
+    /** Scratch copy of the submission indexes used by the radix sort. */
+    private int[] scratchIndexes;
+    
+    /** Submission indexes in sorted order. */
+    private int[] sortedIndexes;
+    
+    /** Sort keys in sorted order. */
+    private long[] sortedKeys;
+    
+    /** Number of commands submitted since the last flush. */
+    private int size = 0;
+    
+    /** Tags, by submission. */
+    private int[] tags;
+    
+    /** @param registry Must not be null. */
+    public RenderQueue(final ShaderRegistry registry) {
+        this(registry, 64);
+    }
+    
+    /**
+     * @param registry Must not be null.
+     * @param capacity Initial number of commands held without growing. Must be > 0.
+     */
+    public RenderQueue(final ShaderRegistry registry, final int capacity) {
+        checkArgument(capacity > 0, "Capacity must be > 0, got %s", capacity);
+        
+        this.registry = checkNotNull(registry);
+        allocate(capacity);
+        registry.register(this);
+    }
+    
+    /** (Re)allocates the storage, keeping any submitted commands. */
+    private void allocate(final int capacity) {
+        commands = (commands == null) ? new DrawCommand[capacity] : Arrays.copyOf(commands, capacity);
+        keys = (keys == null) ? new long[capacity] : Arrays.copyOf(keys, capacity);
+        matrices = (matrices == null) ? new float[capacity * Constants.MATRIX_SIZE] 
+                : Arrays.copyOf(matrices, capacity * Constants.MATRIX_SIZE);
+        tags = (tags == null) ? new int[capacity] : Arrays.copyOf(tags, capacity);
+        sortedKeys = new long[capacity];
+        scratchKeys = new long[capacity];
+        sortedIndexes = new int[capacity];
+        scratchIndexes = new int[capacity];
+    }
+    
+    /** Forgets the submitted commands without issuing them. */
+    public void clear() {
+        Arrays.fill(commands, 0, size, null);
+        size = 0;
+    }
+    
+    /**
+     * Issues the submitted commands in key order and clears the queue. Called
+     * by the ShaderRegistry, see ShaderRegistry.flushPendingBatch().
+     */
+    @Override
+    public void flush() {
+        if (size == 0) {
+            return;
+        }
+        
+        sort();
+        
+        for (int iter = 0; iter < size; iter++) {
+            final int index = sortedIndexes[iter];
+            
+            commands[index].draw(tags[index], matrices, index * Constants.MATRIX_SIZE);
+        }
+        
+        clear();
+    }
+    
+    public int getSize() { return size; }
+    
+    /** {@inheritDocs} */
+    @Override
+    public void invalidate() {
+        clear();
+    }
+    
+    public boolean isStable() { return isStable; }
+    
+    /**
+     * Builds the key of an opaque draw.
+     * 
+     * @param layer Must be in [0, MAX_LAYER].
+     * @param program Id of the shader, such as Shader.getId().
+     * @param texture Texture handle, 0 if none.
+     * @param vbo VBO handle, 0 if none.
+     * @return Sort key.
+     */
+    public static long opaqueKey(final int layer, final int program, 
+                                 final int texture, final int vbo) {
+        checkArgument((0 <= layer) && (layer <= MAX_LAYER), "Expected 0 <= layer <= %s, got %s",
+                MAX_LAYER, layer);
+        
+        return ((long) layer << LAYER_SHIFT)
+                | ((program & PROGRAM_MASK) << PROGRAM_SHIFT)
+                | ((texture & HANDLE_MASK) << TEXTURE_SHIFT)
+                | (vbo & HANDLE_MASK);
+    }
+    
+    /**
+     * Sorts the submitted commands by key with a least significant digit
+     * radix sort, which is stable. Passes over digits every key shares are
+     * skipped, which is most of them for typical keys.
+     */
+    private void sort() {
+        final long layerMask = isStable ? ~((1L << LAYER_SHIFT) - 1) : ~0L;
+        for (int iter = 0; iter < size; iter++) {
+            sortedKeys[iter] = keys[iter] & layerMask;
+            sortedIndexes[iter] = iter;
+        }
+        
+        for (int pass = 0; pass < NUM_PASSES; pass++) {
+            final int shift = pass * RADIX_BITS;
+            
+            // Count the keys in each bucket
+            Arrays.fill(counts, 0);
+            for (int iter = 0; iter < size; iter++) {
+                counts[(int) (sortedKeys[iter] >>> shift) & (RADIX_SIZE - 1)]++;
+            }
+            if (counts[(int) (sortedKeys[0] >>> shift) & (RADIX_SIZE - 1)] == size) {
+                continue; // Every key has the same digit, so the pass wouldn't move anything
+            }
+            
+            // Turn the counts into bucket start positions
+            int position = 0;
+            for (int bucket = 0; bucket < RADIX_SIZE; bucket++) {
+                final int count = counts[bucket];
+                
+                counts[bucket] = position;
+                position += count;
+            }
+            
+            // Scatter into the scratch arrays, and swap them in
+            for (int iter = 0; iter < size; iter++) {
+                final int target = counts[(int) (sortedKeys[iter] >>> shift) & (RADIX_SIZE - 1)]++;
+                
+                scratchKeys[target] = sortedKeys[iter];
+                scratchIndexes[target] = sortedIndexes[iter];
+            }
+            
+            final long[] swapKeys = sortedKeys;
+            sortedKeys = scratchKeys;
+            scratchKeys = swapKeys;
+            final int[] swapIndexes = sortedIndexes;
+            sortedIndexes = scratchIndexes;
+            scratchIndexes = swapIndexes;
+        }
+    }
+    
+    /** @param isStable Whether or not every draw within a layer keeps its submission order. */
+    public void setStable(final boolean isStable) {
+        this.isStable = isStable;
+    }
+    
+    /**
+     * Submits a draw command, to be issued when the queue is flushed.
+     * 
+     * @param key Sort key, from opaqueKey() or translucentKey().
+     * @param command Must not be null.
+     * @param tag Value passed back to the command.
+     * @param matrix Model-View-Projection matrix of the draw, copied by the
+     *               queue. Must not be null.
+     * @param offset Offset of the matrix within the array, such as an MVP arena offset.
+     */
+    public void submit(final long key, final DrawCommand command, final int tag,
+                       final float[] matrix, final int offset) {
+        checkNotNull(command);
+        checkNotNull(matrix);
+        
+        registry.setPendingBatch(this); // Issue any other batched draws first
+        if (size == keys.length) { // If the queue is full
+            allocate(size * 2);
+        }
+        
+        commands[size] = command;
+        keys[size] = key;
+        tags[size] = tag;
+        System.arraycopy(matrix, offset, matrices, size * Constants.MATRIX_SIZE, 
+                Constants.MATRIX_SIZE);
+        size++;
+    }
+    
+    /**
+     * Builds the key of a translucent draw, which is drawn after the opaque
+     * draws of its layer. Translucent keys of a layer are all equal, so the
+     * stable sort leaves them in submission order.
+     * 
+     * @param layer Must be in [0, MAX_LAYER].
+     * @return Sort key.
+     */
+    public static long translucentKey(final int layer) {
+        checkArgument((0 <= layer) && (layer <= MAX_LAYER), "Expected 0 <= layer <= %s, got %s",
+                MAX_LAYER, layer);
+        
+        return ((long) layer << LAYER_SHIFT) | TRANSLUCENT_BIT;
+    }
+}
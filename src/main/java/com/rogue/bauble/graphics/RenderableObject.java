@@ -1,11 +1,9 @@
 package com.rogue.bauble.graphics;
 
-import android.opengl.Matrix;
 import static com.google.common.base.Preconditions.*;
 import com.rogue.bauble.io.touch.ClickHandler;
 import com.rogue.bauble.io.touch.DragHandler;
 import com.rogue.bauble.io.touch.LongPressHandler;
-import com.rogue.bauble.misc.Constants;
 import com.rogue.bauble.properties.Renderable;
 import com.rogue.unipoint.FloatPoint2D;
 
@@ -16,6 +14,9 @@ import com.rogue.unipoint.FloatPoint2D;
  */
 public abstract class RenderableObject 
         implements ClickHandler, DragHandler, LongPressHandler, Renderable {
+    /** Reused object space transformation, rebuilt on each use. */
+    private final Affine2D objectSpace = new Affine2D();
+    
     /** Rendering position of the object. */
     private FloatPoint2D position = new FloatPoint2D(0, 0);
     
@@ -29,16 +30,14 @@ public abstract class RenderableObject
     /** {@inheritDocs} */
     @Override
     public boolean handleClick(MVP transformationSpace, FloatPoint2D clickLocation) {
-        float[] modelSpace = transformationSpace.peekCopyM();
         boolean result;
         
         // Move into object space
-        transform(modelSpace);
+        transformationSpace.pushM(transform());
         
         // Check if the object was clicked
-        transformationSpace.pushM(modelSpace);
         result = handleClickExt(transformationSpace, clickLocation);
-        transformationSpace.popM();
+        transformationSpace.dropM();
         
         return result;
     }
@@ -60,16 +59,14 @@ public abstract class RenderableObject
     /** {@inheritDoc} */
     @Override
     public boolean handleLongPress(MVP transformationSpace, FloatPoint2D pressLocation) {
-        float[] modelSpace = transformationSpace.peekCopyM();
         boolean result;
         
         // Move into object space
-        transform(modelSpace);
+        transformationSpace.pushM(transform());
         
         // Check if the object was clicked
-        transformationSpace.pushM(modelSpace);
         result = handleLongPressExt(transformationSpace, pressLocation);
-        transformationSpace.popM();
+        transformationSpace.dropM();
         
         return result;
     }
@@ -84,16 +81,14 @@ public abstract class RenderableObject
     @Override
     public boolean handlePickUp(MVP transformationSpace, 
                                 FloatPoint2D touchLocation) {
-        float[] modelSpace = transformationSpace.peekCopyM();
         boolean result;
         
         // Move into object space
-        transform(modelSpace);
+        transformationSpace.pushM(transform());
         
         // Check if the object was clicked
-        transformationSpace.pushM(modelSpace);
         result = handlePickUpExt(transformationSpace, touchLocation);
-        transformationSpace.popM();
+        transformationSpace.dropM();
         
         return result;
     }
@@ -107,15 +102,12 @@ public abstract class RenderableObject
     /** {@inheritDocs} */
     @Override
     public final void render(MVP mvp) {
-        float[] modelSpace = mvp.peekCopyM();
-        
         // Move into object space
-        transform(modelSpace);
+        mvp.pushM(transform());
         
         // Render the object
-        mvp.pushM(modelSpace);
         renderExt(mvp);
-        mvp.popM();
+        mvp.dropM();
     }
     
     /** Interface for extending classes to render themselves. */
@@ -141,14 +133,12 @@ public abstract class RenderableObject
     }
     
     /**
-     * Applies the rendering transformations to the MVP matrices.
+     * Builds the object space transformation from the object's position and size.
      * 
-     * @param mvp Must not be null. 
+     * @return The reused object space transformation.
      */
-    private void transform(float[] modelSpace) {
-        // Move into object space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, position.getX(),
-                position.getY(), 0);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, size.getX(), size.getY(), 1);
+    private Affine2D transform() {
+        return objectSpace.set(size.getX(), 0, 0, size.getY(),
+                position.getX(), position.getY());
     }
 }
@@ -1,6 +1,5 @@
 package com.rogue.bauble.graphics;
 
-import android.opengl.GLES20;
 import android.opengl.Matrix;
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.eventbus.EventBus;
@@ -38,10 +37,6 @@ public abstract class Renderer implements ClickHandler, LongPressHandler,
         this.gameFlowController = checkNotNull(gameFlowController);
         this.notifier = checkNotNull(notifier);
         
-        // Enable transparency blending
-        GLES20.glEnable(GLES20.GL_BLEND);
-        GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-        
         // Activate the game flow controller
         gameFlowController.start();
     }
@@ -51,28 +46,56 @@ public abstract class Renderer implements ClickHandler, LongPressHandler,
         gameFlowController.setIsRunning(false);
     }
     
-    /** Draws the current frame. */
-    public void drawFrame(final MVP mvp) {
+    /**
+     * Draws the current frame.
+     * 
+     * @param frame Frame context, already started with the projection pushed.
+     *              Must not be null.
+     */
+    public void drawFrame(final FrameContext frame) {
         logger.debug("drawFrame()...");
         
-        // Set up the parameters of the projection matrix
-        float near = -1.0f;
-        float far = 1.0f;
-        float left = -0.5f;
-        float right = 0.5f;
-        float top = 0.5f;
-        float bottom = -0.5f;
+        drawFrameExt(frame);
+    }
+    
+    /**
+     * Draws the current frame into a caller owned MVP, pushing the projection
+     * first.
+     * 
+     * @param mvp Must not be null.
+     * @deprecated Use drawFrame(FrameContext), which reuses the projection
+     *             and stacks between frames.
+     */
+    @Deprecated
+    public void drawFrame(final MVP mvp) {
+        logger.debug("drawFrame()...");
         
         // Calculate the projection matrix
         float[] projectionMatrix = new float[Constants.MATRIX_SIZE];
-        Matrix.orthoM(projectionMatrix, Constants.NO_OFFSET, left, right, bottom, top, near, far);
+        Matrix.orthoM(projectionMatrix, Constants.NO_OFFSET, -0.5f, 0.5f, -0.5f, 0.5f, -1.0f, 1.0f);
         mvp.pushP(projectionMatrix);
         
         drawFrameExt(mvp);
     }
     
-    /** Sub-class specific functionality for drawing the current frame. */
-    protected abstract void drawFrameExt(final MVP mvp);
+    /**
+     * Sub-class specific functionality for drawing the current frame. Delegates
+     * to drawFrameExt(MVP) by default, so renderers overriding either one draw.
+     * 
+     * @param frame Reused frame context. Must not be retained past the frame.
+     */
+    protected void drawFrameExt(final FrameContext frame) {
+        drawFrameExt(frame.getMVP());
+    }
+    
+    /**
+     * Sub-class specific functionality for drawing the current frame. Only
+     * called by drawFrameExt(FrameContext) and the deprecated drawFrame(MVP),
+     * so sub-classes overriding drawFrameExt(FrameContext) may leave it empty.
+     * 
+     * @param mvp Transformation space of the frame, with the projection pushed.
+     */
+    protected abstract void drawFrameExt(MVP mvp);
     
     public EventBus getNotifier() { return notifier; }
     
@@ -0,0 +1,347 @@
+package com.rogue.bauble.graphics;
+
+import android.opengl.Matrix;
+import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.*;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.rogue.bauble.graphics.shaders.Batch;
+import com.rogue.bauble.graphics.shaders.DistanceFieldShader;
+import com.rogue.bauble.graphics.shaders.InstancedSpriteShader;
+import com.rogue.bauble.graphics.shaders.ShaderRegistry;
+import com.rogue.bauble.graphics.shaders.SpriteShader;
+import com.rogue.bauble.graphics.textures.Texture;
+import com.rogue.bauble.misc.Constants;
+
+/**
+ * Collects textured and colored quads and draws them with as few draw calls
+ * as possible. Each quad is transformed on the CPU into clip space as it is
+ * submitted, so quads with different transformations share a draw, and
+ * written as 4 vertices into a StreamingVertexBuffer drawn by the
+ * SpriteShader through the shared quad index buffer.
+ * 
+ * When an InstancedSpriteShader is injected and the context supports OpenGL
+ * ES 3.0, each quad is instead written as its matrix, color, and texture
+ * region, and the batch is drawn with one instanced draw call that
+ * transforms the quads on the GPU, producing the same output.
+ * 
+ * Glyphs of a distance field atlas are collected through
+ * submitDistanceField() and drawn by the DistanceFieldShader, in batches of
+ * their own.
+ * 
+ * The batch is flushed when a quad with a different texture is submitted,
+ * when it is full, and by the ShaderRegistry before any other shader is
+ * activated or the blend state changes, so the painter's order of draws is
+ * preserved. Must only be used from the GL thread.
+ * 
+ * @author R. Matt McCann
+ */
+@Singleton
+public class SpriteBatch implements Batch {
+    /** Maximum number of quads drawn by a single flush. */
+    public static final int MAX_SPRITES = 256;
+    
+    /** Number of floats per vertex. */
+    private static final int VERTEX_SIZE = DrawUtils.POS_COLOR_TEX_STRIDE;
+    
+    /** Number of floats per quad. */
+    private static final int SPRITE_SIZE = VERTEX_SIZE * DrawUtils.NUM_QUAD_VERTICES;
+    
+    /** Number of full batches each buffer of the stream holds before it is orphaned. */
+    private static final int FLUSHES_PER_BUFFER = 4;
+    
+    /** Marks the texture as unset. */
+    private static final int NOT_SET = -1;
+    
+    /** Clip space x, y, z of the quad's top left, bottom left, top right, and bottom right corners. */
+    private final float[] corners = new float[12];
+    
+    /** Identity transformation, as the vertices are already in clip space. */
+    private final float[] identity = new float[Constants.MATRIX_SIZE];
+    
+    /** Draws collected distance field glyphs, if injected. */
+    private Optional<DistanceFieldShader> distanceFieldShader = Optional.absent();
+    
+    /** Draws the collected quads as instances on OpenGL ES 3.0, if injected. */
+    private Optional<InstancedSpriteShader> instancedShader = Optional.absent();
+    
+    /** Whether or not the collected quads are distance field glyphs. */
+    private boolean isDistanceField = false;
+    
+    /** Number of quads collected since the last flush. */
+    private int numSprites = 0;
+    
+    /** Tracks the OpenGL state shared with other shaders. */
+    private final ShaderRegistry registry;
+    
+    /** Draws the collected quads. */
+    private final SpriteShader shader;
+    
+    /** Streams the vertices to the driver. */
+    private final StreamingVertexBuffer stream;
+    
+    /** Texture of the collected quads, NOT_SET for the sprite shader's white texture. */
+    private int texture = NOT_SET;
+    
+    /** Vertices of the collected quads. */
+    private final float[] vertices = new float[MAX_SPRITES * SPRITE_SIZE];
+    
+    /** Guice injectable constructor. */
+    @Inject
+    public SpriteBatch(final ShaderRegistry registry,
+                       final SpriteShader shader) {
+        this.registry = checkNotNull(registry);
+        this.shader = checkNotNull(shader);
+        this.stream = new StreamingVertexBuffer(registry,
+                FLUSHES_PER_BUFFER * MAX_SPRITES * SPRITE_SIZE * Constants.BYTES_PER_FLOAT);
+        
+        Matrix.setIdentityM(identity, Constants.NO_OFFSET);
+        registry.register(this);
+    }
+    
+    /** {@inheritDocs} */
+    @Override
+    public void flush() {
+        if (numSprites == 0) {
+            return;
+        }
+        
+        // Stream the vertices to the driver
+        final boolean myIsDistanceField = isDistanceField;
+        final boolean isInstanced = isInstanced() && !myIsDistanceField;
+        final int spriteSize = isInstanced ? InstancedSpriteShader.INSTANCE_SIZE : SPRITE_SIZE;
+        final int vboOffset = stream.write(vertices, Constants.NO_OFFSET, numSprites * spriteSize);
+        
+        // Draw the quads, clearing the batch first so the shader's activation doesn't flush it again
+        final int myNumSprites = numSprites;
+        final int myTexture = texture;
+        numSprites = 0;
+        texture = NOT_SET;
+        isDistanceField = false;
+        
+        if (myIsDistanceField) { // Find the glyph edges in the distance field
+            final DistanceFieldShader myShader = distanceFieldShader.get();
+            
+            myShader.activate();
+            myShader.setMVPMatrix(identity, Constants.NO_OFFSET);
+            myShader.setTexture(myTexture);
+            myShader.setVBO(stream.getHandle(), vboOffset);
+            myShader.drawQuads(myNumSprites);
+            return;
+        }
+        if (isInstanced) { // Transform and draw the quads on the GPU in a single call
+            final InstancedSpriteShader myShader = instancedShader.get();
+            
+            myShader.activate();
+            myShader.setTexture((myTexture != NOT_SET) ? myTexture : shader.getWhiteTexture());
+            myShader.setInstanceBuffer(stream.getHandle(), vboOffset);
+            myShader.drawInstances(myNumSprites);
+            return;
+        }
+        
+        shader.activate();
+        shader.setMVPMatrix(identity);
+        if (myTexture != NOT_SET) {
+            shader.setTexture(myTexture);
+        }
+        shader.setVBO(stream.getHandle(), vboOffset);
+        shader.drawQuads(myNumSprites);
+    }
+    
+    public int getNumSprites() { return numSprites; }
+    
+    /** {@inheritDocs} */
+    @Override
+    public void invalidate() {
+        isDistanceField = false;
+        numSprites = 0;
+        texture = NOT_SET;
+        stream.invalidate();
+    }
+    
+    /** @return Whether or not the quads are drawn by the instanced shader. */
+    private boolean isInstanced() {
+        return instancedShader.isPresent() && registry.isGles3();
+    }
+    
+    /**
+     * Enables drawing glyphs of distance field atlases, see
+     * submitDistanceField(). Injected when the application binds the distance
+     * field shader sources.
+     * 
+     * @param distanceFieldShader Must not be null.
+     */
+    @Inject(optional = true)
+    public void setDistanceFieldShader(final DistanceFieldShader distanceFieldShader) {
+        this.distanceFieldShader = Optional.of(distanceFieldShader);
+    }
+    
+    /**
+     * Enables instanced drawing of the quads where the context supports
+     * OpenGL ES 3.0. Injected when the application binds the instanced sprite
+     * shader sources.
+     * 
+     * @param instancedShader Must not be null.
+     */
+    @Inject(optional = true)
+    public void setInstancedShader(final InstancedSpriteShader instancedShader) {
+        this.instancedShader = Optional.of(instancedShader);
+    }
+    
+    /**
+     * Collects a quad covering the unit square of the transformation, drawing
+     * the whole texture.
+     * 
+     * @param matrix Model-View-Projection matrix of the quad. Must not be null.
+     * @param offset Offset of the matrix within the array, such as an MVP arena offset.
+     * @param texture Texture of the quad.
+     * @param opacity Opacity of the quad. Must be in [0, 1].
+     */
+    public void submit(final float[] matrix, final int offset, final int texture,
+                       final float opacity) {
+        submit(matrix, offset, texture, 0.0f, 0.0f, 1.0f, 1.0f, Color.WHITE, opacity);
+    }
+    
+    /**
+     * Collects a quad covering the unit square of the transformation, drawing
+     * the texture's image, which may be part of an atlas.
+     * 
+     * @param matrix Model-View-Projection matrix of the quad. Must not be null.
+     * @param offset Offset of the matrix within the array, such as an MVP arena offset.
+     * @param texture Texture of the quad. Must not be null.
+     * @param opacity Opacity of the quad. Must be in [0, 1].
+     */
+    public void submit(final float[] matrix, final int offset, final Texture texture,
+                       final float opacity) {
+        submit(matrix, offset, texture.getHandle(), texture.getU0(), texture.getV0(),
+                texture.getU1(), texture.getV1(), Color.WHITE, opacity);
+    }
+    
+    /**
+     * Collects a quad covering the unit square of the transformation.
+     * 
+     * @param matrix Model-View-Projection matrix of the quad. Must not be null.
+     * @param offset Offset of the matrix within the array, such as an MVP arena offset.
+     * @param texture Texture of the quad, or NOT_SET (-1) for a solid quad.
+     * @param u0 Texture coordinate of the quad's left edge.
+     * @param v0 Texture coordinate of the quad's top edge.
+     * @param u1 Texture coordinate of the quad's right edge.
+     * @param v1 Texture coordinate of the quad's bottom edge.
+     * @param color Color the texture is multiplied by. Must not be null.
+     * @param opacity Opacity of the quad. Must be in [0, 1]. Scales the whole color of
+     *                solid quads and only the alpha of textured ones, see SpriteShader.
+     */
+    public void submit(final float[] matrix, final int offset, final int texture,
+                       final float u0, final float v0, final float u1, final float v1,
+                       final Color color, final float opacity) {
+        collect(matrix, offset, texture, u0, v0, u1, v1, color, opacity, false);
+    }
+    
+    /**
+     * Collects a glyph of a distance field atlas covering the unit square of
+     * the transformation, drawn by the DistanceFieldShader.
+     * 
+     * @param matrix Model-View-Projection matrix of the glyph. Must not be null.
+     * @param offset Offset of the matrix within the array, such as an MVP arena offset.
+     * @param texture Distance field atlas of the glyph.
+     * @param u0 Texture coordinate of the glyph's left edge.
+     * @param v0 Texture coordinate of the glyph's top edge.
+     * @param u1 Texture coordinate of the glyph's right edge.
+     * @param v1 Texture coordinate of the glyph's bottom edge.
+     * @param color Color of the glyph. Must not be null.
+     * @param opacity Opacity of the glyph. Must be in [0, 1].
+     */
+    public void submitDistanceField(final float[] matrix, final int offset, final int texture,
+                                    final float u0, final float v0, final float u1, final float v1,
+                                    final Color color, final float opacity) {
+        checkState(distanceFieldShader.isPresent(), "The distance field shader sources must be bound!");
+        
+        collect(matrix, offset, texture, u0, v0, u1, v1, color, opacity, true);
+    }
+    
+    /** Collects a quad, see submit(). */
+    private void collect(final float[] matrix, final int offset, final int texture,
+                         final float u0, final float v0, final float u1, final float v1,
+                         final Color color, final float opacity, final boolean isDistanceField) {
+        checkNotNull(matrix);
+        checkNotNull(color);
+        checkArgument((0.0f <= opacity) && (opacity <= 1.0f), "Expected 0 <= "
+                + "opacity <= 1.0, got %s", opacity);
+        
+        // Flush the collected quads if this one can't be drawn with them
+        if ((numSprites == MAX_SPRITES) || ((numSprites > 0) &&
+            ((texture != this.texture) || (isDistanceField != this.isDistanceField)))) {
+            flush();
+        }
+        if (numSprites == 0) { // If this is the first quad of the batch
+            this.isDistanceField = isDistanceField;
+            this.texture = texture;
+            registry.setPendingBatch(this);
+        }
+        
+        // Fold the opacity into the quad's color, as the SpriteShader applies it
+        final float colorOpacity = (texture == NOT_SET) ? opacity : 1.0f;
+        final float red = color.getRed() * colorOpacity;
+        final float green = color.getGreen() * colorOpacity;
+        final float blue = color.getBlue() * colorOpacity;
+        final float alpha = color.getAlpha() * opacity;
+        if (isInstanced() && !isDistanceField) { // Write out the transformation for the GPU to apply
+            int pos = numSprites * InstancedSpriteShader.INSTANCE_SIZE;
+            System.arraycopy(matrix, offset, vertices, pos, Constants.MATRIX_SIZE);
+            pos += Constants.MATRIX_SIZE;
+            vertices[pos++] = red;
+            vertices[pos++] = green;
+            vertices[pos++] = blue;
+            vertices[pos++] = alpha;
+            vertices[pos++] = u0;
+            vertices[pos++] = v0;
+            vertices[pos++] = u1;
+            vertices[pos] = v1;
+            
+            numSprites++;
+            return;
+        }
+        
+        // Otherwise transform the corners of the unit square into clip space
+        transformCorner(matrix, offset, -0.5f, 0.5f, 0);
+        transformCorner(matrix, offset, -0.5f, -0.5f, 3);
+        transformCorner(matrix, offset, 0.5f, 0.5f, 6);
+        transformCorner(matrix, offset, 0.5f, -0.5f, 9);
+        
+        // Write out the corners, in the order of the quad index buffer
+        int pos = numSprites * SPRITE_SIZE;
+        pos = writeVertex(pos, 0, red, green, blue, alpha, u0, v0); // Top left
+        pos = writeVertex(pos, 3, red, green, blue, alpha, u0, v1); // Bottom left
+        pos = writeVertex(pos, 6, red, green, blue, alpha, u1, v0); // Top right
+        writeVertex(pos, 9, red, green, blue, alpha, u1, v1); // Bottom right
+        
+        numSprites++;
+    }
+    
+    /** Transforms a point of the unit square into the corners array. */
+    private void transformCorner(final float[] m, final int offset,
+                                 final float x, final float y, final int corner) {
+        final float w = m[offset + 3] * x + m[offset + 7] * y + m[offset + 15];
+        
+        corners[corner] = (m[offset] * x + m[offset + 4] * y + m[offset + 12]) / w;
+        corners[corner + 1] = (m[offset + 1] * x + m[offset + 5] * y + m[offset + 13]) / w;
+        corners[corner + 2] = (m[offset + 2] * x + m[offset + 6] * y + m[offset + 14]) / w;
+    }
+    
+    /** Writes a vertex at the position, returning the position of the next vertex. */
+    private int writeVertex(int pos, final int corner,
+                            final float red, final float green, final float blue, final float alpha,
+                            final float u, final float v) {
+        vertices[pos++] = corners[corner];
+        vertices[pos++] = corners[corner + 1];
+        vertices[pos++] = corners[corner + 2];
+        vertices[pos++] = red;
+        vertices[pos++] = green;
+        vertices[pos++] = blue;
+        vertices[pos++] = alpha;
+        vertices[pos++] = u;
+        vertices[pos++] = v;
+        
+        return pos;
+    }
+}
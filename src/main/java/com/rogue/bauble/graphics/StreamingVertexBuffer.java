@@ -0,0 +1,144 @@
+package com.rogue.bauble.graphics;
+
+import android.opengl.GLES20;
+import static com.google.common.base.Preconditions.*;
+import com.rogue.bauble.graphics.shaders.ShaderRegistry;
+import com.rogue.bauble.misc.Constants;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Streams vertices that change every frame, such as batched sprites, into a
+ * small ring of dynamic VBOs without making the CPU wait on the GPU.
+ * 
+ * Each write is appended to the current buffer with glBufferSubData, into a
+ * range no queued draw reads from. Once the current buffer is full, the ring
+ * moves on to the next buffer and orphans its storage with a null
+ * glBufferData, so the driver hands out fresh storage rather than waiting for
+ * draws still reading the old contents. All writes are staged through a
+ * single native buffer allocated up front.
+ * 
+ * The bytes streamed are reported to the ShaderRegistry's frame counters.
+ * Must only be used from the GL thread.
+ * 
+ * @author R. Matt McCann
+ */
+public class StreamingVertexBuffer {
+    /** Default number of buffers in the ring. */
+    public static final int DEFAULT_RING_SIZE = 3;
+    
+    /** Marks a buffer as not yet created in the current context. */
+    private static final int NOT_SET = 0;
+    
+    /** Size of each buffer in bytes. */
+    private final int capacity;
+    
+    /** Index of the buffer being written within the ring. */
+    private int current = 0;
+    
+    /** OpenGL references to the buffers of the ring, NOT_SET until created. */
+    private final int[] handles;
+    
+    /** Tracks the buffer bindings and counts the bytes streamed. */
+    private final ShaderRegistry registry;
+    
+    /** Native buffer every write is staged through. */
+    private final ByteBuffer staging;
+    
+    /** Float view of the staging buffer. */
+    private final FloatBuffer stagingFloats;
+    
+    /** Byte offset of the next write within the current buffer. */
+    private int writeOffset;
+    
+    /**
+     * @param registry Must not be null.
+     * @param capacity Size of each buffer in bytes. Must be > 0.
+     */
+    public StreamingVertexBuffer(final ShaderRegistry registry, final int capacity) {
+        this(registry, capacity, DEFAULT_RING_SIZE);
+    }
+    
+    /**
+     * @param registry Must not be null.
+     * @param capacity Size of each buffer in bytes. Must be > 0.
+     * @param ringSize Number of buffers in the ring. Must be > 0.
+     */
+    public StreamingVertexBuffer(final ShaderRegistry registry, final int capacity,
+                                 final int ringSize) {
+        checkArgument(capacity > 0, "Capacity must be > 0, got %s", capacity);
+        checkArgument(ringSize > 0, "RingSize must be > 0, got %s", ringSize);
+        
+        this.capacity = capacity;
+        this.handles = new int[ringSize];
+        this.registry = checkNotNull(registry);
+        this.staging = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        this.stagingFloats = staging.asFloatBuffer();
+        this.writeOffset = capacity; // Forces the first write to set up a buffer
+    }
+    
+    /** Moves on to the next buffer of the ring, orphaning its previous contents. */
+    private void advance() {
+        current = (current + 1) % handles.length;
+        
+        if (handles[current] == NOT_SET) { // If the buffer doesn't exist in this context yet
+            GLES20.glGenBuffers(1, handles, current);
+        }
+        
+        registry.bindArrayBuffer(handles[current]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, capacity, null, GLES20.GL_STREAM_DRAW);
+        writeOffset = 0;
+    }
+    
+    public int getCapacity() { return capacity; }
+    
+    /** @return OpenGL reference to the buffer holding the most recent write. */
+    public int getHandle() { return handles[current]; }
+    
+    /**
+     * Forgets the buffers, such as after the GL context is lost. They are
+     * recreated by the next write.
+     */
+    public void invalidate() {
+        current = 0;
+        for (int iter = 0; iter < handles.length; iter++) {
+            handles[iter] = NOT_SET;
+        }
+        writeOffset = capacity;
+    }
+    
+    /**
+     * Streams vertices into the ring. The vertices are drawn from the buffer
+     * returned by getHandle(), starting at the returned byte offset.
+     * 
+     * @param data Vertex data. Must not be null.
+     * @param offset Offset of the vertices within the array.
+     * @param count Number of floats to stream. Must fit in a single buffer.
+     * @return Byte offset of the vertices within the buffer.
+     */
+    public int write(final float[] data, final int offset, final int count) {
+        checkNotNull(data);
+        final int numBytes = count * Constants.BYTES_PER_FLOAT;
+        checkArgument((0 < numBytes) && (numBytes <= capacity), "Expected 0 < "
+                + "bytes <= %s, got %s", capacity, numBytes);
+        
+        if (writeOffset + numBytes > capacity) { // If the current buffer is full
+            advance();
+        } else {
+            registry.bindArrayBuffer(handles[current]);
+        }
+        
+        // Stage the vertices and append them past the ranges already in use
+        stagingFloats.clear();
+        stagingFloats.put(data, offset, count);
+        staging.position(Constants.NO_OFFSET);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, writeOffset, numBytes, staging);
+        registry.recordStreamedBytes(numBytes);
+        
+        final int myOffset = writeOffset;
+        writeOffset += numBytes;
+        
+        return myOffset;
+    }
+}
@@ -0,0 +1,244 @@
+package com.rogue.bauble.graphics;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import static com.google.common.base.Preconditions.*;
+import com.rogue.bauble.misc.Constants;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Describes how the position, color, and texture coordinate of each vertex
+ * are packed into a VBO, so that DrawUtils packs vertices and the shaders
+ * point their attributes at them from the same description.
+ * 
+ * Besides the float layouts the VBO builders have always produced, packed
+ * layouts store 2D positions as 2 floats, colors as normalized unsigned bytes,
+ * and texture coordinates as normalized unsigned shorts, cutting a textured
+ * and colored vertex from 36 bytes to 16. Texture coordinates of packed
+ * layouts must lie in [0, 1]; atlas regions are applied by the shaders.
+ * 
+ * @author R. Matt McCann
+ */
+public final class VertexLayout {
+    /** Vertex attributes a layout may hold, always packed in this order. */
+    public enum Attribute { POSITION, COLOR, TEX_COORD }
+    
+    /** Formats an attribute may be stored in. */
+    public enum Format {
+        /** 2 floats. */
+        FLOAT2(2, GLES20.GL_FLOAT, false, 8),
+        
+        /** 3 floats. */
+        FLOAT3(3, GLES20.GL_FLOAT, false, 12),
+        
+        /** 4 floats. */
+        FLOAT4(4, GLES20.GL_FLOAT, false, 16),
+        
+        /** 2 half floats. Requires OpenGL ES 3.0, see ShaderRegistry.isGles3(). */
+        HALF_FLOAT2(2, GLES30.GL_HALF_FLOAT, false, 4),
+        
+        /** 4 unsigned bytes, normalized from [0, 255] to [0, 1]. */
+        UBYTE4_NORM(4, GLES20.GL_UNSIGNED_BYTE, true, 4),
+        
+        /** 2 unsigned shorts, normalized from [0, 65535] to [0, 1]. */
+        USHORT2_NORM(2, GLES20.GL_UNSIGNED_SHORT, true, 4);
+        
+        /** Whether or not the stored integers are normalized into [0, 1]. */
+        private final boolean isNormalized;
+        
+        /** Size of the attribute in bytes. */
+        private final int numBytes;
+        
+        /** Number of components of the attribute. */
+        private final int numComponents;
+        
+        /** OpenGL type of each component. */
+        private final int type;
+        
+        private Format(final int numComponents, final int type, final boolean isNormalized,
+                       final int numBytes) {
+            this.isNormalized = isNormalized;
+            this.numBytes = numBytes;
+            this.numComponents = numComponents;
+            this.type = type;
+        }
+        
+        public int getNumBytes() { return numBytes; }
+        
+        public int getNumComponents() { return numComponents; }
+        
+        public int getType() { return type; }
+        
+        public boolean isNormalized() { return isNormalized; }
+    }
+    
+    /** Float position and color, as DrawUtils.buildUnitSquarePcVbo() packs. */
+    public static final VertexLayout POS_COLOR =
+            new VertexLayout("PosColor", Format.FLOAT3, Format.FLOAT4, null);
+    
+    /** Float position, color, and texture coordinate, as DrawUtils.buildUnitSquarePctVbo() packs. */
+    public static final VertexLayout POS_COLOR_TEX =
+            new VertexLayout("PosColorTex", Format.FLOAT3, Format.FLOAT4, Format.FLOAT2);
+    
+    /** Float position and texture coordinate, as DrawUtils.getUnitSquarePtVbo() used to pack. */
+    public static final VertexLayout POS_TEX =
+            new VertexLayout("PosTex", Format.FLOAT3, null, Format.FLOAT2);
+    
+    /** 2D position and byte color, 12 bytes per vertex. */
+    public static final VertexLayout PACKED_POS_COLOR =
+            new VertexLayout("PackedPosColor", Format.FLOAT2, Format.UBYTE4_NORM, null);
+    
+    /** 2D position, byte color, and short texture coordinate, 16 bytes per vertex. */
+    public static final VertexLayout PACKED_POS_COLOR_TEX =
+            new VertexLayout("PackedPosColorTex", Format.FLOAT2, Format.UBYTE4_NORM, Format.USHORT2_NORM);
+    
+    /** 2D position and short texture coordinate, 12 bytes per vertex. */
+    public static final VertexLayout PACKED_POS_TEX =
+            new VertexLayout("PackedPosTex", Format.FLOAT2, null, Format.USHORT2_NORM);
+    
+    /** Format of each attribute, indexed by Attribute ordinal, null if absent. */
+    private final Format[] formats = new Format[Attribute.values().length];
+    
+    /** Name of the layout, unique among layouts. */
+    private final String name;
+    
+    /** Byte offset of each attribute within a vertex, indexed by Attribute ordinal. */
+    private final int[] offsets = new int[Attribute.values().length];
+    
+    /** Size of a vertex in bytes. */
+    private final int stride;
+    
+    /**
+     * @param name Name of the layout, unique among layouts. Must not be null.
+     * @param position Format of the position. Must not be null.
+     * @param color Format of the color, null if the vertices have none.
+     * @param texCoord Format of the texture coordinate, null if the vertices have none.
+     */
+    public VertexLayout(final String name, final Format position, final Format color,
+                        final Format texCoord) {
+        this.name = checkNotNull(name);
+        formats[Attribute.POSITION.ordinal()] = checkNotNull(position);
+        formats[Attribute.COLOR.ordinal()] = color;
+        formats[Attribute.TEX_COORD.ordinal()] = texCoord;
+        
+        int offset = 0;
+        for (int attribute = 0; attribute < formats.length; attribute++) {
+            offsets[attribute] = offset;
+            if (formats[attribute] != null) {
+                offset += formats[attribute].getNumBytes();
+            }
+        }
+        this.stride = offset;
+    }
+    
+    /** @return Format of the attribute, null if the layout doesn't hold it. */
+    public Format getFormat(final Attribute attribute) {
+        return formats[attribute.ordinal()];
+    }
+    
+    public String getName() { return name; }
+    
+    /** @return Byte offset of the attribute within a vertex. */
+    public int getOffset(final Attribute attribute) {
+        return offsets[attribute.ordinal()];
+    }
+    
+    /** @return Size of a vertex in bytes. */
+    public int getStride() { return stride; }
+    
+    /** @return Whether or not the layout holds the attribute. */
+    public boolean has(final Attribute attribute) {
+        return formats[attribute.ordinal()] != null;
+    }
+    
+    /**
+     * Packs vertices of a single color into a direct buffer, ready for
+     * DrawUtils.packVerticesIntoVbo().
+     * 
+     * @param numVertices Number of vertices.
+     * @param positions x, y, z of each vertex. z is dropped by 2 component formats. Must not be null.
+     * @param color Color of every vertex. Must not be null if the layout holds colors.
+     * @param texCoords u, v of each vertex. Must not be null if the layout holds texture coordinates.
+     * @return The packed vertices, positioned at the start.
+     */
+    public ByteBuffer pack(final int numVertices, final float[] positions, final Color color,
+                           final float[] texCoords) {
+        checkArgument(positions.length >= numVertices * 3, "Expected %s positions, got %s",
+                numVertices * 3, positions.length);
+        checkArgument(!has(Attribute.COLOR) || (color != null), "Layout %s requires a color", name);
+        checkArgument(!has(Attribute.TEX_COORD) || ((texCoords != null) &&
+                (texCoords.length >= numVertices * 2)), "Layout %s requires texture coordinates", name);
+        
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(numVertices * stride)
+                .order(ByteOrder.nativeOrder());
+        final float[] rgba = has(Attribute.COLOR) ? new float[] {
+                color.getRed(), color.getGreen(), color.getBlue(), color.getAlpha()} : null;
+        
+        for (int vertex = 0; vertex < numVertices; vertex++) {
+            put(buffer, getFormat(Attribute.POSITION), positions, vertex * 3);
+            if (rgba != null) {
+                put(buffer, getFormat(Attribute.COLOR), rgba, 0);
+            }
+            if (has(Attribute.TEX_COORD)) {
+                put(buffer, getFormat(Attribute.TEX_COORD), texCoords, vertex * 2);
+            }
+        }
+        buffer.position(Constants.NO_OFFSET);
+        
+        return buffer;
+    }
+    
+    /** Writes the components of an attribute in the format. */
+    private static void put(final ByteBuffer buffer, final Format format,
+                            final float[] values, final int offset) {
+        for (int component = 0; component < format.getNumComponents(); component++) {
+            final float value = values[offset + component];
+            
+            switch (format) {
+                case HALF_FLOAT2:
+                    buffer.putShort(toHalfFloat(value));
+                    break;
+                case UBYTE4_NORM:
+                    buffer.put((byte) Math.round(clamp(value) * 255.0f));
+                    break;
+                case USHORT2_NORM:
+                    buffer.putShort((short) Math.round(clamp(value) * 65535.0f));
+                    break;
+                default:
+                    buffer.putFloat(value);
+                    break;
+            }
+        }
+    }
+    
+    /** @return The value clamped into [0, 1]. */
+    private static float clamp(final float value) {
+        return Math.max(0.0f, Math.min(1.0f, value));
+    }
+    
+    /** @return Bits of the half float nearest the value, flushing denormals to zero. */
+    static short toHalfFloat(final float value) {
+        final int bits = Float.floatToIntBits(value);
+        final int sign = (bits >>> 16) & 0x8000;
+        final int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+        final int mantissa = bits & 0x7fffff;
+        
+        if (exponent >= 0x1f) { // Too large, infinite, or NaN
+            final int nan = (((bits >>> 23) & 0xff) == 0xff) && (mantissa != 0) ? 0x200 : 0;
+            return (short) (sign | 0x7c00 | nan);
+        }
+        if (exponent <= 0) { // Too small for a normal half float
+            return (short) sign;
+        }
+        
+        // Round the mantissa to nearest, carrying into the exponent if needed
+        final int half = sign | (exponent << 10) | (mantissa >> 13);
+        return (short) (half + ((mantissa >> 12) & 1));
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
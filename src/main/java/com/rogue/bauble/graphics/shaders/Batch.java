@@ -0,0 +1,19 @@
+package com.rogue.bauble.graphics.shaders;
+
+/**
+ * Collects draws and issues them together. A batch holding draws marks
+ * itself pending with the ShaderRegistry, which flushes it before any state
+ * change that would otherwise reorder its draws with later ones.
+ * 
+ * @author R. Matt McCann
+ */
+public interface Batch {
+    /** Issues the collected draws. Must be called from the GL thread. */
+    void flush();
+    
+    /**
+     * Forgets any GL objects owned by the batch, as well as any collected
+     * draws, such as after the GL context is lost.
+     */
+    void invalidate();
+}
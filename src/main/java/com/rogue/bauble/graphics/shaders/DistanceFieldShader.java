@@ -0,0 +1,155 @@
+package com.rogue.bauble.graphics.shaders;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import static com.google.common.base.Preconditions.*;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.rogue.bauble.graphics.VertexLayout;
+import com.rogue.bauble.misc.Constants;
+import javax.inject.Named;
+
+/**
+ * Shader program that draws glyphs from a signed distance field atlas, such
+ * as that of a GlyphMap in distance field mode. The atlas holds the distance
+ * to each glyph's edge in its alpha channel, 0.5 on the edge, so the edge is
+ * found per pixel and antialiased over about a pixel at any scale. One atlas
+ * thereby draws sharp text at every height.
+ * 
+ * Renders a VBO of vertex position, color, and texture coordinate data, as
+ * the SpriteBatch streams, the color tinting the glyphs. Requires the
+ * OES_standard_derivatives extension, see isSupported().
+ * 
+ * @author R. Matt McCann
+ */
+@Singleton
+public class DistanceFieldShader extends Shader {
+    /** Attribute keys defined in the shader programs. */
+    private static final String[] ATTRIBUTES = new String[] {"a_Position", "a_Color", "a_TexCoord"};
+    
+    /** OpenGL reference to the shader program's color attribute. */
+    private int colorHandle;
+    
+    /** Transformations applied to the glyphs to be rendered. Null until set. */
+    private float[] mvpMatrix = null;
+    
+    /** Offset of the transformations within the mvpMatrix array. */
+    private int mvpMatrixOffset = Constants.NO_OFFSET;
+    
+    /** Marks the texture and VBO as unset. */
+    private static final int NOT_SET = -1;
+    
+    /** OpenGL reference to the shader program's position attribute. */
+    private int positionHandle;
+    
+    /** OpenGL reference to the shader program's texture coordinate attribute. */
+    private int texCoordHandle;
+    
+    /** OpenGL reference to the distance field atlas to be drawn. */
+    private int texture = NOT_SET;
+    
+    /** Uniform keys defined in the shader programs, indexed by the U_ constants. */
+    private static final String[] UNIFORMS = new String[] {"u_MVPMatrix", "u_Texture"};
+    
+    /** Index of the MVP matrix uniform. */
+    private static final int U_MVP_MATRIX = 0;
+    
+    /** Index of the texture sampler uniform. */
+    private static final int U_TEXTURE = 1;
+    
+    /** OpenGL reference to a vertex buffer object loaded with rendering details. */
+    private int vbo = NOT_SET;
+    
+    /** Byte offset of the vertices within the VBO. */
+    private int vboOffset = Constants.NO_OFFSET;
+    
+    /** Guice injectable constructor. */
+    @Inject
+    public DistanceFieldShader(final Context context,
+                               @Named("DistanceFieldFragmentShader") int fragmentShader,
+                               final ShaderRegistry registry,
+                               @Named("DistanceFieldVertexShader") int vertexShader) {
+        super(context, registry, vertexShader, fragmentShader, ATTRIBUTES);
+        
+        setUniforms(UNIFORMS);
+    }
+    
+    /** {@inheritDocs} */
+    @Override
+    protected void getAttributeHandles() {
+        final int programHandle = getProgramHandle();
+        
+        // Get the attributes
+        positionHandle = GLES20.glGetAttribLocation(programHandle, "a_Position");
+        colorHandle = GLES20.glGetAttribLocation(programHandle, "a_Color");
+        texCoordHandle = GLES20.glGetAttribLocation(programHandle, "a_TexCoord");
+    }
+    
+    /**
+     * @return Whether or not the current context can compile the shader,
+     *         which needs GL_OES_standard_derivatives. Users should fall back
+     *         to coverage glyphs otherwise.
+     */
+    public boolean isSupported() {
+        return getRegistry().hasStandardDerivatives();
+    }
+    
+    /** {@inheritDocs} */
+    @Override
+    public void draw(final int drawMode, final int numVertices) {
+        // Check that all the required parameters have been set
+        checkState(mvpMatrix != null, "You must call setMVPMatrix() before drawing!");
+        checkState(texture != NOT_SET, "You must call setTexture() before drawing!");
+        checkState(vbo != NOT_SET, "You must call setVBO() before drawing!");
+        
+        final ShaderRegistry registry = getRegistry();
+        selectVariant(0);
+        
+        // Pass in the MVP matrix
+        uniformMatrix4(U_MVP_MATRIX, mvpMatrix, mvpMatrixOffset);
+        
+        // Pass in the texture
+        final int activeTexture = 0;
+        registry.bindTexture(activeTexture, texture);
+        uniform1i(U_TEXTURE, activeTexture);
+        
+        // Pass in the positions, colors, and texture coordinates
+        final VertexLayout layout = VertexLayout.POS_COLOR_TEX;
+        registry.bindArrayBuffer(vbo);
+        pointAttribute(layout, VertexLayout.Attribute.POSITION, positionHandle, vboOffset);
+        pointAttribute(layout, VertexLayout.Attribute.COLOR, colorHandle, vboOffset);
+        pointAttribute(layout, VertexLayout.Attribute.TEX_COORD, texCoordHandle, vboOffset);
+        
+        drawVertices(drawMode, numVertices);
+        
+        // Clean up
+        mvpMatrix = null;
+        mvpMatrixOffset = Constants.NO_OFFSET;
+        texture = NOT_SET;
+        vbo = NOT_SET;
+        vboOffset = Constants.NO_OFFSET;
+    }
+    
+    /**
+     * @param matrix Must not be null.
+     * @param offset Offset of the matrix within the array, such as an MVP arena offset.
+     */
+    public void setMVPMatrix(final float[] matrix, final int offset) {
+        mvpMatrix = checkNotNull(matrix);
+        mvpMatrixOffset = offset;
+    }
+    
+    /** @param texture Distance field atlas of the next draw. */
+    public void setTexture(final int texture) {
+        this.texture = texture;
+    }
+    
+    /**
+     * @param vbo Position, color, and texture coordinate VBO.
+     * @param offset Byte offset of the vertices within the VBO, such as of a streamed write.
+     */
+    public void setVBO(final int vbo, final int offset) {
+        this.vbo = vbo;
+        this.vboOffset = offset;
+    }
+}
@@ -0,0 +1,239 @@
+package com.rogue.bauble.graphics.shaders;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import static com.google.common.base.Preconditions.*;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.rogue.bauble.graphics.DrawUtils;
+import com.rogue.bauble.graphics.VertexLayout;
+import com.rogue.bauble.misc.Constants;
+import javax.inject.Named;
+
+/**
+ * OpenGL ES 3.0 shader program that draws many textured and colored quads
+ * with a single instanced draw call. Each instance is a unit quad with its
+ * own Model-View-Projection matrix, color, and texture region, read from an
+ * instance buffer of INSTANCE_SIZE floats per quad. The quad corners and
+ * instance attribute setup live in a vertex array object, so a draw only
+ * re-points the instance attributes when the instance buffer moves.
+ * 
+ * Matches the output of SpriteShader drawing the same quads, multiplying the
+ * texture by the instance color. Only usable when the ShaderRegistry has
+ * selected the OpenGL ES 3.0 path, see ShaderRegistry.isGles3().
+ * 
+ * @author R. Matt McCann
+ */
+@Singleton
+public class InstancedSpriteShader extends Shader {
+    /** Attribute keys defined in the shader programs. */
+    private static final String[] ATTRIBUTES = new String[] {"a_Position", "a_TexCoord",
+            "a_Transform0", "a_Transform1", "a_Transform2", "a_Transform3", "a_Color", "a_TexRegion"};
+    
+    /** OpenGL reference to the shader program's instance color attribute. */
+    private int colorHandle;
+    
+    /** Size of the instance color data. */
+    private static final int COLOR_DATA_SIZE = 4;
+    
+    /** Instance data offset of the color data. */
+    private static final int COLOR_OFFSET = Constants.MATRIX_SIZE * Constants.BYTES_PER_FLOAT;
+    
+    /** Number of floats per instance: the matrix, then the color, then the texture region. */
+    public static final int INSTANCE_SIZE = Constants.MATRIX_SIZE + 4 + 4;
+    
+    /** Size of the complete instance data in bytes. */
+    private static final int INSTANCE_STRIDE = INSTANCE_SIZE * Constants.BYTES_PER_FLOAT;
+    
+    /** OpenGL reference to the buffer holding the instance data. */
+    private int instanceBuffer = NOT_SET;
+    
+    /** Byte offset of the instance data within the instance buffer. */
+    private int instanceOffset = Constants.NO_OFFSET;
+    
+    /** Marks the texture, buffers, and vertex array as unset. */
+    private static final int NOT_SET = -1;
+    
+    /** Number of instances drawn by the next draw. */
+    private int numInstances = 0;
+    
+    /** OpenGL reference to the shader program's corner position attribute. */
+    private int positionHandle;
+    
+    /** OpenGL reference to the shader program's corner texture coordinate attribute. */
+    private int texCoordHandle;
+    
+    /** OpenGL reference to the shader program's instance texture region attribute. */
+    private int texRegionHandle;
+    
+    /** Size of the instance texture region data. */
+    private static final int TEX_REGION_DATA_SIZE = 4;
+    
+    /** Instance data offset of the texture region data. */
+    private static final int TEX_REGION_OFFSET = COLOR_OFFSET + COLOR_DATA_SIZE * Constants.BYTES_PER_FLOAT;
+    
+    /** OpenGL reference to the loaded texture to be drawn. */
+    private int texture = NOT_SET;
+    
+    /** OpenGL references to the shader program's instance matrix column attributes. */
+    private final int[] transformHandles = new int[4];
+    
+    /** Uniform keys defined in the shader programs, indexed by the U_ constants. */
+    private static final String[] UNIFORMS = new String[] {"u_Texture"};
+    
+    /** Index of the texture sampler uniform. */
+    private static final int U_TEXTURE = 0;
+    
+    /** OpenGL reference to the vertex array object, NOT_SET until created in the current context. */
+    private int vertexArray = NOT_SET;
+    
+    /** Instance buffer the vertex array's instance attributes point into. */
+    private int vertexArrayInstanceBuffer = NOT_SET;
+    
+    /** Instance buffer offset the vertex array's instance attributes point at. */
+    private int vertexArrayInstanceOffset = NOT_SET;
+    
+    /** Guice injectable constructor. */
+    @Inject
+    public InstancedSpriteShader(final Context context,
+                                 @Named("InstancedSpriteFragmentShader") int fragmentShader,
+                                 final ShaderRegistry registry,
+                                 @Named("InstancedSpriteVertexShader") int vertexShader) {
+        super(context, registry, vertexShader, fragmentShader, ATTRIBUTES);
+        
+        setUniforms(UNIFORMS);
+    }
+    
+    /**
+     * Binds the vertex array, creating it with the quad corners and the
+     * instance attribute divisors if it doesn't exist in this context yet.
+     */
+    private void bindVertexArray() {
+        final ShaderRegistry registry = getRegistry();
+        
+        if (vertexArray != NOT_SET) {
+            registry.bindVertexArray(vertexArray);
+            return;
+        }
+        
+        final int[] handle = new int[1];
+        GLES30.glGenVertexArrays(1, handle, Constants.NO_OFFSET);
+        vertexArray = handle[0];
+        vertexArrayInstanceBuffer = NOT_SET;
+        vertexArrayInstanceOffset = NOT_SET;
+        registry.bindVertexArray(vertexArray);
+        
+        // Pass in the quad corners, shared by every instance
+        final VertexLayout cornerLayout = VertexLayout.PACKED_POS_TEX;
+        registry.bindArrayBuffer(DrawUtils.getUnitQuadPtVbo());
+        pointAttribute(cornerLayout, VertexLayout.Attribute.POSITION, positionHandle, Constants.NO_OFFSET);
+        pointAttribute(cornerLayout, VertexLayout.Attribute.TEX_COORD, texCoordHandle, Constants.NO_OFFSET);
+        
+        // Step the instance attributes once per quad
+        for (int transformHandle : transformHandles) {
+            registry.setVertexAttribArrayEnabled(transformHandle, true);
+            GLES30.glVertexAttribDivisor(transformHandle, 1);
+        }
+        registry.setVertexAttribArrayEnabled(colorHandle, true);
+        GLES30.glVertexAttribDivisor(colorHandle, 1);
+        registry.setVertexAttribArrayEnabled(texRegionHandle, true);
+        GLES30.glVertexAttribDivisor(texRegionHandle, 1);
+    }
+    
+    /** {@inheritDocs} */
+    @Override
+    protected void getAttributeHandles() {
+        final int programHandle = getProgramHandle();
+        
+        // Get the attributes
+        positionHandle = GLES20.glGetAttribLocation(programHandle, "a_Position");
+        texCoordHandle = GLES20.glGetAttribLocation(programHandle, "a_TexCoord");
+        for (int column = 0; column < transformHandles.length; column++) {
+            transformHandles[column] = GLES20.glGetAttribLocation(programHandle, "a_Transform" + column);
+        }
+        colorHandle = GLES20.glGetAttribLocation(programHandle, "a_Color");
+        texRegionHandle = GLES20.glGetAttribLocation(programHandle, "a_TexRegion");
+        
+        // The program was (re)linked, so any vertex array belongs to a lost context
+        vertexArray = NOT_SET;
+    }
+    
+    /**
+     * Draws the instances of the loaded settings. Use drawInstances().
+     * 
+     * @param drawMode Primitive type, such as GL_TRIANGLES.
+     * @param numVertices Number of quad indices drawn per instance.
+     */
+    @Override
+    public void draw(final int drawMode, final int numVertices) {
+        // Check that all the required parameters have been set
+        checkState(isGles3(), "The instanced sprite shader requires OpenGL ES 3.0!");
+        checkState(instanceBuffer != NOT_SET, "You must call setInstanceBuffer() before drawing!");
+        checkState(texture != NOT_SET, "You must call setTexture() before drawing!");
+        
+        final ShaderRegistry registry = getRegistry();
+        selectVariant(0);
+        
+        // Pass in the texture
+        final int activeTexture = 0;
+        registry.bindTexture(activeTexture, texture);
+        uniform1i(U_TEXTURE, activeTexture);
+        
+        // Point the instance attributes at the instance data, if they've moved
+        bindVertexArray();
+        if ((vertexArrayInstanceBuffer != instanceBuffer) ||
+            (vertexArrayInstanceOffset != instanceOffset)) {
+            registry.bindArrayBuffer(instanceBuffer);
+            for (int column = 0; column < transformHandles.length; column++) {
+                registry.vertexAttribPointer(transformHandles[column], 4, GLES20.GL_FLOAT,
+                        INSTANCE_STRIDE, instanceOffset + column * 4 * Constants.BYTES_PER_FLOAT);
+            }
+            registry.vertexAttribPointer(colorHandle, COLOR_DATA_SIZE, GLES20.GL_FLOAT,
+                    INSTANCE_STRIDE, instanceOffset + COLOR_OFFSET);
+            registry.vertexAttribPointer(texRegionHandle, TEX_REGION_DATA_SIZE, GLES20.GL_FLOAT,
+                    INSTANCE_STRIDE, instanceOffset + TEX_REGION_OFFSET);
+            
+            vertexArrayInstanceBuffer = instanceBuffer;
+            vertexArrayInstanceOffset = instanceOffset;
+        }
+        
+        setIndexBuffer(DrawUtils.getQuadIndexBuffer());
+        drawVerticesInstanced(drawMode, numVertices, numInstances);
+        
+        // Restore the default vertex array, which the OpenGL ES 2.0 path draws with
+        registry.bindVertexArray(0);
+        
+        // Clean up
+        instanceBuffer = NOT_SET;
+        instanceOffset = Constants.NO_OFFSET;
+        numInstances = 0;
+        texture = NOT_SET;
+    }
+    
+    /**
+     * Draws unit quads, one per instance in the instance buffer.
+     * 
+     * @param numInstances Must be >= 0.
+     */
+    public void drawInstances(final int numInstances) {
+        checkArgument(numInstances >= 0, "NumInstances must be >= 0, got %s", numInstances);
+        
+        this.numInstances = numInstances;
+        draw(GLES20.GL_TRIANGLES, DrawUtils.NUM_QUAD_INDICES);
+    }
+    
+    /**
+     * @param instanceBuffer Buffer of INSTANCE_SIZE floats per quad.
+     * @param offset Byte offset of the first instance within the buffer, such as of a streamed write.
+     */
+    public void setInstanceBuffer(final int instanceBuffer, final int offset) {
+        this.instanceBuffer = instanceBuffer;
+        this.instanceOffset = offset;
+    }
+    
+    /** @param texture Texture of the next draw, such as SpriteShader.getWhiteTexture() for solid quads. */
+    public void setTexture(final int texture) {
+        this.texture = texture;
+    }
+}
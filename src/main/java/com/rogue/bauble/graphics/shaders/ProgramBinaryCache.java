@@ -0,0 +1,264 @@
+package com.rogue.bauble.graphics.shaders;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.io.BaseEncoding;
+import com.rogue.bauble.misc.Constants;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache of linked shader program binaries, letting programs skip
+ * compiling and linking on cold start and after the GL context is lost.
+ * 
+ * Entries are keyed by a hash of the shader sources, the bound attributes, and
+ * the driver's renderer and version strings, so a driver update or source
+ * change simply misses the cache. The driver may still reject a binary, in
+ * which case the entry is dropped and the caller falls back to a full compile.
+ * 
+ * Program binaries are retrieved through the OpenGL ES 3.0 entry points, which
+ * are only used when the context is ES 3.0 or later. Android does not expose
+ * the OES_get_program_binary entry points to Java, so ES 2.0 contexts always
+ * compile. Must only be used from the GL thread.
+ * 
+ * @author R. Matt McCann
+ */
+public class ProgramBinaryCache {
+    /** Version of the entry file format, bumped whenever it changes. */
+    private static final int FILE_VERSION = 1;
+    
+    /** Directory the entries are stored in. */
+    private final File directory;
+    
+    /** Whether the current context supports program binaries, null if not yet checked. */
+    private Boolean isSupported = null;
+    
+    /** Interface for logging events. */
+    private static final Logger logger = LoggerFactory.getLogger("ProgramBinaryCache");
+    
+    /** Renderer and version strings of the current context. */
+    private String rendererId;
+    
+    /** @param directory Directory to store entries in. Must not be null. */
+    public ProgramBinaryCache(final File directory) {
+        this.directory = checkNotNull(directory);
+    }
+    
+    /** @return File the entry with the provided key is stored in. */
+    private File getEntryFile(final String key) {
+        return new File(directory, key + ".bin");
+    }
+    
+    /**
+     * Builds the cache key of a program.
+     * 
+     * @param vertexSource Must not be null.
+     * @param fragmentSource Must not be null.
+     * @param attributes Attributes bound to the program. May be null.
+     * @return Cache key.
+     */
+    public String getKey(final String vertexSource,
+                         final String fragmentSource,
+                         final String[] attributes) {
+        isSupported(); // Make sure the renderer of the current context is known
+        
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            
+            digest.update(rendererId.getBytes("UTF-8"));
+            digest.update((byte) 0);
+            digest.update(vertexSource.getBytes("UTF-8"));
+            digest.update((byte) 0);
+            digest.update(fragmentSource.getBytes("UTF-8"));
+            if (attributes != null) {
+                for (String attribute : attributes) {
+                    digest.update((byte) 0);
+                    digest.update(attribute.getBytes("UTF-8"));
+                }
+            }
+            
+            return BaseEncoding.base16().lowerCase().encode(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException("SHA-1 is not available!", ex);
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException("UTF-8 is not available!", ex);
+        }
+    }
+    
+    /**
+     * Must be called when the GL context is (re)created, as the new context
+     * may be backed by a different driver.
+     */
+    public void invalidate() {
+        isSupported = null;
+        rendererId = null;
+    }
+    
+    /** @return Whether or not the current context can save and load program binaries. */
+    public boolean isSupported() {
+        if (isSupported == null) { // If the current context hasn't been checked yet
+            final String version = GLES20.glGetString(GLES20.GL_VERSION);
+            
+            rendererId = GLES20.glGetString(GLES20.GL_RENDERER) + "/" + version;
+            isSupported = false;
+            if ((Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) &&
+                (version != null) && !version.startsWith("OpenGL ES 2")) {
+                final int[] numFormats = new int[1];
+                GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, numFormats,
+                        Constants.NO_OFFSET);
+                isSupported = numFormats[0] > 0;
+            }
+            
+            logger.info("Program binaries supported: " + isSupported + " (" + rendererId + ")");
+        }
+        
+        return isSupported;
+    }
+    
+    /**
+     * Loads a cached program binary into a new program.
+     * 
+     * @param key Cache key of the program.
+     * @return Handle of the linked program, or 0 if the program is not cached
+     *         or the driver rejected the cached binary.
+     */
+    public int load(final String key) {
+        final File entryFile = getEntryFile(key);
+        if (!isSupported() || !entryFile.exists()) {
+            return 0;
+        }
+        
+        // Read in the binary
+        final int format;
+        final ByteBuffer binary;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(entryFile));
+            if (in.readInt() != FILE_VERSION) {
+                throw new IOException("Unknown entry file version");
+            }
+            format = in.readInt();
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            
+            binary = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.nativeOrder());
+            binary.put(bytes);
+            binary.position(Constants.NO_OFFSET);
+        } catch (IOException ex) {
+            logger.warn("Failed to read program binary " + key + ", recompiling.", ex);
+            entryFile.delete();
+            return 0;
+        } finally {
+            close(in);
+        }
+        
+        // Hand the binary to the driver, which may reject it
+        final int programHandle = GLES20.glCreateProgram();
+        GLES30.glProgramBinary(programHandle, format, binary, binary.capacity());
+        
+        final int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(programHandle, GLES20.GL_LINK_STATUS, linkStatus, Constants.NO_OFFSET);
+        if (linkStatus[0] == 0) { // If the driver rejected the binary
+            logger.info("Driver rejected program binary " + key + ", recompiling.");
+            GLES20.glDeleteProgram(programHandle);
+            entryFile.delete();
+            return 0;
+        }
+        
+        return programHandle;
+    }
+    
+    /**
+     * Hints to the driver that the binary of a program about to be linked will
+     * be retrieved.
+     * 
+     * @param programHandle Handle of the unlinked program.
+     */
+    public void prepareForStore(final int programHandle) {
+        if (isSupported()) {
+            GLES30.glProgramParameteri(programHandle,
+                    GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        }
+    }
+    
+    /**
+     * Stores the binary of a linked program. Failures are logged and ignored,
+     * as the program can always be recompiled.
+     * 
+     * @param key Cache key of the program.
+     * @param programHandle Handle of the linked program.
+     */
+    public void store(final String key, final int programHandle) {
+        if (!isSupported()) {
+            return;
+        }
+        
+        // Retrieve the binary from the driver
+        final int[] length = new int[1];
+        final int[] format = new int[1];
+        GLES20.glGetProgramiv(programHandle, GLES30.GL_PROGRAM_BINARY_LENGTH, length,
+                Constants.NO_OFFSET);
+        if (length[0] <= 0) { // If the driver won't provide the binary
+            return;
+        }
+        
+        final ByteBuffer binary = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+        GLES30.glGetProgramBinary(programHandle, length[0], length, Constants.NO_OFFSET,
+                format, Constants.NO_OFFSET, binary);
+        final byte[] bytes = new byte[length[0]];
+        binary.get(bytes);
+        
+        // Write it out, renaming into place so a partial entry is never read
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("Failed to create program binary cache " + directory);
+            return;
+        }
+        
+        final File entryFile = getEntryFile(key);
+        final File tempFile = new File(directory, key + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(tempFile));
+            out.writeInt(FILE_VERSION);
+            out.writeInt(format[0]);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.close();
+            out = null;
+            
+            if (!tempFile.renameTo(entryFile)) {
+                throw new IOException("Failed to rename " + tempFile);
+            }
+        } catch (IOException ex) {
+            logger.warn("Failed to store program binary " + key, ex);
+            tempFile.delete();
+        } finally {
+            close(out);
+        }
+    }
+    
+    /** Closes the stream, ignoring failures. */
+    private static void close(final Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                logger.warn("Failed to close program binary entry.", ex);
+            }
+        }
+    }
+}
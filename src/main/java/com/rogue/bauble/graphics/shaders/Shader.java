@@ -2,14 +2,32 @@ package com.rogue.bauble.graphics.shaders;
 
 import android.content.Context;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
+import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import com.rogue.bauble.graphics.DrawUtils;
+import com.rogue.bauble.graphics.VertexLayout;
 import com.rogue.bauble.misc.Constants;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Helper class that compiles and tracks shader programs.
  * 
+ * A shader may be compiled into several variants from the same source, one
+ * per combination of its variant defines (see setVariantDefines()). Variant
+ * bit i enables "#define defines[i]" in both sources. Subclasses pick the
+ * cheapest variant for each draw with selectVariant(), and upload uniforms by
+ * index (see setUniforms()) so the current variant's locations and shadow
+ * copies are used. Linked variants are cached in the ShaderRegistry.
+ * 
+ * Subclasses may use OpenGL ES 3.0 features, such as vertex array objects
+ * and drawVerticesInstanced(), when isGles3() is true, and must otherwise
+ * fall back to the OpenGL ES 2.0 calls.
+ * 
  * @author R. Matt McCann
  */
 public abstract class Shader {
@@ -22,18 +40,42 @@ public abstract class Shader {
     /** Resource id of the fragment shader program. */
     private final int fragmentShaderSourceID;
     
-    /** OpenGL id of the loaded and linked shader program. */
-    private int programHandle;
+    /** Whether or not getAttributeHandles() has run since the variants were last forgotten. */
+    private boolean hasAttributeHandles = false;
+    
+    /** Element buffer of the next draw, NO_INDEX_BUFFER to draw the vertices in order. */
+    private int indexBuffer = NO_INDEX_BUFFER;
+    
+    /** Marks the next draw as not indexed. */
+    private static final int NO_INDEX_BUFFER = 0;
+    
+    /** Small id unique to this shader, see getId(). */
+    private final int id = nextId.incrementAndGet();
+    
+    /** Id of the most recently constructed shader. */
+    private static final AtomicInteger nextId = new AtomicInteger();
+    
+    /** Currently selected variant, null until one is selected. */
+    private ShaderProgram program = null;
+    
+    /** Linked variants, indexed by variant bits. Null entries are not yet resolved. */
+    private ShaderProgram[] programs = new ShaderProgram[1];
     
     /** Used to determine which shader is currently active 
         to prevent repetitive activations. */
     private final ShaderRegistry registry;
     
+    /** Uniform names, indexed by the uniform indexes subclasses upload with. */
+    private String[] uniforms = new String[0];
+    
+    /** Preprocessor defines toggled by the variant bits. */
+    private String[] variantDefines = new String[0];
+    
     /** Resource id of the vertex shader program. */
     private final int vertexShaderSourceID;
     
     /**
-     * Compiles and links the program.
+     * Constructor. The program is compiled and linked lazily, see compile().
      * 
      * @param vertexSource Android resource id of raw vertex source
      * @param fragmentSource Android resource id of raw fragment source
@@ -49,15 +91,60 @@ public abstract class Shader {
         this.fragmentShaderSourceID = fragmentShaderSourceID;
         this.registry = registry;
         this.vertexShaderSourceID = vertexShaderSourceID;
+        
+        // Start reading the sources as early as possible
+        if (registry.getSourceLoader().isPresent()) {
+            registry.getSourceLoader().get().preload(vertexShaderSourceID, fragmentShaderSourceID);
+        }
     }
     
     /**
-     * Activates this shader.
+     * Activates this shader through the registry, which compiles its base
+     * variant first if it hasn't been yet, see selectBaseVariant().
      */
     public final void activate() {
         registry.activate(this);
     }
     
+    /**
+     * Inserts the preprocessor defines of a variant at the top of the source,
+     * after the #version directive if there is one.
+     * 
+     * @param source Must not be null.
+     * @param variant Variant bits.
+     * @return Source of the variant.
+     */
+    private String applyDefines(final String source, final int variant) {
+        if (variant == 0) {
+            return source;
+        }
+        
+        final StringBuilder defines = new StringBuilder();
+        for (int define = 0; define < variantDefines.length; define++) {
+            if ((variant & (1 << define)) != 0) {
+                defines.append("#define ").append(variantDefines[define]).append('\n');
+            }
+        }
+        
+        int insertAt = 0;
+        if (source.startsWith("#version")) {
+            insertAt = source.indexOf('\n') + 1;
+        }
+        
+        return source.substring(0, insertAt) + defines + source.substring(insertAt);
+    }
+    
+    /**
+     * Whether or not the shader currently defers its draws to a batch, in
+     * which case activating it leaves the active program and any pending
+     * batch alone.
+     * 
+     * @return False unless overridden.
+     */
+    protected boolean defersDraws() {
+        return false;
+    }
+    
     /**
      * Helper function to compile and link a program.
      * 
@@ -89,6 +176,11 @@ public abstract class Shader {
                 }
             }
             
+            // Let the driver know the binary will be cached
+            if (registry.getProgramBinaryCache().isPresent()) {
+                registry.getProgramBinaryCache().get().prepareForStore(myProgramHandle);
+            }
+            
             // Link the two shaders together into a program
             GLES20.glLinkProgram(myProgramHandle);
             
@@ -135,74 +227,389 @@ public abstract class Shader {
         return shaderHandle;
     }
     
-    /** Retrieve the attributes for the program. */
+    /**
+     * Retrieve the attributes for the program. Attributes are bound to their
+     * index in the attributes array, so their handles are the same for every
+     * variant.
+     */
     protected abstract void getAttributeHandles(); 
     
+    /**
+     * Returns a small id unique to this shader, which unlike the program
+     * handle is stable across GL contexts, such as for RenderQueue keys.
+     * 
+     * @return Id of the shader.
+     */
+    public final int getId() {
+        return id;
+    }
+    
+    /**
+     * Selects the base variant, linking it first if necessary, unless a
+     * variant has already been selected. Must be called from the GL thread.
+     */
+    final void selectBaseVariant() {
+        if (program == null) { // If no variant has been selected yet
+            program = getVariant(0);
+        }
+    }
+    
+    /** @return Handle of the currently selected variant's program, 0 if none. */
     protected final int getProgramHandle() {
-        return programHandle;
+        return (program != null) ? program.getHandle() : 0;
     }
     
     /**
-     * Reads in the source code from the specified raw file.
+     * Returns the linked program of a variant, linking it if necessary. Must
+     * be called from the GL thread.
+     * 
+     * @param variant Variant bits.
+     * @return Linked program of the variant.
+     */
+    private ShaderProgram getVariant(final int variant) {
+        if (programs[variant] == null) { // If the variant hasn't been resolved yet
+            final String key = getVariantKey(variant);
+            final Optional<ShaderProgram> cached = registry.getProgram(key);
+            
+            if (cached.isPresent()) { // If another instance already linked it
+                programs[variant] = cached.get();
+            } else {
+                programs[variant] = new ShaderProgram(linkVariant(variant), uniforms);
+                registry.putProgram(key, programs[variant]);
+            }
+            
+            if (!hasAttributeHandles) { // If this is the first variant resolved
+                program = programs[variant];
+                getAttributeHandles();
+                hasAttributeHandles = true;
+            }
+        }
+        
+        return programs[variant];
+    }
+    
+    /** @return Registry cache key of the variant. */
+    private String getVariantKey(final int variant) {
+        final StringBuilder key = new StringBuilder();
+        
+        key.append(vertexShaderSourceID).append('/').append(fragmentShaderSourceID);
+        for (int define = 0; define < variantDefines.length; define++) {
+            if ((variant & (1 << define)) != 0) {
+                key.append('/').append(variantDefines[define]);
+            }
+        }
+        
+        return key.toString();
+    }
+    
+    /**
+     * Selects the variant used by the following draw, linking it first if
+     * necessary, and makes its program the active program.
+     * 
+     * @param variant Variant bits.
+     */
+    protected final void selectVariant(final int variant) {
+        registry.flushPendingBatch(); // Keep the draw ordered after any batched draws
+        program = getVariant(variant);
+        registry.useProgram(program.getHandle());
+    }
+    
+    /**
+     * Uploads a float uniform of the selected variant, unless it already
+     * holds the value.
+     * 
+     * @param uniform Index of the uniform within the uniforms array.
+     */
+    protected final void uniform1f(final int uniform, final float value) {
+        recordCall(uniform, program.uniform1f(uniform, value));
+    }
+    
+    /**
+     * Uploads an int uniform of the selected variant, unless it already holds
+     * the value.
+     * 
+     * @param uniform Index of the uniform within the uniforms array.
+     */
+    protected final void uniform1i(final int uniform, final int value) {
+        recordCall(uniform, program.uniform1i(uniform, value));
+    }
+    
+    /**
+     * Uploads a vec4 uniform of the selected variant, unless it already holds
+     * the value.
+     * 
+     * @param uniform Index of the uniform within the uniforms array.
+     */
+    protected final void uniform4f(final int uniform, final float x, final float y,
+                                   final float z, final float w) {
+        recordCall(uniform, program.uniform4f(uniform, x, y, z, w));
+    }
+    
+    /**
+     * Uploads a 4x4 matrix uniform of the selected variant, unless it already
+     * holds the value.
+     * 
+     * @param uniform Index of the uniform within the uniforms array.
+     * @param matrix Matrix to upload. Must not be null.
+     * @param offset Offset of the matrix within the array.
+     */
+    protected final void uniformMatrix4(final int uniform, final float[] matrix, final int offset) {
+        recordCall(uniform, program.uniformMatrix4(uniform, matrix, offset));
+    }
+    
+    /**
+     * Records an issued or elided uniform upload with the registry. Uploads
+     * to uniforms the selected variant compiled out aren't recorded, as they
+     * were never needed rather than elided.
+     */
+    private void recordCall(final int uniform, final boolean isIssued) {
+        if (program.getUniformLocation(uniform) == ShaderProgram.NO_LOCATION) {
+            return;
+        }
+        
+        if (isIssued) {
+            registry.recordIssuedCall();
+        } else {
+            registry.recordElidedCall();
+        }
+    }
+    
+    /** @return Tracker of the OpenGL state shared between shaders. */
+    protected final ShaderRegistry getRegistry() {
+        return registry;
+    }
+    
+    /**
+     * Retrieves the source code of the specified raw file, from the registry's
+     * source loader if it has one.
      * 
      * @param resourceID Android resource ID of the source code
      * @return The source code
      */
-    private String getSourceFromRawFile(final int resourceID) {
-        String nextLine;
-        final StringBuilder body = new StringBuilder();
+    private String getSource(final int resourceID) {
+        final Optional<ShaderSourceLoader> loader = registry.getSourceLoader();
         
-        // Retrieve the resource stream
-        final BufferedReader in = new BufferedReader(new InputStreamReader(
-                context.getResources().openRawResource(resourceID)));
+        if (loader.isPresent()) {
+            return loader.get().getSource(resourceID);
+        }
         
-        // Parse the source file
         try {
-            while ((nextLine = in.readLine()) != null) {
-                body.append(nextLine);
-                body.append('\n');
-            }
+            return ShaderSourceLoader.readSource(context, resourceID);
         } catch (IOException ex) {
-            throw new RuntimeException("Failed to parse source file!");
+            throw new RuntimeException("Failed to parse source file!", ex);
         }
-        
-        return body.toString();
     }
     
     /**
-     * Returns a handle to the requested program.
+     * Prepares the shader for use in the current GL context. Compilation is
+     * deferred until the shader is first activated or warmed up by the
+     * registry, so init() is cheap to call for every shader at startup.
      */
     public void init() {
         registry.register(this);
+        invalidateProgram();
+    }
+    
+    /** Forgets the linked variants, such as after the GL context is lost. */
+    void invalidateProgram() {
+        Arrays.fill(programs, null);
+        program = null;
+        hasAttributeHandles = false;
+    }
+    
+    /** @return Whether or not every variant has been linked in the current GL context. */
+    public final boolean isCompiled() {
+        for (ShaderProgram variant : programs) {
+            if (variant == null) {
+                return false;
+            }
+        }
         
+        return true;
+    }
+    
+    /**
+     * Compiles and links every variant now, if they aren't already. Must be
+     * called from the GL thread.
+     */
+    public final void compile() {
+        for (int variant = 0; variant < programs.length; variant++) {
+            getVariant(variant);
+        }
+    }
+    
+    /**
+     * Compiles and links a variant of the program, loading it from the binary
+     * cache if possible.
+     * 
+     * @param variant Variant bits.
+     * @return Handle of the linked program.
+     */
+    private int linkVariant(final int variant) {
         // Get the source
-        final String vertexShaderSource = getSourceFromRawFile(vertexShaderSourceID);
-        final String fragmentShaderSource = getSourceFromRawFile(fragmentShaderSourceID);
+        final String vertexShaderSource = applyDefines(getSource(vertexShaderSourceID), variant);
+        final String fragmentShaderSource = applyDefines(getSource(fragmentShaderSourceID), variant);
         
-        // Compile the source
-        final int vertexShaderHandle = compileShader(GLES20.GL_VERTEX_SHADER, 
-                vertexShaderSource);
-        final int fragmentShaderHandle = compileShader(GLES20.GL_FRAGMENT_SHADER,
-                fragmentShaderSource);
+        // Try loading the linked program from the binary cache
+        final Optional<ProgramBinaryCache> cache = registry.getProgramBinaryCache();
+        String cacheKey = null;
+        int programHandle = 0;
+        if (cache.isPresent() && cache.get().isSupported()) {
+            cacheKey = cache.get().getKey(vertexShaderSource, fragmentShaderSource, attributes);
+            programHandle = cache.get().load(cacheKey);
+        }
         
-        // Link the program and store it
-        programHandle = compileAndLinkProgram(vertexShaderHandle, 
-                fragmentShaderHandle, attributes);
+        if (programHandle == 0) { // If the program wasn't cached
+            // Compile the source
+            final int vertexShaderHandle = compileShader(GLES20.GL_VERTEX_SHADER, 
+                    vertexShaderSource);
+            final int fragmentShaderHandle = compileShader(GLES20.GL_FRAGMENT_SHADER,
+                    fragmentShaderSource);
+            
+            // Link the program and store it
+            programHandle = compileAndLinkProgram(vertexShaderHandle, 
+                    fragmentShaderHandle, attributes);
+            
+            // The linked program no longer needs the shader objects
+            GLES20.glDetachShader(programHandle, vertexShaderHandle);
+            GLES20.glDetachShader(programHandle, fragmentShaderHandle);
+            GLES20.glDeleteShader(vertexShaderHandle);
+            GLES20.glDeleteShader(fragmentShaderHandle);
+            
+            if (cacheKey != null) {
+                cache.get().store(cacheKey, programHandle);
+            }
+        }
         
-        // Get the attribute handles
-        getAttributeHandles();
+        return programHandle;
     }
     
     /**
      * Draws the loaded settings.
+     * 
+     * @param drawMode Primitive type, such as GL_TRIANGLES.
+     * @param numVertices Number of vertices drawn, or of indices if an index
+     *                    buffer is set (see setIndexBuffer()).
      */
     public abstract void draw(final int drawMode, final int numVertices);
     
     public void draw() {
         draw(GLES20.GL_TRIANGLES, Constants.NUM_VERTICES_PER_SQUARE);
     }
+    
+    /**
+     * Draws quads from a VBO of 4 vertices per quad, laid out as the unit
+     * quad VBOs of DrawUtils, through the shared quad index buffer.
+     * 
+     * @param numQuads Must be in [0, DrawUtils.MAX_INDEXED_QUADS].
+     */
+    public void drawQuads(final int numQuads) {
+        checkArgument((0 <= numQuads) && (numQuads <= DrawUtils.MAX_INDEXED_QUADS),
+                "Expected 0 <= numQuads <= %s, got %s", DrawUtils.MAX_INDEXED_QUADS, numQuads);
+        
+        setIndexBuffer(DrawUtils.getQuadIndexBuffer());
+        draw(GLES20.GL_TRIANGLES, numQuads * DrawUtils.NUM_QUAD_INDICES);
+    }
+    
+    /**
+     * Issues the draw call of the loaded settings, indexed if an index
+     * buffer was set, and clears the index buffer.
+     * 
+     * @param drawMode Primitive type, such as GL_TRIANGLES.
+     * @param count Number of vertices, or of indices if indexed.
+     */
+    protected final void drawVertices(final int drawMode, final int count) {
+        if (indexBuffer != NO_INDEX_BUFFER) { // If the draw is indexed
+            registry.bindElementBuffer(indexBuffer);
+            GLES20.glDrawElements(drawMode, count, GLES20.GL_UNSIGNED_SHORT, Constants.NO_OFFSET);
+            indexBuffer = NO_INDEX_BUFFER;
+        } else {
+            GLES20.glDrawArrays(drawMode, Constants.NO_OFFSET, count);
+        }
+    }
+    
+    /**
+     * Issues an instanced draw call of the loaded settings, indexed if an
+     * index buffer was set, and clears the index buffer. Only available when
+     * isGles3().
+     * 
+     * @param drawMode Primitive type, such as GL_TRIANGLES.
+     * @param count Number of vertices, or of indices if indexed, per instance.
+     * @param numInstances Number of instances drawn.
+     */
+    protected final void drawVerticesInstanced(final int drawMode, final int count,
+                                               final int numInstances) {
+        checkState(registry.isGles3(), "Instanced draws require OpenGL ES 3.0!");
+        
+        if (indexBuffer != NO_INDEX_BUFFER) { // If the draw is indexed
+            registry.bindElementBuffer(indexBuffer);
+            GLES30.glDrawElementsInstanced(drawMode, count, GLES20.GL_UNSIGNED_SHORT,
+                    Constants.NO_OFFSET, numInstances);
+            indexBuffer = NO_INDEX_BUFFER;
+        } else {
+            GLES30.glDrawArraysInstanced(drawMode, Constants.NO_OFFSET, count, numInstances);
+        }
+    }
+    
+    /**
+     * Enables a vertex attribute and points it at its data in the bound VBO,
+     * as the layout packs it.
+     * 
+     * @param layout Layout of the bound VBO. Must hold the attribute, in a half float
+     *               format only if isGles3(), as OpenGL ES 2.0 has no GL_HALF_FLOAT.
+     * @param attribute Attribute to point.
+     * @param handle Location of the attribute in the program.
+     * @param baseOffset Byte offset of the first vertex within the VBO.
+     */
+    protected final void pointAttribute(final VertexLayout layout,
+                                        final VertexLayout.Attribute attribute,
+                                        final int handle, final int baseOffset) {
+        final VertexLayout.Format format = layout.getFormat(attribute);
+        checkArgument(format != null, "Layout %s doesn't hold %s", layout, attribute);
+        checkState((format != VertexLayout.Format.HALF_FLOAT2) || isGles3(),
+                "Half float attributes require OpenGL ES 3.0!");
+        
+        registry.setVertexAttribArrayEnabled(handle, true);
+        registry.vertexAttribPointer(handle, format.getNumComponents(), format.getType(),
+                format.isNormalized(), layout.getStride(), baseOffset + layout.getOffset(attribute));
+    }
+    
+    /** @return Whether or not the OpenGL ES 3.0 path is available in the current context. */
+    protected final boolean isGles3() {
+        return registry.isGles3();
+    }
+    
+    /**
+     * Draws the next draw's vertices through an element buffer of 16-bit
+     * indices, such as DrawUtils.getQuadIndexBuffer().
+     * 
+     * @param indexBuffer Element buffer handle.
+     */
+    public final void setIndexBuffer(final int indexBuffer) {
+        this.indexBuffer = indexBuffer;
+    }
         
     protected final void setAttributes(final String[] attributes) {
         this.attributes = attributes;
     }
+    
+    /**
+     * @param uniforms Names of the uniforms subclasses upload, indexed by the
+     *                 uniform indexes passed to uniform1f() etc. Must not be null.
+     */
+    protected final void setUniforms(final String[] uniforms) {
+        this.uniforms = checkNotNull(uniforms);
+        invalidateProgram();
+    }
+    
+    /**
+     * @param variantDefines Preprocessor defines toggled by the variant bits,
+     *                       such that bit i toggles variantDefines[i]. Must not
+     *                       be null.
+     */
+    protected final void setVariantDefines(final String[] variantDefines) {
+        this.variantDefines = checkNotNull(variantDefines);
+        this.programs = new ShaderProgram[1 << variantDefines.length];
+        program = null;
+    }
 }
\ No newline at end of file
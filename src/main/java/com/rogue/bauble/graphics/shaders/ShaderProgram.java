@@ -0,0 +1,155 @@
+package com.rogue.bauble.graphics.shaders;
+
+import android.opengl.GLES20;
+import com.rogue.bauble.misc.Constants;
+import java.util.Arrays;
+
+/**
+ * A linked shader program, one per variant of a Shader. Holds the program's
+ * uniform locations and shadow copies of the values the program holds, so
+ * unchanged uniforms are never re-uploaded.
+ * 
+ * @author R. Matt McCann
+ */
+public final class ShaderProgram {
+    /** Location of uniforms that the variant's source compiled out. */
+    public static final int NO_LOCATION = -1;
+    
+    /** Number of floats shadowed per uniform, enough for a 4x4 matrix. */
+    private static final int SHADOW_SIZE = Constants.MATRIX_SIZE;
+    
+    /** OpenGL handle of the linked program. */
+    private final int handle;
+    
+    /** Shadow copies of the uniform values, SHADOW_SIZE floats per uniform. */
+    private final float[] shadows;
+    
+    /** Location of each uniform, by the uniform's index. */
+    private final int[] uniformLocations;
+    
+    /**
+     * @param handle OpenGL handle of the linked program.
+     * @param uniforms Names of the program's uniforms. Must not be null.
+     */
+    ShaderProgram(final int handle, final String[] uniforms) {
+        this.handle = handle;
+        this.shadows = new float[uniforms.length * SHADOW_SIZE];
+        this.uniformLocations = new int[uniforms.length];
+        
+        for (int uniform = 0; uniform < uniforms.length; uniform++) {
+            uniformLocations[uniform] = GLES20.glGetUniformLocation(handle, uniforms[uniform]);
+        }
+        invalidateShadows();
+    }
+    
+    public int getHandle() { return handle; }
+    
+    /**
+     * @param uniform Index of the uniform.
+     * @return Location of the uniform, or NO_LOCATION if the variant doesn't use it.
+     */
+    public int getUniformLocation(final int uniform) {
+        return uniformLocations[uniform];
+    }
+    
+    /** Forgets the shadowed uniform values, forcing them to be uploaded. */
+    public void invalidateShadows() {
+        Arrays.fill(shadows, Float.NaN);
+    }
+    
+    /**
+     * Uploads a float uniform unless the program already holds the value.
+     * Uniforms the variant compiled out, see NO_LOCATION, are never uploaded.
+     * 
+     * @return Whether or not the value was uploaded.
+     */
+    boolean uniform1f(final int uniform, final float value) {
+        final int shadow = uniform * SHADOW_SIZE;
+        
+        if ((uniformLocations[uniform] == NO_LOCATION) || (shadows[shadow] == value)) {
+            return false;
+        }
+        
+        GLES20.glUniform1f(uniformLocations[uniform], value);
+        shadows[shadow] = value;
+        
+        return true;
+    }
+    
+    /**
+     * Uploads an int uniform, such as a sampler's texture unit, unless the
+     * program already holds the value.
+     * 
+     * @return Whether or not the value was uploaded.
+     */
+    boolean uniform1i(final int uniform, final int value) {
+        final int shadow = uniform * SHADOW_SIZE;
+        
+        if ((uniformLocations[uniform] == NO_LOCATION) || (shadows[shadow] == value)) {
+            return false;
+        }
+        
+        GLES20.glUniform1i(uniformLocations[uniform], value);
+        shadows[shadow] = value;
+        
+        return true;
+    }
+    
+    /**
+     * Uploads a vec4 uniform unless the program already holds the value.
+     * 
+     * @return Whether or not the value was uploaded.
+     */
+    boolean uniform4f(final int uniform, final float x, final float y,
+                      final float z, final float w) {
+        final int shadow = uniform * SHADOW_SIZE;
+        
+        if ((uniformLocations[uniform] == NO_LOCATION) ||
+            ((shadows[shadow] == x) && (shadows[shadow + 1] == y) &&
+             (shadows[shadow + 2] == z) && (shadows[shadow + 3] == w))) {
+            return false;
+        }
+        
+        GLES20.glUniform4f(uniformLocations[uniform], x, y, z, w);
+        shadows[shadow] = x;
+        shadows[shadow + 1] = y;
+        shadows[shadow + 2] = z;
+        shadows[shadow + 3] = w;
+        
+        return true;
+    }
+    
+    /**
+     * Uploads a 4x4 matrix uniform unless the program already holds the value.
+     * 
+     * @param matrix Must not be null.
+     * @param offset Offset of the matrix within the array.
+     * @return Whether or not the value was uploaded.
+     */
+    boolean uniformMatrix4(final int uniform, final float[] matrix, final int offset) {
+        final int shadow = uniform * SHADOW_SIZE;
+        
+        if (uniformLocations[uniform] == NO_LOCATION) {
+            return false;
+        }
+        
+        boolean isChanged = false;
+        for (int cell = 0; cell < Constants.MATRIX_SIZE; cell++) {
+            if (shadows[shadow + cell] != matrix[offset + cell]) {
+                isChanged = true;
+                break;
+            }
+        }
+        if (!isChanged) { // If the program already holds the matrix
+            return false;
+        }
+        
+        final int matrixCount = 1;
+        final boolean willTranspose = false;
+        GLES20.glUniformMatrix4fv(uniformLocations[uniform], matrixCount, willTranspose,
+                matrix, offset);
+        System.arraycopy(matrix, offset, shadows, shadow, Constants.MATRIX_SIZE);
+        
+        return true;
+    }
+}
@@ -1,32 +1,699 @@
 package com.rogue.bauble.graphics.shaders;
 
 import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import com.google.inject.Singleton;
+import com.rogue.bauble.misc.Constants;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Keeps a reference to all of the known shaders for ensuring that only one is active at a time.
+ * Keeps a reference to all of the known shaders, and tracks the OpenGL state
+ * they share so that redundant state changes never reach the driver. The
+ * tracked state is the active program, the texture bound to each texture unit,
+ * the bound array and element buffers, the enabled vertex attribute arrays,
+ * and the blend state.
+ * 
+ * All state changes to the tracked state must go through the registry, or be
+ * followed by a call to invalidate(). Must only be used from the GL thread.
+ * 
+ * The registry also holds the batch with draws pending, if any, and flushes
+ * it before activating another shader or changing the blend state.
  * 
  * @author R. Matt McCann
  */
 @Singleton
 public class ShaderRegistry {
-    private final Map<Shader, Boolean> shaders = new HashMap<Shader, Boolean>();
+    /** Number of texture units tracked. */
+    public static final int MAX_TEXTURE_UNITS = 8;
+    
+    /** Number of vertex attribute arrays tracked. */
+    public static final int MAX_VERTEX_ATTRIBS = 16;
+    
+    /** Number of values describing each vertex attribute pointer. */
+    private static final int POINTER_STATE_SIZE = 6;
+    
+    /** Marks a piece of tracked state as unknown, forcing the next change through. */
+    private static final int UNKNOWN = -1;
+    
+    /** All known batches. */
+    private final Set<Batch> batches = new LinkedHashSet<Batch>();
+    
+    /** Texture unit currently selected by glActiveTexture. */
+    private int activeTextureUnit;
+    
+    /** Buffer bound to GL_ARRAY_BUFFER. */
+    private int arrayBuffer;
+    
+    /** Blend destination factor. */
+    private int blendDestination;
+    
+    /** Whether GL_BLEND is enabled, 1 if so, 0 if not. */
+    private int blendEnabled;
+    
+    /** Blend source factor. */
+    private int blendSource;
+    
+    /** Texture bound to GL_TEXTURE_2D on each texture unit. */
+    private final int[] boundTextures = new int[MAX_TEXTURE_UNITS];
+    
+    /** Number of state changes skipped because the state was already set. */
+    private long elidedCalls = 0;
+    
+    /** Whether the current context supports GL_OES_standard_derivatives, see selectBackend(). */
+    private boolean hasStandardDerivatives = false;
+    
+    /** Buffer bound to GL_ELEMENT_ARRAY_BUFFER. */
+    private int elementBuffer;
+    
+    /** Whether each vertex attribute array is enabled, 1 if so, 0 if not. */
+    private final int[] enabledAttribs = new int[MAX_VERTEX_ATTRIBS];
+    
+    /** Whether the current context supports the OpenGL ES 3.0 path, see selectBackend(). */
+    private boolean isGles3 = false;
+    
+    /** Number of state changes passed through to the driver. */
+    private long issuedCalls = 0;
     
+    /** Number of state changes skipped during the last completed frame. */
+    private long lastFrameElidedCalls = 0;
+    
+    /** Number of state changes issued during the last completed frame. */
+    private long lastFrameIssuedCalls = 0;
+    
+    /** Number of vertex bytes streamed during the last completed frame. */
+    private long lastFrameStreamedBytes = 0;
+    
+    /** Interface for logging events. */
+    private static final Logger logger = LoggerFactory.getLogger("ShaderRegistry");
+    
+    /** Batch holding draws that haven't been issued yet, null if none. */
+    private Batch pendingBatch = null;
+    
+    /** Buffer, size, type, stride, offset, and normalization of each vertex attribute pointer. */
+    private final int[] pointers = new int[MAX_VERTEX_ATTRIBS * POINTER_STATE_SIZE];
+    
+    /** Active shader program. */
+    private int program;
+    
+    /** Number of vertex bytes streamed to the driver. */
+    private long streamedBytes = 0;
+    
+    /** Linked shader variants, keyed by their sources and defines. */
+    private final Map<String, ShaderProgram> programs = new HashMap<String, ShaderProgram>();
+    
+    /** Cache of linked program binaries, if one is configured. */
+    private Optional<ProgramBinaryCache> programBinaryCache = Optional.absent();
+    
+    /** All known shaders. */
+    private final Set<Shader> shaders = new LinkedHashSet<Shader>();
+    
+    /** Loads shader sources in the background, if one is configured. */
+    private Optional<ShaderSourceLoader> sourceLoader = Optional.absent();
+    
+    /** Bound vertex array object, 0 for the default vertex array. */
+    private int vertexArray;
+    
+    /** Shaders waiting to be compiled ahead of their first use. */
+    private final PriorityQueue<WarmUp> warmUps = new PriorityQueue<WarmUp>();
+    
+    /** Constructor. */
+    public ShaderRegistry() {
+        invalidate();
+    }
+    
+    /**
+     * Makes the shader's program the active program, if it isn't already,
+     * flushing any pending batch first. The shader's base variant is compiled
+     * on its first activation, unless it was warmed up. Shaders deferring
+     * their draws to a batch are left inactive.
+     * 
+     * @param shader Must not be null.
+     */
     public void activate(final Shader shader) {
-        if (!shaders.get(shader)) {
-            GLES20.glUseProgram(shader.getProgramHandle());
-            
-            for (Shader key : shaders.keySet()) {
-                shaders.put(key, false);
+        if (shader.defersDraws()) {
+            return;
+        }
+        
+        flushPendingBatch();
+        shader.selectBaseVariant();
+        useProgram(shader.getProgramHandle());
+    }
+    
+    /**
+     * Binds a buffer to GL_ARRAY_BUFFER.
+     * 
+     * @param buffer OpenGL buffer handle.
+     */
+    public void bindArrayBuffer(final int buffer) {
+        if (arrayBuffer == buffer) {
+            elidedCalls++;
+            return;
+        }
+        
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffer);
+        arrayBuffer = buffer;
+        issuedCalls++;
+    }
+    
+    /**
+     * Binds a buffer to GL_ELEMENT_ARRAY_BUFFER.
+     * 
+     * @param buffer OpenGL buffer handle.
+     */
+    public void bindElementBuffer(final int buffer) {
+        if (elementBuffer == buffer) {
+            elidedCalls++;
+            return;
+        }
+        
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffer);
+        elementBuffer = buffer;
+        issuedCalls++;
+    }
+    
+    /**
+     * Binds a vertex array object. The element buffer binding and the vertex
+     * attribute state belong to the vertex array, so their tracking is reset
+     * whenever the binding changes. Only available when isGles3().
+     * 
+     * @param vertexArray OpenGL vertex array handle, 0 for the default vertex array.
+     */
+    public void bindVertexArray(final int vertexArray) {
+        checkState(isGles3, "Vertex array objects require OpenGL ES 3.0!");
+        
+        if (this.vertexArray == vertexArray) {
+            elidedCalls++;
+            return;
+        }
+        
+        GLES30.glBindVertexArray(vertexArray);
+        this.vertexArray = vertexArray;
+        issuedCalls++;
+        forgetVertexArrayState();
+    }
+    
+    /**
+     * Binds a texture to GL_TEXTURE_2D of the provided texture unit, selecting
+     * the unit first if necessary.
+     * 
+     * @param unit Texture unit index, such that 0 is GL_TEXTURE0. Must be >= 0
+     *             and < MAX_TEXTURE_UNITS.
+     * @param texture OpenGL texture handle.
+     */
+    public void bindTexture(final int unit, final int texture) {
+        if (boundTextures[unit] == texture) {
+            elidedCalls++;
+            return;
+        }
+        
+        selectTextureUnit(unit);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        boundTextures[unit] = texture;
+        issuedCalls++;
+    }
+    
+    /**
+     * Sets the blend function.
+     * 
+     * @param source Source factor, such as GL_SRC_ALPHA.
+     * @param destination Destination factor, such as GL_ONE_MINUS_SRC_ALPHA.
+     */
+    public void blendFunc(final int source, final int destination) {
+        if ((blendSource == source) && (blendDestination == destination)) {
+            elidedCalls++;
+            return;
+        }
+        
+        flushPendingBatch();
+        GLES20.glBlendFunc(source, destination);
+        blendSource = source;
+        blendDestination = destination;
+        issuedCalls++;
+    }
+    
+    /**
+     * Deletes buffers, forgetting any tracked bindings of them. OpenGL reuses
+     * deleted handles, so deletions must go through the registry.
+     * 
+     * @param buffers Must not be null.
+     */
+    public void deleteBuffers(final int... buffers) {
+        GLES20.glDeleteBuffers(buffers.length, buffers, Constants.NO_OFFSET);
+        
+        for (int buffer : buffers) {
+            if (arrayBuffer == buffer) {
+                arrayBuffer = 0;
+            }
+            if (elementBuffer == buffer) {
+                elementBuffer = 0;
             }
+            for (int pointer = 0; pointer < pointers.length; pointer += POINTER_STATE_SIZE) {
+                if (pointers[pointer] == buffer) { // If the pointer sources the buffer
+                    pointers[pointer] = UNKNOWN;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Deletes vertex array objects. Deleting the bound vertex array reverts
+     * to the default vertex array. Only available when isGles3().
+     * 
+     * @param vertexArrays Must not be null.
+     */
+    public void deleteVertexArrays(final int... vertexArrays) {
+        checkState(isGles3, "Vertex array objects require OpenGL ES 3.0!");
+        GLES30.glDeleteVertexArrays(vertexArrays.length, vertexArrays, Constants.NO_OFFSET);
+        
+        for (int deleted : vertexArrays) {
+            if (vertexArray == deleted) {
+                vertexArray = 0;
+                forgetVertexArrayState();
+            }
+        }
+    }
+    
+    /**
+     * Deletes textures, forgetting any tracked bindings of them. OpenGL reuses
+     * deleted handles, so deletions must go through the registry.
+     * 
+     * @param textures Must not be null.
+     */
+    public void deleteTextures(final int... textures) {
+        GLES20.glDeleteTextures(textures.length, textures, Constants.NO_OFFSET);
+        
+        for (int texture : textures) {
+            for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+                if (boundTextures[unit] == texture) {
+                    boundTextures[unit] = 0;
+                }
+            }
+        }
+    }
+    
+    /** Forgets the tracked state held by the bound vertex array. */
+    private void forgetVertexArrayState() {
+        elementBuffer = UNKNOWN;
+        Arrays.fill(enabledAttribs, UNKNOWN);
+        Arrays.fill(pointers, UNKNOWN);
+    }
+    
+    /**
+     * Issues the draws of the pending batch, if there is one, and of any batch
+     * its draws leave pending, such as a RenderQueue's draws filling the
+     * SpriteBatch.
+     */
+    public void flushPendingBatch() {
+        while (pendingBatch != null) {
+            final Batch batch = pendingBatch;
             
-            shaders.put(shader, true);
+            pendingBatch = null; // Cleared first, as flushing activates shaders
+            batch.flush();
         }
     }
     
+    /**
+     * Records the end of a frame, so the frame's counts are available from
+     * getLastFrameElidedCalls(), getLastFrameIssuedCalls(), and
+     * getLastFrameStreamedBytes(), and resets the counters.
+     */
+    public void endFrame() {
+        lastFrameElidedCalls = elidedCalls;
+        lastFrameIssuedCalls = issuedCalls;
+        lastFrameStreamedBytes = streamedBytes;
+        resetCounters();
+    }
+    
+    /** @return Number of state changes skipped since the counters were reset. */
+    public long getElidedCalls() { return elidedCalls; }
+    
+    /** @return Number of state changes issued since the counters were reset. */
+    public long getIssuedCalls() { return issuedCalls; }
+    
+    public long getLastFrameElidedCalls() { return lastFrameElidedCalls; }
+    
+    public long getLastFrameIssuedCalls() { return lastFrameIssuedCalls; }
+    
+    public long getLastFrameStreamedBytes() { return lastFrameStreamedBytes; }
+    
+    /**
+     * @param key Key of the shader variant.
+     * @return The variant's linked program, if it has been linked in the current context.
+     */
+    public Optional<ShaderProgram> getProgram(final String key) {
+        return Optional.fromNullable(programs.get(key));
+    }
+    
+    public Optional<ProgramBinaryCache> getProgramBinaryCache() { return programBinaryCache; }
+    
+    public Optional<ShaderSourceLoader> getSourceLoader() { return sourceLoader; }
+    
+    /**
+     * Forgets all of the tracked state, forcing the next change of each piece
+     * of state through to the driver. Must be called when the GL context is
+     * (re)created, or after tracked state is changed outside of the registry.
+     */
+    public final void invalidate() {
+        activeTextureUnit = UNKNOWN;
+        arrayBuffer = UNKNOWN;
+        blendDestination = UNKNOWN;
+        blendEnabled = UNKNOWN;
+        blendSource = UNKNOWN;
+        elementBuffer = UNKNOWN;
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        Arrays.fill(boundTextures, UNKNOWN);
+        Arrays.fill(enabledAttribs, UNKNOWN);
+        Arrays.fill(pointers, UNKNOWN);
+        
+        pendingBatch = null;
+        for (Batch batch : batches) { // Buffers don't survive a new context
+            batch.invalidate();
+        }
+        
+        if (programBinaryCache.isPresent()) { // The new context may use a different driver
+            programBinaryCache.get().invalidate();
+        }
+        
+        programs.clear();
+        for (Shader shader : shaders) { // Programs don't survive a new context
+            shader.invalidateProgram();
+        }
+    }
+    
+    /**
+     * @return Whether or not shaders of the current context may use dFdx(),
+     *         dFdy(), and fwidth() through GL_OES_standard_derivatives.
+     */
+    public boolean hasStandardDerivatives() { return hasStandardDerivatives; }
+    
+    /**
+     * @return Whether or not the current context supports the OpenGL ES 3.0
+     *         path, with vertex array objects and instanced draws.
+     */
+    public boolean isGles3() { return isGles3; }
+    
+    /**
+     * Records a call elided by a caller tracking its own state, such as the
+     * uniforms of a shader program, so it is reflected in the counters.
+     */
+    public void recordElidedCall() {
+        elidedCalls++;
+    }
+    
+    /** Records a call issued by a caller tracking its own state. */
+    public void recordIssuedCall() {
+        issuedCalls++;
+    }
+    
+    /** @param numBytes Number of vertex bytes streamed to the driver. */
+    public void recordStreamedBytes(final int numBytes) {
+        streamedBytes += numBytes;
+    }
+    
+    /**
+     * Caches a linked shader variant for the current context.
+     * 
+     * @param key Key of the shader variant.
+     * @param program Must not be null.
+     */
+    public void putProgram(final String key, final ShaderProgram program) {
+        programs.put(key, checkNotNull(program));
+    }
+    
+    /** @param shader Must not be null. */
     public void register(final Shader shader) {
-        shaders.put(shader, false);
+        shaders.add(shader);
+    }
+    
+    /** @param batch Must not be null. */
+    public void register(final Batch batch) {
+        batches.add(checkNotNull(batch));
+    }
+    
+    /**
+     * Marks a batch as holding draws that haven't been issued yet, flushing
+     * any other pending batch first.
+     * 
+     * @param batch Must not be null.
+     */
+    public void setPendingBatch(final Batch batch) {
+        if (pendingBatch != batch) {
+            flushPendingBatch();
+            pendingBatch = checkNotNull(batch);
+        }
+    }
+    
+    /**
+     * Schedules every registered shader that isn't compiled yet to be
+     * compiled by warmUp(), in the order they were registered, after any
+     * shaders scheduled with a priority.
+     */
+    public void scheduleWarmUp() {
+        for (Shader shader : shaders) {
+            if (!shader.isCompiled()) {
+                scheduleWarmUp(shader, Integer.MAX_VALUE);
+            }
+        }
+    }
+    
+    /**
+     * Schedules a shader to be compiled by warmUp() ahead of its first use.
+     * Shaders with lower priority values are compiled first.
+     * 
+     * @param shader Must not be null.
+     * @param priority Compilation priority.
+     */
+    public void scheduleWarmUp(final Shader shader, final int priority) {
+        warmUps.add(new WarmUp(checkNotNull(shader), priority, warmUps.size()));
+    }
+    
+    /**
+     * Picks the rendering path of the current context, enabling the OpenGL
+     * ES 3.0 path only if the context supports it. Shaders check isGles3()
+     * and fall back to the OpenGL ES 2.0 path otherwise. Also checks the
+     * extensions optional shaders depend on, see hasStandardDerivatives().
+     * Must be called from the GL thread when the context is (re)created.
+     */
+    public void selectBackend() {
+        final String version = GLES20.glGetString(GLES20.GL_VERSION);
+        
+        isGles3 = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) &&
+                  (version != null) && !version.startsWith("OpenGL ES 2");
+        logger.info("OpenGL ES 3.0 path enabled: " + isGles3 + " (" + version + ")");
+        
+        // The shaders are written in GLSL ES 1.00, which only has derivatives through the extension
+        final String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        hasStandardDerivatives = (extensions != null) &&
+                extensions.contains("GL_OES_standard_derivatives");
+        logger.info("Standard derivatives available: " + hasStandardDerivatives);
+    }
+    
+    /** Resets the elided and issued call and streamed byte counters. */
+    public void resetCounters() {
+        elidedCalls = 0;
+        issuedCalls = 0;
+        streamedBytes = 0;
+    }
+    
+    /** @param sourceLoader Must not be null. */
+    public void setSourceLoader(final ShaderSourceLoader sourceLoader) {
+        this.sourceLoader = Optional.of(checkNotNull(sourceLoader));
+    }
+    
+    /** @param programBinaryCache Must not be null. */
+    public void setProgramBinaryCache(final ProgramBinaryCache programBinaryCache) {
+        this.programBinaryCache = Optional.of(checkNotNull(programBinaryCache));
+    }
+    
+    /**
+     * Selects the active texture unit.
+     * 
+     * @param unit Texture unit index, such that 0 is GL_TEXTURE0.
+     */
+    public void selectTextureUnit(final int unit) {
+        if (activeTextureUnit == unit) {
+            elidedCalls++;
+            return;
+        }
+        
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+        activeTextureUnit = unit;
+        issuedCalls++;
+    }
+    
+    /** @param isEnabled Whether or not GL_BLEND should be enabled. */
+    public void setBlendEnabled(final boolean isEnabled) {
+        final int state = isEnabled ? 1 : 0;
+        
+        if (blendEnabled == state) {
+            elidedCalls++;
+            return;
+        }
+        
+        flushPendingBatch();
+        if (isEnabled) {
+            GLES20.glEnable(GLES20.GL_BLEND);
+        } else {
+            GLES20.glDisable(GLES20.GL_BLEND);
+        }
+        blendEnabled = state;
+        issuedCalls++;
+    }
+    
+    /**
+     * Enables or disables a vertex attribute array.
+     * 
+     * @param index Attribute location. Must be >= 0 and < MAX_VERTEX_ATTRIBS.
+     * @param isEnabled Whether or not the array should be enabled.
+     */
+    public void setVertexAttribArrayEnabled(final int index, final boolean isEnabled) {
+        final int state = isEnabled ? 1 : 0;
+        
+        if (enabledAttribs[index] == state) {
+            elidedCalls++;
+            return;
+        }
+        
+        if (isEnabled) {
+            GLES20.glEnableVertexAttribArray(index);
+        } else {
+            GLES20.glDisableVertexAttribArray(index);
+        }
+        enabledAttribs[index] = state;
+        issuedCalls++;
+    }
+    
+    /**
+     * Points a vertex attribute at float data in the bound array buffer, unless
+     * it already points at the same data with the same layout.
+     * 
+     * @param index Attribute location. Must be >= 0 and < MAX_VERTEX_ATTRIBS.
+     * @param size Number of components per vertex.
+     * @param type Component type, such as GL_FLOAT.
+     * @param stride Bytes between consecutive vertices.
+     * @param offset Byte offset of the first component within the buffer.
+     */
+    public void vertexAttribPointer(final int index, final int size, final int type,
+                                    final int stride, final int offset) {
+        vertexAttribPointer(index, size, type, false, stride, offset);
+    }
+    
+    /**
+     * Points a vertex attribute at data in the bound array buffer, unless it
+     * already points at the same data with the same layout.
+     * 
+     * @param index Attribute location. Must be >= 0 and < MAX_VERTEX_ATTRIBS.
+     * @param size Number of components per vertex.
+     * @param type Component type, such as GL_FLOAT or GL_UNSIGNED_BYTE.
+     * @param willNormalize Whether or not integer components are normalized into [0, 1].
+     * @param stride Bytes between consecutive vertices.
+     * @param offset Byte offset of the first component within the buffer.
+     */
+    public void vertexAttribPointer(final int index, final int size, final int type,
+                                    final boolean willNormalize, final int stride,
+                                    final int offset) {
+        final int pointer = index * POINTER_STATE_SIZE;
+        final int normalized = willNormalize ? 1 : 0;
+        
+        if ((pointers[pointer] == arrayBuffer) && (arrayBuffer != UNKNOWN) &&
+            (pointers[pointer + 1] == size) && (pointers[pointer + 2] == type) &&
+            (pointers[pointer + 3] == stride) && (pointers[pointer + 4] == offset) &&
+            (pointers[pointer + 5] == normalized)) {
+            elidedCalls++;
+            return;
+        }
+        
+        GLES20.glVertexAttribPointer(index, size, type, willNormalize, stride, offset);
+        pointers[pointer] = arrayBuffer;
+        pointers[pointer + 1] = size;
+        pointers[pointer + 2] = type;
+        pointers[pointer + 3] = stride;
+        pointers[pointer + 4] = offset;
+        pointers[pointer + 5] = normalized;
+        issuedCalls++;
+    }
+    
+    /**
+     * Makes the program the active program, if it isn't already.
+     * 
+     * @param programHandle OpenGL program handle.
+     */
+    public void useProgram(final int programHandle) {
+        if (program == programHandle) {
+            elidedCalls++;
+            return;
+        }
+        
+        GLES20.glUseProgram(programHandle);
+        program = programHandle;
+        issuedCalls++;
+    }
+    
+    /**
+     * Compiles scheduled shaders until the time budget is spent, so that
+     * compilation is spread across frames. At least one shader is compiled
+     * per call while any are scheduled. Must be called from the GL thread.
+     * 
+     * @param budgetNanos Time budget in nanoseconds.
+     * @return Number of shaders compiled.
+     */
+    public int warmUp(final long budgetNanos) {
+        final long start = System.nanoTime();
+        int numCompiled = 0;
+        
+        while (!warmUps.isEmpty()) {
+            final Shader shader = warmUps.poll().shader;
+            
+            if (!shader.isCompiled()) { // If it wasn't already compiled by being used
+                shader.compile();
+                numCompiled++;
+                
+                if (System.nanoTime() - start >= budgetNanos) { // If the budget is spent
+                    break;
+                }
+            }
+        }
+        
+        return numCompiled;
+    }
+    
+    /** A shader scheduled to be compiled ahead of its first use. */
+    private static final class WarmUp implements Comparable<WarmUp> {
+        /** Compilation priority, lower first. */
+        private final int priority;
+        
+        /** Order the shader was scheduled in, breaking priority ties. */
+        private final int sequence;
+        
+        /** Shader to compile. */
+        private final Shader shader;
+        
+        private WarmUp(final Shader shader, final int priority, final int sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.shader = shader;
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public int compareTo(final WarmUp other) {
+            if (priority != other.priority) {
+                return (priority < other.priority) ? -1 : 1;
+            }
+            
+            return (sequence < other.sequence) ? -1 : ((sequence == other.sequence) ? 0 : 1);
+        }
     }
 }
@@ -0,0 +1,122 @@
+package com.rogue.bauble.graphics.shaders;
+
+import android.content.Context;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Reads shader sources from raw resources on a background thread, so the GL
+ * thread only waits on sources that are needed before they finish loading.
+ * 
+ * @author R. Matt McCann
+ */
+public class ShaderSourceLoader {
+    /** Size of the chunks sources are read in. */
+    private static final int BUFFER_SIZE = 4096;
+    
+    /** Used to open the raw resources. */
+    private final Context context;
+    
+    /** Runs the source reads. */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ShaderSourceLoader").build());
+    
+    /** Pending and loaded sources, by resource id. */
+    private final ConcurrentMap<Integer, FutureTask<String>> sources =
+            new ConcurrentHashMap<Integer, FutureTask<String>>();
+    
+    /** @param context Must not be null. */
+    public ShaderSourceLoader(final Context context) {
+        this.context = checkNotNull(context);
+    }
+    
+    /**
+     * Returns the source of the resource, loading it on the calling thread if
+     * the background thread hasn't gotten to it yet.
+     * 
+     * @param resourceID Android resource id of the raw source.
+     * @return The source code.
+     */
+    public String getSource(final int resourceID) {
+        final FutureTask<String> source = queue(resourceID);
+        
+        source.run(); // Does nothing if the load has already started
+        try {
+            return source.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted loading shader source!", ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Failed to load shader source!", ex.getCause());
+        }
+    }
+    
+    /**
+     * Starts loading the sources in the background.
+     * 
+     * @param resourceIDs Android resource ids of the raw sources.
+     */
+    public void preload(final int... resourceIDs) {
+        for (int resourceID : resourceIDs) {
+            queue(resourceID);
+        }
+    }
+    
+    /** @return The load of the source, queued if it wasn't already. */
+    private FutureTask<String> queue(final int resourceID) {
+        FutureTask<String> source = sources.get(resourceID);
+        
+        if (source == null) { // If the source hasn't been requested yet
+            final FutureTask<String> load = new FutureTask<String>(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    return readSource(context, resourceID);
+                }
+            });
+            
+            source = sources.putIfAbsent(resourceID, load);
+            if (source == null) { // If this thread won the race to queue it
+                source = load;
+                executor.execute(load);
+            }
+        }
+        
+        return source;
+    }
+    
+    /**
+     * Reads in the source code from the specified raw file in one pass.
+     * 
+     * @param context Must not be null.
+     * @param resourceID Android resource ID of the source code
+     * @return The source code
+     */
+    public static String readSource(final Context context, final int resourceID)
+            throws IOException {
+        final InputStream in = context.getResources().openRawResource(resourceID);
+        
+        try {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream(BUFFER_SIZE);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            
+            int numRead;
+            while ((numRead = in.read(buffer)) != -1) {
+                body.write(buffer, 0, numRead);
+            }
+            
+            return body.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
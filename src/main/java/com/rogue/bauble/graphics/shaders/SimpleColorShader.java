@@ -2,10 +2,11 @@ package com.rogue.bauble.graphics.shaders;
 
 import android.content.Context;
 import android.opengl.GLES20;
-import com.google.common.base.Optional;
 import static com.google.common.base.Preconditions.*;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.rogue.bauble.graphics.Color;
+import com.rogue.bauble.graphics.VertexLayout;
 import com.rogue.bauble.misc.Constants;
 import javax.inject.Named;
 
@@ -13,6 +14,10 @@ import javax.inject.Named;
  * Shader program that draws the image defined by a VBO packed with vertex 
  * position and color data.
  * 
+ * Opaque draws use a variant without the opacity multiply, and draws given a
+ * single color through setColor() use a variant that ignores the per-vertex
+ * colors.
+ * 
  * @author R. Matt McCann
  */
 @Singleton
@@ -20,41 +25,53 @@ public class SimpleColorShader extends Shader {
     /** Attribute keys defined in the shader programs. */
     private static final String[] ATTRIBUTES = new String[] {"a_Position", "a_Color"};
     
+    /** Uniform color of the image, null to use the vertex colors. */
+    private Color color = null;
+    
     /** OpenGL reference to the shader program's color attribute. */
     private int colorHandle;
     
-    /** Transformations applied to the image to be rendered. */
-    private Optional<float[]> mvpMatrix = Optional.absent();
+    /** Layout of the VBO set for the next draw. */
+    private VertexLayout layout = VertexLayout.POS_COLOR;
+    
+    /** Marks the VBO as unset. */
+    private static final int NOT_SET = -1;
     
-    /** OpenGL reference to the shader program's transformations attribute. */
-    private int mvpMatrixHandle;
+    /** Transformations applied to the image to be rendered. Null until set. */
+    private float[] mvpMatrix = null;
+    
+    /** Offset of the transformations within the mvpMatrix array. */
+    private int mvpMatrixOffset = Constants.NO_OFFSET;
     
     /** Current opacity level of image. */
     private float opacity = 1.0f;
     
-    /** Handle for the opacity property. */
-    private int opacityHandle;
-    
     /** OpenGL reference to the shader program's position attribute. */
     private int positionHandle;
     
-    /** Packed data offset of the position data. */
-    private static final int POSITION_OFFSET = 0;
+    /** Uniform keys defined in the shader programs, indexed by the U_ constants. */
+    private static final String[] UNIFORMS = new String[] {"u_MVPMatrix", "u_Opacity", "u_Color"};
     
-    /** Size of the packed position data. */
-    private static final int POSITION_DATA_SIZE = 3;
+    /** Index of the MVP matrix uniform. */
+    private static final int U_MVP_MATRIX = 0;
     
-    /** Packed data offset of the color data. */
-    private static final int COLOR_OFFSET = POSITION_DATA_SIZE * Constants.BYTES_PER_FLOAT;
+    /** Index of the opacity uniform. */
+    private static final int U_OPACITY = 1;
     
-    /** Size of the packed color data. */
-    private static final int COLOR_DATA_SIZE = 4;
+    /** Index of the uniform color. */
+    private static final int U_COLOR = 2;
     
-    /** Size of the complete packed vertex data. */
-    private static final int STRIDE = (POSITION_DATA_SIZE + COLOR_DATA_SIZE) * Constants.BYTES_PER_FLOAT;
+    /** Variant defines, indexed by the VARIANT_ bits. */
+    private static final String[] VARIANT_DEFINES = new String[] {"USE_OPACITY", "UNIFORM_COLOR"};
+    
+    /** Variant bit of the opacity multiply. */
+    private static final int VARIANT_OPACITY = 1;
+    
+    /** Variant bit of the uniform color. */
+    private static final int VARIANT_UNIFORM_COLOR = 1 << 1;
     
     /** OpenGL reference to a vertex buffer object loaded with rendering details. */
-    private Optional<Integer> vbo = Optional.absent();
+    private int vbo = NOT_SET;
     
     /** Guice injectable constructor. */
     @Inject
@@ -63,6 +80,9 @@ public class SimpleColorShader extends Shader {
                              final ShaderRegistry registry,
                              @Named("SimpleColorVertexShader") int vertexShader) {
         super(context, registry, vertexShader, fragmentShader, ATTRIBUTES);
+        
+        setUniforms(UNIFORMS);
+        setVariantDefines(VARIANT_DEFINES);
     }
 
     /** {@inheritDocs} */
@@ -70,10 +90,6 @@ public class SimpleColorShader extends Shader {
     protected void getAttributeHandles() {
         final int programHandle = getProgramHandle();
         
-        // Get the uniforms
-        mvpMatrixHandle = GLES20.glGetUniformLocation(programHandle, "u_MVPMatrix");
-        opacityHandle = GLES20.glGetUniformLocation(programHandle, "u_Opacity");
-
         // Get the attributes
         positionHandle = GLES20.glGetAttribLocation(programHandle, "a_Position");
         colorHandle = GLES20.glGetAttribLocation(programHandle, "a_Color");
@@ -83,41 +99,73 @@ public class SimpleColorShader extends Shader {
     @Override
     public void draw(final int drawMode, final int numVertices) {
         // Check that all the required parameters have been set
-        checkState(mvpMatrix.isPresent(), "You must call setMVPMatrix() before drawing!");
-        checkState(vbo.isPresent(), "You must call setVBO() before drawing!");
+        checkState(mvpMatrix != null, "You must call setMVPMatrix() before drawing!");
+        checkState(vbo != NOT_SET, "You must call setVBO() before drawing!");
+        
+        final ShaderRegistry registry = getRegistry();
+        
+        // Pick the cheapest variant that can draw the settings
+        int variant = 0;
+        if (opacity < 1.0f) {
+            variant |= VARIANT_OPACITY;
+        }
+        if (color != null) {
+            variant |= VARIANT_UNIFORM_COLOR;
+        }
+        selectVariant(variant);
         
         // Pass in the MVP Matrix
-        final int matrixCount = 1;
-        final boolean willTranspose = false;
-        GLES20.glUniformMatrix4fv(mvpMatrixHandle, matrixCount, willTranspose, 
-                mvpMatrix.get(), Constants.NO_OFFSET);
+        uniformMatrix4(U_MVP_MATRIX, mvpMatrix, mvpMatrixOffset);
                 
         // Pass in the opacity
-        GLES20.glUniform1f(opacityHandle, opacity);
+        if ((variant & VARIANT_OPACITY) != 0) {
+            uniform1f(U_OPACITY, opacity);
+        }
         
         // Pass in the positions
-        final boolean willNormalize = false;
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo.get());
-        GLES20.glEnableVertexAttribArray(positionHandle);
-        GLES20.glVertexAttribPointer(positionHandle, POSITION_DATA_SIZE, GLES20.GL_FLOAT, 
-                willNormalize, STRIDE, POSITION_OFFSET);
+        registry.bindArrayBuffer(vbo);
+        pointAttribute(layout, VertexLayout.Attribute.POSITION, positionHandle, Constants.NO_OFFSET);
         
         // Pass in the colors
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo.get());
-        GLES20.glEnableVertexAttribArray(colorHandle);
-        GLES20.glVertexAttribPointer(colorHandle, COLOR_DATA_SIZE, GLES20.GL_FLOAT,
-                willNormalize, STRIDE, COLOR_OFFSET);
+        if (color != null) {
+            registry.setVertexAttribArrayEnabled(colorHandle, false);
+            uniform4f(U_COLOR, color.getRed(), color.getGreen(), color.getBlue(), color.getAlpha());
+        } else {
+            pointAttribute(layout, VertexLayout.Attribute.COLOR, colorHandle, Constants.NO_OFFSET);
+        }
         
-        GLES20.glDrawArrays(drawMode, Constants.NO_OFFSET, numVertices);
+        drawVertices(drawMode, numVertices);
         
         // Clean up
-        mvpMatrix = Optional.absent();
+        color = null;
+        layout = VertexLayout.POS_COLOR;
+        mvpMatrix = null;
+        mvpMatrixOffset = Constants.NO_OFFSET;
         opacity = 1.0f;
-        vbo = Optional.absent();
+        vbo = NOT_SET;
+    }
+    
+    /**
+     * Draws the image in a single color rather than its vertex colors, for
+     * the next draw only.
+     * 
+     * @param color Color to draw with, null to use the vertex colors.
+     */
+    public void setColor(final Color color) {
+        this.color = color;
     }
     
     public void setMVPMatrix(final float[] mvpMatrix) {
-        this.mvpMatrix = Optional.of(mvpMatrix);
+        setMVPMatrix(mvpMatrix, Constants.NO_OFFSET);
+    }
+    
+    /**
+     * @param mvpMatrix Must not be null.
+     * @param offset Offset of the matrix within the array, such as an MVP arena offset.
+     */
+    public void setMVPMatrix(final float[] mvpMatrix, final int offset) {
+        this.mvpMatrix = checkNotNull(mvpMatrix);
+        this.mvpMatrixOffset = offset;
     }
 
     public void setOpacity(float opacity) {
@@ -128,6 +176,14 @@ public class SimpleColorShader extends Shader {
     }
     
     public void setVBO(final int vbo) {
-        this.vbo = Optional.of(vbo);
+        this.vbo = vbo;
+    }
+    
+    /**
+     * @param layout Layout of the VBO set for the next draw, VertexLayout.POS_COLOR by default.
+     *               Must not be null.
+     */
+    public void setVertexLayout(final VertexLayout layout) {
+        this.layout = checkNotNull(layout);
     }
 }
@@ -1,18 +1,29 @@
 package com.rogue.bauble.graphics.shaders;
 
+import com.rogue.bauble.graphics.Color;
 import com.rogue.bauble.graphics.DrawUtils;
+import com.rogue.bauble.graphics.SpriteBatch;
+import com.rogue.bauble.graphics.VertexLayout;
 import android.content.Context;
 import android.opengl.GLES20;
-import com.google.common.base.Optional;
 import static com.google.common.base.Preconditions.*;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.rogue.bauble.graphics.textures.Texture;
 import com.rogue.bauble.misc.Constants;
 import javax.inject.Named;
 
 /**
  * Shader program that renders the provided texture.
  * 
+ * Opaque draws use a variant without the opacity multiply, and textures that
+ * only hold coverage (see setAlphaTexture()), such as GL_ALPHA text, use a
+ * variant that draws them in the tint color, white unless set with setTint().
+ * Recoloring such a texture is then only a uniform update.
+ * 
+ * When a SpriteBatch is injected, plain unit square draws are collected by
+ * the batch rather than drawn one at a time.
+ * 
  * @author R. Matt McCann
  */
 @Singleton
@@ -20,14 +31,23 @@ public class SimpleTexturedShader extends Shader {
     /** Attribute keys defined in the shader programs. */
     private static final String[] ATTRIBUTES = new String[] {"a_Position", "a_TexCoord"};
     
-    /** Transformations applied to the image to be rendered. */
-    private Optional<float[]> mvpMatrix = Optional.absent();
+    /** Marks the texture and VBO as unset. */
+    private static final int NOT_SET = -1;
+    
+    /** Whether or not the texture only holds meaningful alpha values. */
+    private boolean isAlphaTexture = false;
+    
+    /** Collects unit square draws, null if draws aren't batched. */
+    private SpriteBatch batch = null;
     
-    /** OpenGL reference to the shader program's transformations attribute. */
-    private int mvpMatrixHandle;
+    /** Layout of the VBO set for the next draw. */
+    private VertexLayout layout = VertexLayout.POS_TEX;
     
-    /** Size of the packed position data. */
-    private static final int POSITION_DATA_SIZE = 3;
+    /** Transformations applied to the image to be rendered. Null until set. */
+    private float[] mvpMatrix = null;
+    
+    /** Offset of the transformations within the mvpMatrix array. */
+    private int mvpMatrixOffset = Constants.NO_OFFSET;
     
     /** OpenGL reference to the shader program's position attribute. */
     private int positionHandle;
@@ -35,30 +55,53 @@ public class SimpleTexturedShader extends Shader {
     /** OpenGL reference to the shader program's texture coordinate attribute. */
     private int texCoordHandle;
     
-    /** Packed data offset of the texture coordinate data. */
-    private static final int TEX_COORD_OFFSET = POSITION_DATA_SIZE * Constants.BYTES_PER_FLOAT;
-    
-    /** Size of the packed texture coordinate data. */
-    private static final int TEX_COORD_DATA_SIZE = 2;
+    /** Color alpha-only textures are drawn in. */
+    private Color tint = Color.WHITE;
     
     /** OpenGL reference to the loaded texture to be drawn. */
-    private Optional<Integer> texture = Optional.absent();
+    private int texture = NOT_SET;
+    
+    /** Texture coordinates of the image's left, top, right, and bottom edges within the texture. */
+    private final float[] textureRegion = new float[] {0.0f, 0.0f, 1.0f, 1.0f};
+    
+    /** Uniform keys defined in the shader programs, indexed by the U_ constants. */
+    private static final String[] UNIFORMS = new String[] {
+            "u_MVPMatrix", "u_Opacity", "u_Texture", "u_TexRegion", "u_Tint"};
+    
+    /** Index of the MVP matrix uniform. */
+    private static final int U_MVP_MATRIX = 0;
+    
+    /** Index of the opacity uniform. */
+    private static final int U_OPACITY = 1;
+    
+    /** Index of the texture sampler uniform. */
+    private static final int U_TEXTURE = 2;
+    
+    /** Index of the texture region uniform. */
+    private static final int U_TEX_REGION = 3;
+    
+    /** Index of the tint uniform of alpha-only textures. */
+    private static final int U_TINT = 4;
     
-    /** OpenGL reference to the shader program's texture attribute. */
-    private int textureHandle;
+    /** Variant defines, indexed by the VARIANT_ bits. */
+    private static final String[] VARIANT_DEFINES = new String[] {
+            "USE_OPACITY", "ALPHA_TEXTURE", "TEX_REGION"};
     
-    /** Size of the complete packed vertex data. */
-    private static final int STRIDE = (POSITION_DATA_SIZE + TEX_COORD_DATA_SIZE) * Constants.BYTES_PER_FLOAT;
+    /** Variant bit of the opacity multiply. */
+    private static final int VARIANT_OPACITY = 1;
+    
+    /** Variant bit of alpha-only textures. */
+    private static final int VARIANT_ALPHA_TEXTURE = 1 << 1;
+    
+    /** Variant bit of drawing a sub-rectangle of the texture. */
+    private static final int VARIANT_TEX_REGION = 1 << 2;
     
     /** OpenGL reference to a vertex buffer object loaded with rendering details. */
-    private Optional<Integer> vbo = Optional.<Integer>absent();
+    private int vbo = NOT_SET;
     
     /** Current opacity level of image. */
     private float opacity = 1.0f;
     
-    /** Handle for the opacity property. */
-    private int opacityHandle;
-    
     /** Guice injectable constructor. */
     @Inject
     public SimpleTexturedShader(final Context context,
@@ -66,6 +109,9 @@ public class SimpleTexturedShader extends Shader {
                                 final ShaderRegistry registry,
                                 @Named("SimpleTexturedVertexShader") int vertexShader) {
         super(context, registry, vertexShader, fragmentShader, ATTRIBUTES);
+        
+        setUniforms(UNIFORMS);
+        setVariantDefines(VARIANT_DEFINES);
     }
     
     /** {@inheritDocs} */
@@ -73,11 +119,6 @@ public class SimpleTexturedShader extends Shader {
     protected void getAttributeHandles() {
         final int programHandle = getProgramHandle();
         
-        // Get the uniforms
-        mvpMatrixHandle = GLES20.glGetUniformLocation(programHandle, "u_MVPMatrix");
-        opacityHandle = GLES20.glGetUniformLocation(programHandle, "u_Opacity");
-        textureHandle = GLES20.glGetUniformLocation(programHandle, "u_Texture");
-        
         // Get the attributes
         positionHandle = GLES20.glGetAttribLocation(programHandle, "a_Position");
         texCoordHandle = GLES20.glGetAttribLocation(programHandle, "a_TexCoord");
@@ -87,55 +128,128 @@ public class SimpleTexturedShader extends Shader {
     @Override
     public void draw(final int drawMode, final int numVertices) {
         // Check that all the rquired parameters have been set
-        checkState(mvpMatrix.isPresent(), "You must call setMVPMatrix() before drawing!");
-        checkState(texture.isPresent(), "You must call setTexture() before drawing!");
+        checkState(mvpMatrix != null, "You must call setMVPMatrix() before drawing!");
+        checkState(texture != NOT_SET, "You must call setTexture() before drawing!");
+        
+        // Let the batch collect plain unit squares
+        if ((batch != null) && (vbo == NOT_SET) && !isAlphaTexture &&
+            (drawMode == GLES20.GL_TRIANGLES) && (numVertices == Constants.NUM_VERTICES_PER_SQUARE)) {
+            batch.submit(mvpMatrix, mvpMatrixOffset, texture, textureRegion[0], textureRegion[1],
+                    textureRegion[2], textureRegion[3], Color.WHITE, opacity);
+            resetSettings();
+            return;
+        }
         
+        final ShaderRegistry registry = getRegistry();
         final int myVbo;
-        if (vbo.isPresent()) {
-            myVbo = vbo.get();
+        final VertexLayout myLayout;
+        if (vbo != NOT_SET) {
+            myVbo = vbo;
+            myLayout = layout;
+        } else if ((drawMode == GLES20.GL_TRIANGLES) && 
+                   (numVertices == Constants.NUM_VERTICES_PER_SQUARE)) { // Draw the indexed unit quad
+            myVbo = DrawUtils.getUnitQuadPtVbo();
+            myLayout = VertexLayout.PACKED_POS_TEX;
+            setIndexBuffer(DrawUtils.getQuadIndexBuffer());
         } else {
             myVbo = DrawUtils.getUnitSquarePtVbo();
+            myLayout = VertexLayout.PACKED_POS_TEX;
         }
         
+        // Pick the cheapest variant that can draw the settings
+        int variant = 0;
+        if (opacity < 1.0f) {
+            variant |= VARIANT_OPACITY;
+        }
+        if (isAlphaTexture) {
+            variant |= VARIANT_ALPHA_TEXTURE;
+        }
+        if ((textureRegion[0] != 0.0f) || (textureRegion[1] != 0.0f) ||
+            (textureRegion[2] != 1.0f) || (textureRegion[3] != 1.0f)) {
+            variant |= VARIANT_TEX_REGION;
+        }
+        selectVariant(variant);
+        
         // Pass in the MVP matrix
-        final int matrixCount = 1;
-        final boolean willTranspose = false;
-        GLES20.glUniformMatrix4fv(mvpMatrixHandle, matrixCount, willTranspose, 
-                mvpMatrix.get(), Constants.NO_OFFSET);
+        uniformMatrix4(U_MVP_MATRIX, mvpMatrix, mvpMatrixOffset);
                 
         // Pass in the opacity
-        GLES20.glUniform1f(opacityHandle, opacity);
+        if ((variant & VARIANT_OPACITY) != 0) {
+            uniform1f(U_OPACITY, opacity);
+        }
         
         // Pass in the texture
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.get());
         final int activeTexture = 0;
-        GLES20.glUniform1i(textureHandle, activeTexture);
-        
-        // Pass in the positions
-        final boolean willNormalize = false;
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, myVbo);
-        GLES20.glEnableVertexAttribArray(positionHandle);
-        GLES20.glVertexAttribPointer(positionHandle, POSITION_DATA_SIZE, GLES20.GL_FLOAT, 
-                willNormalize, STRIDE, Constants.NO_OFFSET);
-        
-        // Pass in the texture coordinates
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, myVbo);
-        GLES20.glEnableVertexAttribArray(texCoordHandle);
-        GLES20.glVertexAttribPointer(texCoordHandle, TEX_COORD_DATA_SIZE, GLES20.GL_FLOAT, 
-                willNormalize, STRIDE, TEX_COORD_OFFSET);
+        registry.bindTexture(activeTexture, texture);
+        uniform1i(U_TEXTURE, activeTexture);
+        if ((variant & VARIANT_TEX_REGION) != 0) {
+            uniform4f(U_TEX_REGION, textureRegion[0], textureRegion[1], 
+                    textureRegion[2], textureRegion[3]);
+        }
+        if ((variant & VARIANT_ALPHA_TEXTURE) != 0) {
+            uniform4f(U_TINT, tint.getRed(), tint.getGreen(), tint.getBlue(), tint.getAlpha());
+        }
         
-        GLES20.glDrawArrays(drawMode, Constants.NO_OFFSET, numVertices);
+        // Pass in the positions and texture coordinates
+        registry.bindArrayBuffer(myVbo);
+        pointAttribute(myLayout, VertexLayout.Attribute.POSITION, positionHandle, Constants.NO_OFFSET);
+        pointAttribute(myLayout, VertexLayout.Attribute.TEX_COORD, texCoordHandle, Constants.NO_OFFSET);
         
-        // Clean up
-        mvpMatrix = Optional.absent();
+        drawVertices(drawMode, numVertices);
+        resetSettings();
+    }
+    
+    /** {@inheritDocs} */
+    @Override
+    protected boolean defersDraws() {
+        return batch != null;
+    }
+    
+    /** Clears the settings of the last draw. */
+    private void resetSettings() {
+        isAlphaTexture = false;
+        layout = VertexLayout.POS_TEX;
+        mvpMatrix = null;
+        mvpMatrixOffset = Constants.NO_OFFSET;
         opacity = 1.0f;
-        texture = Optional.absent();
-        vbo = Optional.<Integer>absent();
+        texture = NOT_SET;
+        setTextureRegion(0.0f, 0.0f, 1.0f, 1.0f);
+        tint = Color.WHITE;
+        vbo = NOT_SET;
     }
-
+    
+    /**
+     * Marks the texture of the next draw as holding only coverage in its
+     * alpha channel, such as rendered text, so it is drawn in the tint color.
+     * 
+     * @param isAlphaTexture Whether or not the texture is alpha-only.
+     */
+    public void setAlphaTexture(final boolean isAlphaTexture) {
+        this.isAlphaTexture = isAlphaTexture;
+    }
+    
     public void setMVPMatrix(final float[] matrix) {
-        mvpMatrix = Optional.of(matrix);
+        setMVPMatrix(matrix, Constants.NO_OFFSET);
+    }
+    
+    /**
+     * @param matrix Must not be null.
+     * @param offset Offset of the matrix within the array, such as an MVP arena offset.
+     */
+    public void setMVPMatrix(final float[] matrix, final int offset) {
+        mvpMatrix = checkNotNull(matrix);
+        mvpMatrixOffset = offset;
+    }
+    
+    /**
+     * Routes unit square draws through the sprite batch. Injected when the
+     * application binds the sprite shader's sources.
+     * 
+     * @param batch Must not be null.
+     */
+    @Inject(optional = true)
+    public void setSpriteBatch(final SpriteBatch batch) {
+        this.batch = checkNotNull(batch);
     }
     
     public void setOpacity(float opacity) {
@@ -145,9 +259,57 @@ public class SimpleTexturedShader extends Shader {
         this.opacity = opacity;
     }
 
+    /**
+     * Draws the whole of a texture. Textures packed into an atlas, such as
+     * BaseModule's named textures, must be drawn with setTexture(Texture)
+     * instead, or their whole atlas page is drawn.
+     * 
+     * @param texture OpenGL texture handle.
+     */
     public void setTexture(final int texture) {
-        this.texture = Optional.of(texture);
+        this.texture = texture;
+    }
+    
+    /**
+     * Sets the texture and, if it is part of an atlas, the region of it drawn.
+     * 
+     * @param texture Must not be null.
+     */
+    public void setTexture(final Texture texture) {
+        setTexture(texture.getHandle());
+        setTextureRegion(texture.getU0(), texture.getV0(), texture.getU1(), texture.getV1());
     }
     
-    public void setVBO(final int vbo) { this.vbo = Optional.<Integer>of(vbo); }
+    /**
+     * Draws a sub-rectangle of the texture in place of the whole texture.
+     * 
+     * @param u0 Texture coordinate of the left edge.
+     * @param v0 Texture coordinate of the top edge.
+     * @param u1 Texture coordinate of the right edge.
+     * @param v1 Texture coordinate of the bottom edge.
+     */
+    public void setTextureRegion(final float u0, final float v0, final float u1, final float v1) {
+        textureRegion[0] = u0;
+        textureRegion[1] = v0;
+        textureRegion[2] = u1;
+        textureRegion[3] = v1;
+    }
+    
+    /**
+     * @param tint Color alpha-only textures of the next draw are drawn in,
+     *             white by default. Must not be null.
+     */
+    public void setTint(final Color tint) {
+        this.tint = checkNotNull(tint);
+    }
+    
+    public void setVBO(final int vbo) { this.vbo = vbo; }
+    
+    /**
+     * @param layout Layout of the VBO set for the next draw, VertexLayout.POS_TEX by default.
+     *               Must not be null.
+     */
+    public void setVertexLayout(final VertexLayout layout) {
+        this.layout = checkNotNull(layout);
+    }
 }
\ No newline at end of file
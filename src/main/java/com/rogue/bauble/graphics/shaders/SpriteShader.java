@@ -0,0 +1,321 @@
+package com.rogue.bauble.graphics.shaders;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import static com.google.common.base.Preconditions.*;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.rogue.bauble.graphics.DrawUtils;
+import com.rogue.bauble.graphics.VertexLayout;
+import com.rogue.bauble.graphics.textures.Texture;
+import com.rogue.bauble.misc.Constants;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import javax.inject.Named;
+
+/**
+ * Shader program that draws both solid color and textured quads, so that
+ * widgets mixing the two don't switch programs between draws. Renders a VBO
+ * packed with vertex position, color, and texture coordinate data (see
+ * DrawUtils.buildUnitSquarePctVbo() and setVertexLayout()), multiplying the texture by the vertex
+ * color. Draws without a texture sample a 1x1 white texture, leaving just the
+ * vertex color.
+ * 
+ * A solid quad is drawn with a VBO of its color and no texture, and a
+ * textured quad with a texture and the default white VBO, matching the
+ * output of SimpleColorShader and SimpleTexturedShader respectively. So,
+ * opacity scales the whole color of solid quads, as in SimpleColorShader, and
+ * only the alpha channel of textured quads, as in SimpleTexturedShader.
+ * 
+ * @author R. Matt McCann
+ */
+@Singleton
+public class SpriteShader extends Shader {
+    /** Attribute keys defined in the shader programs. */
+    private static final String[] ATTRIBUTES = new String[] {"a_Position", "a_Color", "a_TexCoord"};
+    
+    /** OpenGL reference to the shader program's color attribute. */
+    private int colorHandle;
+    
+    /** Whether or not the texture only holds meaningful alpha values. */
+    private boolean isAlphaTexture = false;
+    
+    /** Layout of the VBO set for the next draw. */
+    private VertexLayout layout = VertexLayout.POS_COLOR_TEX;
+    
+    /** Transformations applied to the image to be rendered. Null until set. */
+    private float[] mvpMatrix = null;
+    
+    /** Offset of the transformations within the mvpMatrix array. */
+    private int mvpMatrixOffset = Constants.NO_OFFSET;
+    
+    /** Marks the texture and VBO as unset. */
+    private static final int NOT_SET = -1;
+    
+    /** Current opacity level of image. */
+    private float opacity = 1.0f;
+    
+    /** OpenGL reference to the shader program's position attribute. */
+    private int positionHandle;
+    
+    /** OpenGL reference to the shader program's texture coordinate attribute. */
+    private int texCoordHandle;
+    
+    /** OpenGL reference to the loaded texture to be drawn. */
+    private int texture = NOT_SET;
+    
+    /** Texture coordinates of the image's left, top, right, and bottom edges within the texture. */
+    private final float[] textureRegion = new float[] {0.0f, 0.0f, 1.0f, 1.0f};
+    
+    /** Uniform keys defined in the shader programs, indexed by the U_ constants. */
+    private static final String[] UNIFORMS = new String[] {
+            "u_MVPMatrix", "u_Opacity", "u_Texture", "u_TexRegion"};
+    
+    /** Index of the MVP matrix uniform. */
+    private static final int U_MVP_MATRIX = 0;
+    
+    /** Index of the opacity uniform. */
+    private static final int U_OPACITY = 1;
+    
+    /** Index of the texture sampler uniform. */
+    private static final int U_TEXTURE = 2;
+    
+    /** Index of the texture region uniform. */
+    private static final int U_TEX_REGION = 3;
+    
+    /** Variant defines, indexed by the VARIANT_ bits. */
+    private static final String[] VARIANT_DEFINES = new String[] {
+            "USE_OPACITY", "ALPHA_TEXTURE", "TEX_REGION", "SOLID_OPACITY"};
+    
+    /** Variant bit of the opacity multiply. */
+    private static final int VARIANT_OPACITY = 1;
+    
+    /** Variant bit of alpha-only textures. */
+    private static final int VARIANT_ALPHA_TEXTURE = 1 << 1;
+    
+    /** Variant bit of drawing a sub-rectangle of the texture. */
+    private static final int VARIANT_TEX_REGION = 1 << 2;
+    
+    /** Variant bit of the opacity scaling the whole color of a solid quad. */
+    private static final int VARIANT_SOLID_OPACITY = 1 << 3;
+    
+    /** OpenGL reference to a vertex buffer object loaded with rendering details. */
+    private int vbo = NOT_SET;
+    
+    /** Byte offset of the vertices within the VBO. */
+    private int vboOffset = Constants.NO_OFFSET;
+    
+    /** OpenGL reference to the 1x1 white texture, NOT_SET until created in the current context. */
+    private int whiteTexture = NOT_SET;
+    
+    /** Guice injectable constructor. */
+    @Inject
+    public SpriteShader(final Context context,
+                        @Named("SpriteFragmentShader") int fragmentShader,
+                        final ShaderRegistry registry,
+                        @Named("SpriteVertexShader") int vertexShader) {
+        super(context, registry, vertexShader, fragmentShader, ATTRIBUTES);
+        
+        setUniforms(UNIFORMS);
+        setVariantDefines(VARIANT_DEFINES);
+    }
+    
+    /** {@inheritDocs} */
+    @Override
+    protected void getAttributeHandles() {
+        final int programHandle = getProgramHandle();
+        
+        // Get the attributes
+        positionHandle = GLES20.glGetAttribLocation(programHandle, "a_Position");
+        colorHandle = GLES20.glGetAttribLocation(programHandle, "a_Color");
+        texCoordHandle = GLES20.glGetAttribLocation(programHandle, "a_TexCoord");
+        
+        // The program was (re)linked, so any white texture belongs to a lost context
+        whiteTexture = NOT_SET;
+    }
+    
+    /** {@inheritDocs} */
+    @Override
+    public void draw(final int drawMode, final int numVertices) {
+        // Check that all the required parameters have been set
+        checkState(mvpMatrix != null, "You must call setMVPMatrix() before drawing!");
+        
+        final ShaderRegistry registry = getRegistry();
+        final int myVbo;
+        final VertexLayout myLayout;
+        if (vbo != NOT_SET) {
+            myVbo = vbo;
+            myLayout = layout;
+        } else if ((drawMode == GLES20.GL_TRIANGLES) && 
+                   (numVertices == Constants.NUM_VERTICES_PER_SQUARE)) { // Draw the indexed unit quad
+            myVbo = DrawUtils.getUnitQuadPctVbo();
+            myLayout = VertexLayout.PACKED_POS_COLOR_TEX;
+            setIndexBuffer(DrawUtils.getQuadIndexBuffer());
+        } else {
+            myVbo = DrawUtils.getUnitSquarePctVbo();
+            myLayout = VertexLayout.PACKED_POS_COLOR_TEX;
+        }
+        final int myTexture = (texture != NOT_SET) ? texture : getWhiteTexture();
+        
+        // Pick the cheapest variant that can draw the settings
+        int variant = 0;
+        if (opacity < 1.0f) {
+            variant |= VARIANT_OPACITY;
+            if (texture == NOT_SET) {
+                variant |= VARIANT_SOLID_OPACITY;
+            }
+        }
+        if (isAlphaTexture) {
+            variant |= VARIANT_ALPHA_TEXTURE;
+        }
+        if ((textureRegion[0] != 0.0f) || (textureRegion[1] != 0.0f) ||
+            (textureRegion[2] != 1.0f) || (textureRegion[3] != 1.0f)) {
+            variant |= VARIANT_TEX_REGION;
+        }
+        selectVariant(variant);
+        
+        // Pass in the MVP matrix
+        uniformMatrix4(U_MVP_MATRIX, mvpMatrix, mvpMatrixOffset);
+        
+        // Pass in the opacity
+        if ((variant & VARIANT_OPACITY) != 0) {
+            uniform1f(U_OPACITY, opacity);
+        }
+        
+        // Pass in the texture
+        final int activeTexture = 0;
+        registry.bindTexture(activeTexture, myTexture);
+        uniform1i(U_TEXTURE, activeTexture);
+        if ((variant & VARIANT_TEX_REGION) != 0) {
+            uniform4f(U_TEX_REGION, textureRegion[0], textureRegion[1], 
+                    textureRegion[2], textureRegion[3]);
+        }
+        
+        // Pass in the positions, colors, and texture coordinates
+        registry.bindArrayBuffer(myVbo);
+        pointAttribute(myLayout, VertexLayout.Attribute.POSITION, positionHandle, vboOffset);
+        pointAttribute(myLayout, VertexLayout.Attribute.COLOR, colorHandle, vboOffset);
+        pointAttribute(myLayout, VertexLayout.Attribute.TEX_COORD, texCoordHandle, vboOffset);
+        
+        drawVertices(drawMode, numVertices);
+        
+        // Clean up
+        isAlphaTexture = false;
+        layout = VertexLayout.POS_COLOR_TEX;
+        mvpMatrix = null;
+        mvpMatrixOffset = Constants.NO_OFFSET;
+        opacity = 1.0f;
+        texture = NOT_SET;
+        setTextureRegion(0.0f, 0.0f, 1.0f, 1.0f);
+        vbo = NOT_SET;
+        vboOffset = Constants.NO_OFFSET;
+    }
+    
+    /**
+     * Returns the 1x1 white texture sampled by untextured draws, creating it
+     * if it hasn't been in the current context. Must be called from the GL
+     * thread.
+     * 
+     * @return OpenGL reference to the white texture.
+     */
+    public int getWhiteTexture() {
+        if (whiteTexture == NOT_SET) { // If the texture hasn't been created yet
+            final int[] handle = new int[1];
+            final byte white = (byte) 0xff;
+            final ByteBuffer pixel = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+            pixel.put(new byte[] {white, white, white, white});
+            pixel.position(Constants.NO_OFFSET);
+            
+            GLES20.glGenTextures(1, handle, Constants.NO_OFFSET);
+            getRegistry().bindTexture(0, handle[0]);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 1, 1, 0,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixel);
+            
+            whiteTexture = handle[0];
+        }
+        
+        return whiteTexture;
+    }
+    
+    /**
+     * Marks the texture of the next draw as holding only coverage in its
+     * alpha channel, such as rendered text, so it is tinted by the vertex color.
+     * 
+     * @param isAlphaTexture Whether or not the texture is alpha-only.
+     */
+    public void setAlphaTexture(final boolean isAlphaTexture) {
+        this.isAlphaTexture = isAlphaTexture;
+    }
+    
+    public void setMVPMatrix(final float[] matrix) {
+        setMVPMatrix(matrix, Constants.NO_OFFSET);
+    }
+    
+    /**
+     * @param matrix Must not be null.
+     * @param offset Offset of the matrix within the array, such as an MVP arena offset.
+     */
+    public void setMVPMatrix(final float[] matrix, final int offset) {
+        mvpMatrix = checkNotNull(matrix);
+        mvpMatrixOffset = offset;
+    }
+    
+    public void setOpacity(float opacity) {
+        checkArgument((0.0f <= opacity) && (opacity <= 1.0f), "Expected 0 <= "
+                + "opacity <= 1.0, got %s", opacity);
+        
+        this.opacity = opacity;
+    }
+    
+    /** @param texture Texture of the next draw. If not set, the white texture is used. */
+    public void setTexture(final int texture) {
+        this.texture = texture;
+    }
+    
+    /**
+     * Sets the texture and, if it is part of an atlas, the region of it drawn.
+     * 
+     * @param texture Must not be null.
+     */
+    public void setTexture(final Texture texture) {
+        setTexture(texture.getHandle());
+        setTextureRegion(texture.getU0(), texture.getV0(), texture.getU1(), texture.getV1());
+    }
+    
+    /**
+     * Maps the VBO's texture coordinates onto a sub-rectangle of the texture.
+     * 
+     * @param u0 Texture coordinate of the left edge.
+     * @param v0 Texture coordinate of the top edge.
+     * @param u1 Texture coordinate of the right edge.
+     * @param v1 Texture coordinate of the bottom edge.
+     */
+    public void setTextureRegion(final float u0, final float v0, final float u1, final float v1) {
+        textureRegion[0] = u0;
+        textureRegion[1] = v0;
+        textureRegion[2] = u1;
+        textureRegion[3] = v1;
+    }
+    
+    /** @param vbo Position, color, and texture coordinate VBO. If not set, a white unit square is used. */
+    public void setVBO(final int vbo) { setVBO(vbo, Constants.NO_OFFSET); }
+    
+    /**
+     * @param vbo Position, color, and texture coordinate VBO.
+     * @param offset Byte offset of the vertices within the VBO, such as of a streamed write.
+     */
+    public void setVBO(final int vbo, final int offset) {
+        this.vbo = vbo;
+        this.vboOffset = offset;
+    }
+    
+    /**
+     * @param layout Layout of the VBO set for the next draw, VertexLayout.POS_COLOR_TEX by default.
+     *               Must not be null.
+     */
+    public void setVertexLayout(final VertexLayout layout) {
+        this.layout = checkNotNull(layout);
+    }
+}
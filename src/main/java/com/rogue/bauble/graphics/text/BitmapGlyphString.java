@@ -1,43 +1,62 @@
 package com.rogue.bauble.graphics.text;
 
-import android.opengl.GLES20;
 import android.opengl.Matrix;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
 import com.google.inject.Inject;
 import com.rogue.bauble.ProxyView;
 import com.rogue.bauble.graphics.MVP;
 import com.rogue.bauble.graphics.shaders.SimpleTexturedShader;
+import com.rogue.bauble.graphics.textures.TextRasterizer;
 import com.rogue.bauble.graphics.textures.TextureFactory;
-import com.rogue.bauble.misc.Constants;
 
 /**
  * Glyph string implemented using generated bitmaps.
  * 
+ * The bitmaps are shared through the TextureFactory's text cache, so strings
+ * showing the same text draw the same texture, and text that comes back is
+ * drawn without rendering it again. The bitmaps are rendered in the
+ * background by the TextRasterizer, and the string keeps drawing its old text
+ * until the new texture is uploaded. The bitmaps are alpha-only and tinted
+ * by the string's color when drawn, so changing the color or opacity never
+ * renders the text again.
+ * 
  * @author R. Matt McCann
  */
-public class BitmapGlyphString extends GlyphString {
+public class BitmapGlyphString extends GlyphString implements TextRasterizer.Target {
+    /** Font size the bitmaps are rendered at. */
+    private static final float FONT_SIZE = 60.0f;
+    
     /** Dimensions of the texture. */
     private final float[] aspectRatio = new float[1];
     
+    /** Used to render the bitmaps in the background. */
+    private final TextRasterizer rasterizer;
+    
     /** Handle of the raw texture. */
     private int rawTextureHandle = -1;
     
     /** Used to draw the string. */
     private final SimpleTexturedShader shader;
     
+    /** Tracks the string's pending bitmaps. */
+    private final TextRasterizer.Slot slot = new TextRasterizer.Slot(this);
+    
     private static final String TAG = "BitmapGlyphString";
     
-    /** Used to create new bitmaps. */
+    /** Used to create and share the bitmaps. */
     private final TextureFactory textureFactory;
     
-    /** Used to retrieve the context for deleting textures. */
+    /** Used to retrieve the context for releasing textures. */
     private final ProxyView view;
     
     /** Guice injectable constructor. */
     @Inject
-    public BitmapGlyphString(SimpleTexturedShader shader,
+    public BitmapGlyphString(TextRasterizer rasterizer,
+                             SimpleTexturedShader shader,
                              TextureFactory textureFactory,
                              ProxyView view) {
+        this.rasterizer = checkNotNull(rasterizer);
         this.shader = checkNotNull(shader);
         this.textureFactory = checkNotNull(textureFactory);
         this.view = checkNotNull(view);
@@ -46,56 +65,68 @@ public class BitmapGlyphString extends GlyphString {
     /** {@inheritDocs} */
     @Override
     public void delete() {
-        if (rawTextureHandle != -1) { // If a texture has already been loaded
-            view.queueEvent(new Runnable() {
-                @Override
-                public void run() {
-                    int numTextures = 1;
-                    GLES20.glDeleteTextures(numTextures, new int[] {rawTextureHandle}, Constants.NO_OFFSET);
-                    rawTextureHandle = -1;
+        rasterizer.cancel(slot);
+        
+        view.queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (BitmapGlyphString.this) {
+                    if (rawTextureHandle != -1) { // If a texture has already been loaded
+                        textureFactory.getTextCache().release(rawTextureHandle);
+                        rawTextureHandle = -1;
+                    }
                 }
-            });
-        }
+            }
+        });
     }
     
     /** {@inheritDocs} */
     @Override
-    public float getWidth() {
+    public synchronized float getWidth() {
         return getHeight() * aspectRatio[0];
     }
     
+    /** {@inheritDocs} */
+    @Override
+    public float measure(final CharSequence text, final int start, final int end) {
+        checkPositionIndexes(start, end, text.length());
+        
+        return textureFactory.measureAlphaText(text.subSequence(start, end).toString(), FONT_SIZE);
+    }
+    
     /** {@inheritDocs} */
     @Override
     public synchronized void render(MVP mvp) {
         if (rawTextureHandle != -1) { // If the texture has been loaded
             shader.activate();
             
-            float[] model = mvp.peekCopyM();
-            Matrix.translateM(model, Constants.NO_OFFSET, (float) getPosition().getX(), (float) getPosition().getY(), 0.0f);
-            Matrix.scaleM(model, Constants.NO_OFFSET, getHeight() * aspectRatio[0], getHeight(), 1.0f);
-            shader.setMVPMatrix(mvp.collapseM(model));
+            float[] arena    = mvp.getArena();
+            int     mvpSpace = mvp.collapseLocal();
+            Matrix.translateM(arena, mvpSpace, (float) getPosition().getX(), (float) getPosition().getY(), 0.0f);
+            Matrix.scaleM(arena, mvpSpace, getHeight() * aspectRatio[0], getHeight(), 1.0f);
+            shader.setMVPMatrix(arena, mvpSpace);
             shader.setOpacity(getOpacity());
             shader.setTexture(rawTextureHandle);
+            shader.setAlphaTexture(true);
+            shader.setTint(getColor());
             shader.draw();
         }
     }
 
     /** {@inheritDocs} */
     @Override
-    protected synchronized void updateRendering() {
-        final String text = getText();
+    public synchronized void swapTexture(int handle, float aspectRatio) {
+        if (rawTextureHandle != -1) { // If a texture has already been loaded
+            textureFactory.getTextCache().release(rawTextureHandle);
+        }
         
-        view.queueEvent(new Runnable() {
-            @Override
-            public void run() {
-                if (rawTextureHandle != -1) { // If a texture has already been loaded
-                    int numTextures = 1;
-                    GLES20.glDeleteTextures(numTextures, new int[] {rawTextureHandle}, Constants.NO_OFFSET);
-                }
-                
-                rawTextureHandle = textureFactory.texturizeText(text, getColor(),
-                        getAlignment(), 60.0f, aspectRatio);
-            }
-        });
+        rawTextureHandle = handle;
+        this.aspectRatio[0] = aspectRatio;
+    }
+    
+    /** {@inheritDocs} */
+    @Override
+    protected synchronized void updateRendering() {
+        rasterizer.request(slot, getText(), getAlignment(), FONT_SIZE);
     }
 }
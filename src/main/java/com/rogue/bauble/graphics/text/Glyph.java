@@ -1,9 +1,85 @@
 package com.rogue.bauble.graphics.text;
 
+import com.rogue.bauble.graphics.textures.Texture;
+
 /**
+ * Metrics of a single character of a GlyphMap and the location of its image
+ * within the map's atlas. Metrics are in line heights, with x to the right
+ * and y up from the pen position on the baseline.
  *
- * @author moxx
+ * @author R. Matt McCann
  */
 public class Glyph {
+    /** Distance the pen moves past the glyph. */
+    private final float advance;
 
+    /** Bottom edge of the glyph's image. */
+    private final float bottom;
+    
+    /** Character drawn by the glyph. */
+    private final char character;
+    
+    /** Height of the glyph's image. */
+    private final float height;
+    
+    /** Whether or not the glyph's image is in the map's current atlas pages. */
+    private boolean isLoaded = false;
+    
+    /** Left edge of the glyph's image. */
+    private final float left;
+    
+    /** Image of the glyph within the atlas, null if the glyph draws nothing. */
+    private final Texture texture;
+    
+    /** Width of the glyph's image. */
+    private final float width;
+    
+    /**
+     * @param character Character drawn by the glyph.
+     * @param advance Distance the pen moves past the glyph.
+     * @param left Left edge of the glyph's image.
+     * @param bottom Bottom edge of the glyph's image.
+     * @param width Width of the glyph's image.
+     * @param height Height of the glyph's image.
+     * @param texture Image of the glyph within the atlas, null if the glyph draws nothing.
+     */
+    Glyph(final char character, final float advance, final float left, final float bottom,
+          final float width, final float height, final Texture texture) {
+        this.advance = advance;
+        this.bottom = bottom;
+        this.character = character;
+        this.height = height;
+        this.left = left;
+        this.texture = texture;
+        this.width = width;
+    }
+    
+    public float getAdvance() { return advance; }
+    
+    public float getBottom() { return bottom; }
+    
+    public char getCharacter() { return character; }
+    
+    public float getHeight() { return height; }
+    
+    public float getLeft() { return left; }
+    
+    /** @return Image of the glyph within the atlas, null if the glyph draws nothing. */
+    public Texture getTexture() { return texture; }
+    
+    public float getWidth() { return width; }
+    
+    /**
+     * @return Whether or not the glyph's image is in the map's current atlas
+     *         pages, so the glyph can be drawn. Must be checked on the GL thread.
+     */
+    public boolean isLoaded() { return isLoaded; }
+    
+    /** @return Whether or not the glyph draws anything, unlike a space. */
+    public boolean isVisible() { return texture != null; }
+    
+    /** @param isLoaded Whether or not the glyph's image is in the map's current atlas pages. */
+    void setLoaded(final boolean isLoaded) {
+        this.isLoaded = isLoaded;
+    }
 }
@@ -1,14 +1,441 @@
 package com.rogue.bauble.graphics.text;
 
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.opengl.GLES20;
+import static com.google.common.base.Preconditions.*;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.rogue.bauble.graphics.shaders.DistanceFieldShader;
+import com.rogue.bauble.graphics.textures.Texture;
+import com.rogue.bauble.graphics.textures.TextureAtlas;
+import com.rogue.bauble.graphics.textures.TextureFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Maps individual characters to an atlas of glyphs stored in a single image.
  * 
+ * Each glyph is rasterized once, white on transparent, and packed into the
+ * pages of a TextureAtlas, so strings of any text are drawn as one quad per
+ * glyph tinted by their color, and changing a string's text never uploads a
+ * texture. The printable ASCII characters are measured up front; any other
+ * character is measured on first use. Glyphs are measured on the calling
+ * thread. loadPending() hands the glyphs measured since its last call to a
+ * background thread to be rasterized, and a later loadPending() on the GL
+ * thread packs them into a single atlas build. Glyphs are not drawn until
+ * then, see Glyph.isLoaded().
+ * 
+ * Kerning is the difference between the measured width of a pair of
+ * characters and the sum of their advances, measured once per pair.
+ * 
+ * In distance field mode, enabled when the application binds the distance
+ * field shader's sources, each glyph is instead rasterized as the signed
+ * distance to its edge, drawn by the DistanceFieldShader. The same atlas then
+ * draws sharp text at every height, rather than stretching the FONT_SIZE
+ * rasterization. Contexts the shader can't run in, see
+ * DistanceFieldShader.isSupported(), fall back to coverage glyphs.
+ * 
  * @author R. Matt McCann
  */
+@Singleton
 public class GlyphMap {
+    /** Size of the font the glyphs are rasterized at in pixels. */
+    public static final float FONT_SIZE = 60.0f;
+    
+    /** First printable ASCII character, measured up front. */
+    private static final char FIRST_ASCII = ' ';
+    
+    /** Last printable ASCII character, measured up front. */
+    private static final char LAST_ASCII = '~';
+    
+    /** Transparent pixels around each glyph's image, so antialiased edges aren't clipped. */
+    private static final int MARGIN = 1;
+    
+    /** Width and maximum height of the coverage atlas pages in pixels. */
+    private static final int PAGE_SIZE = 512;
+    
+    /** Width and maximum height of the distance field atlas pages in pixels, fitting ASCII on one page. */
+    private static final int DISTANCE_FIELD_PAGE_SIZE = 1024;
+    
+    /** Pixels of distance encoded either side of each glyph's edge in distance field mode. */
+    private static final int SPREAD = 6;
+    
+    /** Baseline of the line, in line heights up from the line's center. */
+    private final float baseline;
+    
+    /** Shader drawing distance field glyphs, null if the application doesn't bind its sources. */
+    private DistanceFieldShader distanceFieldShader = null;
+    
+    /** Rasterizes the glyphs. */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("GlyphMap").build());
+    
+    /** Number of times the atlas pages have been deleted, so older rasterizations are dropped. */
+    private int generation = 0;
+    
+    /** Used to measure the kerning of character pairs. */
+    private final char[] pair = new char[2];
+    
+    /** Whether or not the glyphs are rasterized as distance fields. */
+    private boolean isDistanceField = false;
+    
+    /** Whether or not the format of the current atlas pages has been picked, see loadPending(). */
+    private boolean isFormatSelected = false;
+    
+    /** Measured kerning of character pairs, keyed by the pair's characters. */
+    private final Map<Integer, Float> kernings = new HashMap<Integer, Float>();
+    
+    /** Height of a line of text in pixels. */
+    private final float lineHeight;
+    
+    /** Interface for logging events. */
+    private static final Logger logger = LoggerFactory.getLogger("GlyphMap");
+    
     /** Characters defined in the glyph map. */
     private final Map<Character, Glyph> map = new HashMap<Character, Glyph>();
+    
+    /** Transparent pixels around each glyph's image, leaving room for the distances if need be. */
+    private int margin = MARGIN;
+    
+    /** Handles of the loaded atlas pages. */
+    private final List<Integer> pages = new ArrayList<Integer>();
+    
+    /** Used to measure and rasterize the glyphs. */
+    private final Paint paint = new Paint();
+    
+    /** Visible glyphs measured but not yet rasterized. */
+    private final List<Glyph> pending = new ArrayList<Glyph>();
+    
+    /** Glyphs being rasterized in the background, null if none. */
+    private Rasterization rasterizing = null;
+    
+    /** Used to load the atlas pages. */
+    private final TextureFactory textureFactory;
+    
+    /** Guice injectable constructor. */
+    @Inject
+    public GlyphMap(final TextureFactory textureFactory) {
+        this.textureFactory = checkNotNull(textureFactory);
+        
+        // Set up the attributes of the text, as TextureFactory.texturizeText() does
+        paint.setTextSize(FONT_SIZE);
+        paint.setAntiAlias(true);
+        paint.setTypeface(Typeface.SANS_SERIF);
+        paint.setFakeBoldText(true);
+        paint.setARGB(255, 255, 255, 255);
+        
+        final Paint.FontMetrics metrics = paint.getFontMetrics();
+        this.lineHeight = metrics.descent - metrics.ascent;
+        this.baseline = (metrics.ascent + metrics.descent) / 2.0f / lineHeight;
+        
+        measureAscii();
+    }
+    
+    /**
+     * Deletes the loaded atlas pages. The glyphs stay valid and are
+     * rasterized again, starting with the next loadPending(). Must be called
+     * from the GL thread.
+     */
+    public synchronized void delete() {
+        textureFactory.deleteTextures(Ints.toArray(pages));
+        pages.clear();
+        generation++;
+        isFormatSelected = false; // The next context may support another format
+        
+        pending.clear();
+        for (Glyph glyph : map.values()) {
+            if (glyph.isVisible()) {
+                glyph.setLoaded(false);
+                pending.add(glyph);
+            }
+        }
+    }
+    
+    /** @return Baseline of the line, in line heights up from the line's center. */
+    public float getBaseline() { return baseline; }
+    
+    /**
+     * Returns the glyph of the character, measuring it if it is new. The
+     * glyph's image is rasterized once loadPending() has picked it up.
+     * 
+     * @param character Character to look up.
+     * @return Glyph of the character.
+     */
+    public synchronized Glyph getGlyph(final char character) {
+        Glyph glyph = map.get(character);
+        
+        if (glyph == null) { // If the character hasn't been measured yet
+            final String text = String.valueOf(character);
+            final Rect bounds = new Rect();
+            paint.getTextBounds(text, 0, 1, bounds);
+            final float advance = paint.measureText(text) / lineHeight;
+            
+            if ((bounds.width() == 0) || (bounds.height() == 0)) { // If the glyph draws nothing
+                glyph = new Glyph(character, advance, 0.0f, 0.0f, 0.0f, 0.0f, null);
+            } else {
+                final int width = bounds.width() + 2 * margin;
+                final int height = bounds.height() + 2 * margin;
+                
+                glyph = new Glyph(character, advance, (bounds.left - margin) / lineHeight,
+                        -(bounds.bottom + margin) / lineHeight, width / lineHeight,
+                        height / lineHeight, new Texture((float) width / height, 0));
+                pending.add(glyph);
+            }
+            map.put(character, glyph);
+        }
+        
+        return glyph;
+    }
+    
+    /**
+     * Returns the adjustment of the pen between two characters, beyond the
+     * advance of the first.
+     * 
+     * @param first Character on the left.
+     * @param second Character on the right.
+     * @return Kerning in line heights, negative to pull the characters together.
+     */
+    public synchronized float getKerning(final char first, final char second) {
+        final Integer key = (first << 16) | second;
+        Float kerning = kernings.get(key);
+        
+        if (kerning == null) { // If the pair hasn't been measured yet
+            pair[0] = first;
+            pair[1] = second;
+            final float pairWidth = paint.measureText(pair, 0, 2) / lineHeight;
+            
+            kerning = pairWidth - getGlyph(first).getAdvance() - getGlyph(second).getAdvance();
+            kernings.put(key, kerning);
+        }
+        
+        return kerning;
+    }
+    
+    /** @return Whether or not the glyphs are rasterized as distance fields, see DistanceFieldShader. */
+    public synchronized boolean isDistanceField() { return isDistanceField; }
+    
+    /**
+     * Packs the glyphs rasterized in the background into new atlas pages, and
+     * starts rasterizing the glyphs measured since the last call. Cheap when
+     * there are none, so it may be called before every draw. Must be called
+     * from the GL thread.
+     */
+    public synchronized void loadPending() {
+        if (!isFormatSelected) { // If the pages are about to be built in a new context
+            isDistanceField = (distanceFieldShader != null) && distanceFieldShader.isSupported();
+            if ((distanceFieldShader != null) && !isDistanceField) {
+                logger.warn("Distance fields aren't supported by the context, using coverage glyphs");
+            }
+            isFormatSelected = true;
+        }
+        
+        if ((rasterizing != null) && rasterizing.isDone) { // If the background rasterization is done
+            if (rasterizing.generation == generation) {
+                loadRasterized(rasterizing);
+            } else { // Its pages were deleted before it finished
+                for (Bitmap image : rasterizing.images) {
+                    image.recycle();
+                }
+            }
+            rasterizing = null;
+        }
+        
+        if ((rasterizing == null) && !pending.isEmpty()) { // Rasterize the new glyphs in the background
+            rasterizing = new Rasterization(new ArrayList<Glyph>(pending), generation,
+                    isDistanceField, margin, new Paint(paint));
+            pending.clear();
+            executor.execute(rasterizing);
+        }
+    }
+    
+    /** Packs rasterized glyphs into new atlas pages. Runs on the GL thread. */
+    private void loadRasterized(final Rasterization rasterized) {
+        final TextureAtlas atlas = new TextureAtlas(textureFactory,
+                rasterized.isDistanceField ? DISTANCE_FIELD_PAGE_SIZE : PAGE_SIZE);
+        for (int iter = 0; iter < rasterized.glyphs.size(); iter++) {
+            atlas.add(rasterized.glyphs.get(iter).getTexture(), rasterized.images.get(iter));
+        }
+        final List<Integer> newPages = atlas.build();
+        
+        if (rasterized.isDistanceField) { // Interpolate the distances when magnified
+            for (int page : newPages) {
+                textureFactory.setFiltering(page, GLES20.GL_LINEAR, GLES20.GL_LINEAR);
+            }
+        }
+        pages.addAll(newPages);
+        
+        for (Glyph glyph : rasterized.glyphs) {
+            glyph.setLoaded(true);
+        }
+    }
+    
+    /**
+     * Measures the width of a run of text as laid out by MappedGlyphString,
+     * the advances of its glyphs plus the kerning between them.
+     * 
+     * @param text Text holding the run. Must not be null.
+     * @param start Index of the run's first character.
+     * @param end Index past the run's last character.
+     * @return Width of the run in line heights.
+     */
+    public synchronized float measure(final CharSequence text, final int start, final int end) {
+        checkPositionIndexes(start, end, text.length());
+        
+        float width = 0.0f;
+        for (int iter = start; iter < end; iter++) {
+            if (iter > start) {
+                width += getKerning(text.charAt(iter - 1), text.charAt(iter));
+            }
+            width += getGlyph(text.charAt(iter)).getAdvance();
+        }
+        
+        return width;
+    }
+    
+    /** Measures the printable ASCII characters. */
+    private void measureAscii() {
+        for (char character = FIRST_ASCII; character <= LAST_ASCII; character++) {
+            getGlyph(character);
+        }
+    }
+    
+    /**
+     * Rasterizes the glyphs as distance fields, drawn by the shader, rather
+     * than as coverage. Injected when the application binds the distance
+     * field shader's sources, before any glyph is rasterized.
+     * 
+     * @param shader Must not be null.
+     */
+    @Inject(optional = true)
+    public synchronized void setDistanceFieldShader(final DistanceFieldShader shader) {
+        checkState(pages.isEmpty() && (rasterizing == null), "The glyphs have already been rasterized!");
+        
+        // Measure again, leaving room for the distances around each glyph
+        distanceFieldShader = checkNotNull(shader);
+        isFormatSelected = false;
+        margin = SPREAD;
+        kernings.clear();
+        map.clear();
+        pending.clear();
+        measureAscii();
+    }
+    
+    /**
+     * Replaces the coverage of a rasterized glyph with the signed distance of
+     * each pixel to the glyph's edge, 0.5 alpha on the edge and rising inside,
+     * found by searching the SPREAD pixels around each pixel.
+     * 
+     * @param image Glyph rasterized white on transparent, with SPREAD pixels of margin.
+     */
+    private static void toDistanceField(final Bitmap image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] pixels = new int[width * height];
+        image.getPixels(pixels, 0, width, 0, 0, width, height);
+        
+        final boolean[] inside = new boolean[pixels.length];
+        for (int pixel = 0; pixel < pixels.length; pixel++) {
+            inside[pixel] = (pixels[pixel] >>> 24) >= 128;
+        }
+        
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final boolean isInside = inside[y * width + x];
+                
+                // Find the nearest pixel on the other side of the edge
+                int nearest = (SPREAD + 1) * (SPREAD + 1);
+                for (int dy = -SPREAD; dy <= SPREAD; dy++) {
+                    for (int dx = -SPREAD; dx <= SPREAD; dx++) {
+                        final int distance = dx * dx + dy * dy;
+                        if (distance >= nearest) {
+                            continue;
+                        }
+                        
+                        final int otherX = x + dx;
+                        final int otherY = y + dy;
+                        final boolean isOtherInside = (0 <= otherX) && (otherX < width) &&
+                                (0 <= otherY) && (otherY < height) && inside[otherY * width + otherX];
+                        if (isOtherInside != isInside) {
+                            nearest = distance;
+                        }
+                    }
+                }
+                
+                // The edge lies halfway between the pixel centers
+                final float distance = Math.min((float) Math.sqrt(nearest) - 0.5f, SPREAD);
+                final float signedDistance = isInside ? distance : -distance;
+                final int alpha = Math.round(Math.max(0.0f, Math.min(1.0f,
+                        0.5f + signedDistance / (2.0f * SPREAD))) * 255.0f);
+                pixels[y * width + x] = (alpha << 24) | 0xffffff;
+            }
+        }
+        
+        image.setPixels(pixels, 0, width, 0, 0, width, height);
+    }
+    
+    /** Glyphs rasterized together on the background thread. */
+    private static final class Rasterization implements Runnable {
+        /** Generation of the atlas pages the glyphs are rasterized for. */
+        private final int generation;
+        
+        /** Glyphs to rasterize. */
+        private final List<Glyph> glyphs;
+        
+        /** Images of the glyphs, by glyph. */
+        private final List<Bitmap> images = new ArrayList<Bitmap>();
+        
+        /** Whether or not the glyphs are rasterized as distance fields. */
+        private final boolean isDistanceField;
+        
+        /** Whether or not all the images are ready, after which only the GL thread touches them. */
+        private volatile boolean isDone = false;
+        
+        /** Transparent pixels around each glyph's image. */
+        private final int margin;
+        
+        /** Copy of the map's paint, so the map may keep measuring meanwhile. */
+        private final Paint paint;
+        
+        Rasterization(final List<Glyph> glyphs, final int generation, final boolean isDistanceField,
+                      final int margin, final Paint paint) {
+            this.generation = generation;
+            this.glyphs = glyphs;
+            this.isDistanceField = isDistanceField;
+            this.margin = margin;
+            this.paint = paint;
+        }
+        
+        /** Rasterizes the glyphs. Runs on the background thread. */
+        @Override
+        public void run() {
+            final Rect bounds = new Rect();
+            for (Glyph glyph : glyphs) {
+                final String text = String.valueOf(glyph.getCharacter());
+                paint.getTextBounds(text, 0, 1, bounds);
+                
+                final Bitmap image = Bitmap.createBitmap(bounds.width() + 2 * margin,
+                        bounds.height() + 2 * margin, Bitmap.Config.ARGB_8888);
+                image.eraseColor(0);
+                new Canvas(image).drawText(text, margin - bounds.left, margin - bounds.top, paint);
+                if (isDistanceField) {
+                    toDistanceField(image);
+                }
+                images.add(image);
+            }
+            
+            isDone = true;
+        }
+    }
 }
@@ -2,25 +2,44 @@ package com.rogue.bauble.graphics.text;
 
 import android.opengl.Matrix;
 import static com.google.common.base.Preconditions.*;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.rogue.bauble.graphics.MVP;
 import com.rogue.bauble.graphics.text.GlyphString.GlyphStringFactory;
-import com.rogue.bauble.misc.Constants;
 import com.rogue.bauble.properties.Renderable;
 import com.rogue.unipoint.FloatPoint2D;
 import com.rogue.unipoint.Point2D;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Model of a renderable paragraph.
  * 
+ * Each line of the text is word wrapped to the paragraph's width, measured
+ * by a glyph string from the factory so the lines fit as the strings draw
+ * them, and the line breaks of each line are cached until the line height
+ * changes. Setting new text lays the paragraph out incrementally: strings
+ * still showing the same text are kept as they are, strings no longer needed
+ * are given the text of new lines before any string is created, and the rest
+ * are deleted. When the glyph strings are mapped, the glyphs of every line
+ * are collected by the SpriteBatch, so the whole paragraph is drawn by a
+ * single draw call.
+ * 
  * @author R. Matt McCann
  */
 public class GlyphParagraph implements Renderable {
+    /** Wrapped lines of each line of the text, for the current line height. */
+    private Map<String, List<String>> breaks = new HashMap<String, List<String>>();
+    
     /** Used to create new glyph string. */
     private final GlyphStringFactory glyphFactory;
     
+    /** Used to measure the text for wrapping. Never given text of its own. */
+    private final GlyphString measurer;
+    
     /** Height of the lines in the paragraph. */
     private float lineHeight = 1;
     
@@ -33,70 +52,208 @@ public class GlyphParagraph implements Renderable {
     /** Rendering size of the paragraph. */
     private FloatPoint2D size = new FloatPoint2D(1, 1);
 
+    /** Lines of the text, before wrapping. */
+    private List<String> text = new ArrayList<String>();
+    
     /** Guice injectable constructor. */
     @Inject
     public GlyphParagraph(GlyphStringFactory glyphFactory) {
         this.glyphFactory = checkNotNull(glyphFactory);
+        this.measurer = glyphFactory.create();
+    }
+    
+    /** Releases the lines of the paragraph. */
+    public synchronized void delete() {
+        for (GlyphString line : lines) {
+            line.delete();
+        }
+        
+        lines = new ArrayList<GlyphString>();
+        text = new ArrayList<String>();
+    }
+    
+    /** @return Number of lines of the paragraph, after wrapping. */
+    public synchronized int getNumLines() {
+        return lines.size();
+    }
+    
+    /** Lays out the lines of the text, reusing the glyph strings of the current lines. */
+    private void layout() {
+        // Wrap the text, reusing the cached line breaks
+        final Map<String, List<String>> newBreaks = new HashMap<String, List<String>>();
+        final List<String> wrapped = new ArrayList<String>();
+        for (String lineText : text) {
+            List<String> lineBreaks = breaks.get(lineText);
+            if (lineBreaks == null) { // If the line hasn't been wrapped yet
+                lineBreaks = wrap(lineText, 1.0f / lineHeight);
+            }
+            
+            newBreaks.put(lineText, lineBreaks);
+            wrapped.addAll(lineBreaks);
+        }
+        breaks = newBreaks; // Only keep the breaks of the current text
+        
+        // Keep the lines still showing the same text
+        final Map<String, List<GlyphString>> oldLines = new HashMap<String, List<GlyphString>>();
+        for (GlyphString line : lines) {
+            List<GlyphString> sameText = oldLines.get(line.getText());
+            if (sameText == null) {
+                sameText = new ArrayList<GlyphString>();
+                oldLines.put(line.getText(), sameText);
+            }
+            sameText.add(line);
+        }
+        final List<GlyphString> newLines = new ArrayList<GlyphString>(wrapped.size());
+        for (String lineText : wrapped) {
+            final List<GlyphString> sameText = oldLines.get(lineText);
+            newLines.add(((sameText != null) && !sameText.isEmpty()) ?
+                    sameText.remove(sameText.size() - 1) : null);
+        }
+        
+        // Give the remaining lines new text before creating any
+        final List<GlyphString> spares = new ArrayList<GlyphString>();
+        for (List<GlyphString> sameText : oldLines.values()) {
+            spares.addAll(sameText);
+        }
+        for (int iter = 0; iter < newLines.size(); iter++) {
+            if (newLines.get(iter) == null) { // If no line showed the text
+                final GlyphString line = spares.isEmpty() ?
+                        glyphFactory.create() : spares.remove(spares.size() - 1);
+                line.setText(wrapped.get(iter));
+                newLines.set(iter, line);
+            }
+        }
+        
+        // Release the lines no longer needed
+        for (GlyphString spare : spares) {
+            spare.delete();
+        }
+        
+        // Determine the spacing between the lines
+        final int numLines = newLines.size();
+        final float lineSpacing;
+        if (numLines > 1) {
+            lineSpacing = ((size.getY() / numLines) % 1) / (numLines - 1);
+        } else {
+            lineSpacing = 0;
+        }
+        
+        float yOffset = 0.5f;
+        for (GlyphString line : newLines) { // Stack the lines from the top
+            yOffset -= lineHeight / 2;
+            
+            line.setHeight(lineHeight);
+            line.setPosition(new Point2D(0, yOffset));
+            
+            yOffset -= lineHeight / 2 + lineSpacing;
+        }
+        
+        // Start using the new paragraph contents
+        this.lines = newLines;
     }
     
     /** {@inheritDocs} */
     @Override
-    public void render(MVP mvp) {
-        float[] modelSpace = mvp.peekCopyM();
+    public synchronized void render(MVP mvp) {
+        float[] arena      = mvp.getArena();
+        int     modelSpace = mvp.pushM();
         
         // Transform into paragraph space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, position.getX(), 
+        Matrix.translateM(arena, modelSpace, position.getX(),
                 position.getY(), 0);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, size.getX(), size.getY(), 1);
-        mvp.pushM(modelSpace);
+        Matrix.scaleM(arena, modelSpace, size.getX(), size.getY(), 1);
         
         // Render the lines of the paragraph
         for (GlyphString line : lines) {
             line.render(mvp);
         }
 
-        mvp.popM();
+        mvp.dropM();
     }
     
-    public void setLineHeight(float lineHeight) {
+    public synchronized void setLineHeight(float lineHeight) {
         checkArgument(lineHeight > 0, "LineHeight must be > 0, got %s", lineHeight);
         
-        this.lineHeight = lineHeight;
+        if (this.lineHeight != lineHeight) { // If the lines need to be wrapped again
+            this.lineHeight = lineHeight;
+            breaks.clear();
+            layout();
+        }
     }
     
     public void setPosition(FloatPoint2D position) {
         this.position = checkNotNull(position);
     }
     
-    public void setSize(FloatPoint2D size) {
+    public synchronized void setSize(FloatPoint2D size) {
         this.size = checkNotNull(size);
+        
+        layout();
+    }
+    
+    /** @param text Lines of the text, separated by '\n'. Must not be null. */
+    public void setText(String text) {
+        setText(Lists.newArrayList(Splitter.on('\n').split(checkNotNull(text))));
     }
     
-    public void setText(List<String> text) {
-        float             lineSpacing;
-        List<GlyphString> newLines = new ArrayList<GlyphString>();
-        float             yOffset = 0.5f;
+    /** @param text Lines of the text, each wrapped to the paragraph's width. Must not be null. */
+    public synchronized void setText(List<String> text) {
+        checkNotNull(text);
         
-        // Determine the spacing between the lines
-        if (text.size() > 1) {
-            lineSpacing = ((size.getY() / text.size()) % 1) / (text.size() - 1);
-        } else {
-            lineSpacing = 0;
+        if (!this.text.equals(text)) { // If the text is different
+            this.text = new ArrayList<String>(text);
+            layout();
+        }
+    }
+    
+    /**
+     * Breaks a line of text into lines no wider than the given width, at
+     * spaces where possible and within words wider than the width.
+     * 
+     * @param lineText Line to wrap.
+     * @param maxWidth Width of the wrapped lines in line heights.
+     * @return The wrapped lines.
+     */
+    List<String> wrap(final String lineText, final float maxWidth) {
+        final List<String> wrapped = new ArrayList<String>();
+        final int length = lineText.length();
+        if (length == 0) {
+            wrapped.add(lineText);
+            return wrapped;
         }
         
-        for (String lineText : text) { // Create glyph strings for each line
-            yOffset -= lineHeight / 2;
+        int lineStart = 0;
+        do {
+            // Take whole words while they fit
+            int lineEnd = lineStart;
+            int wordEnd = lineStart;
+            while (wordEnd < length) {
+                wordEnd = lineText.indexOf(' ', wordEnd + 1);
+                if (wordEnd == -1) {
+                    wordEnd = length;
+                }
+                
+                if (measurer.measure(lineText, lineStart, wordEnd) > maxWidth) {
+                    break;
+                }
+                lineEnd = wordEnd;
+            }
             
-            GlyphString line = glyphFactory.create();
-            line.setHeight(lineHeight);
-            line.setPosition(new Point2D(0, yOffset));
-            line.setText(lineText);
-            newLines.add(line);
+            if (lineEnd == lineStart) { // If the first word is too wide by itself, break it
+                lineEnd++;
+                while ((lineEnd < length) && (measurer.measure(lineText, lineStart, lineEnd + 1) <= maxWidth)) {
+                    lineEnd++;
+                }
+            }
+            wrapped.add(lineText.substring(lineStart, lineEnd));
             
-            yOffset -= lineHeight / 2 + lineSpacing;
-        }
+            // Skip the spaces the line was broken at
+            lineStart = lineEnd;
+            while ((lineStart < length) && (lineText.charAt(lineStart) == ' ')) {
+                lineStart++;
+            }
+        } while (lineStart < length);
         
-        // Start using the new paragraph contents
-        this.lines = newLines;
+        return wrapped;
     }
 }
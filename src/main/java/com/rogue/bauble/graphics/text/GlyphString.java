@@ -60,6 +60,17 @@ public abstract class GlyphString implements Renderable {
     
     public abstract float getWidth();
     
+    /**
+     * Measures the width a run of text is drawn at by this kind of string,
+     * without changing the string's text.
+     * 
+     * @param text Text holding the run. Must not be null.
+     * @param start Index of the run's first character.
+     * @param end Index past the run's last character.
+     * @return Width of the run in line heights.
+     */
+    public abstract float measure(CharSequence text, int start, int end);
+    
     public void setAlignment(Paint.Align alignment) {
         Paint.Align oldAlignment = this.alignment;
         
@@ -71,15 +82,9 @@ public abstract class GlyphString implements Renderable {
         }
     }
     
+    /** @param color Must not be null. Applied when drawn, so the text isn't rendered again. */
     public void setColor(Color color) {
-        Color oldColor = this.color;
-        
         this.color = checkNotNull(color);
-        
-        // If the text has already een rendered
-        if ((getText() != null) && (color != oldColor)) {
-            updateRendering();
-        }
     }
 
     public void setHeight(float height) {
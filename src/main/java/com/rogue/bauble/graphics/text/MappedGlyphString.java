@@ -1,31 +1,156 @@
 package com.rogue.bauble.graphics.text;
 
+import android.graphics.Paint;
+import android.opengl.Matrix;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.inject.Inject;
 import com.rogue.bauble.graphics.MVP;
+import com.rogue.bauble.graphics.SpriteBatch;
+import com.rogue.bauble.graphics.textures.Texture;
+import com.rogue.bauble.misc.Constants;
 
 /**
  * Glyph string implemented using a glyph map.
  * 
+ * Setting the text only lays out the glyphs of the shared GlyphMap, applying
+ * their advances and kerning, and each render submits one quad per visible
+ * glyph to the SpriteBatch, tinted by the string's color. Strings drawn from
+ * the same atlas page share a draw call, and no texture is created per string.
+ * The alignment anchors the left edge, center, or right edge of the text at
+ * the string's position. When the glyph map is in distance field mode, the
+ * glyphs stay sharp at any height.
+ * 
+ * Requires the application to bind the sprite shader's sources.
+ * 
  * @author R. Matt McCann
  */
 public class MappedGlyphString extends GlyphString {
+    /** Draws the glyph quads. */
+    private final SpriteBatch batch;
+    
+    /** Glyphs of the laid out text, of which the first numGlyphs are in use. */
+    private Glyph[] glyphs = new Glyph[0];
+    
+    /** Used to look up the glyphs of the text. */
+    private final GlyphMap glyphMap;
+    
+    /** Model-View-Projection matrix of the glyph being submitted. */
+    private final float[] glyphMatrix = new float[Constants.MATRIX_SIZE];
+    
+    /** Number of glyphs of the laid out text. */
+    private int numGlyphs = 0;
+    
+    /** Pen position of each glyph, in line heights from the text's left edge. */
+    private float[] penPositions = new float[0];
+    
+    /** Model-View-Projection matrix of the text, in line heights. */
+    private final float[] textMatrix = new float[Constants.MATRIX_SIZE];
+    
+    /** Width of the laid out text in line heights. */
+    private float width = 0.0f;
+    
+    /** Guice injectable constructor. */
+    @Inject
+    public MappedGlyphString(final SpriteBatch batch,
+                             final GlyphMap glyphMap) {
+        this.batch = checkNotNull(batch);
+        this.glyphMap = checkNotNull(glyphMap);
+    }
 
     /** {@inheritDocs} */
     @Override
-    public void delete() { } // Nothing to delete!
+    public void delete() { } // Nothing to delete, as the glyphs are shared!
 
+    /** {@inheritDocs} */
     @Override
-    public float getWidth() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public synchronized float getWidth() {
+        return getHeight() * width;
     }
-
+    
+    /** {@inheritDocs} */
     @Override
-    protected void updateRendering() {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public float measure(final CharSequence text, final int start, final int end) {
+        return glyphMap.measure(text, start, end);
     }
 
+    /** {@inheritDocs} */
     @Override
-    public void render(MVP mvp) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    protected synchronized void updateRendering() {
+        final String text = getText();
+        final int length = text.length();
+        
+        if (glyphs.length < length) { // If the text doesn't fit the layout arrays
+            glyphs = new Glyph[length];
+            penPositions = new float[length];
+        }
+        
+        // Lay the glyphs out along the baseline
+        float pen = 0.0f;
+        for (int iter = 0; iter < length; iter++) {
+            final char character = text.charAt(iter);
+            
+            if (iter > 0) {
+                pen += glyphMap.getKerning(text.charAt(iter - 1), character);
+            }
+            glyphs[iter] = glyphMap.getGlyph(character);
+            penPositions[iter] = pen;
+            pen += glyphs[iter].getAdvance();
+        }
+        
+        numGlyphs = length;
+        width = pen;
     }
 
+    /** {@inheritDocs} */
+    @Override
+    public synchronized void render(MVP mvp) {
+        if (numGlyphs == 0) {
+            return;
+        }
+        
+        // Rasterize any glyphs new to the map
+        glyphMap.loadPending();
+        
+        // Transform into text space, one unit per line height
+        final float[] arena = mvp.getArena();
+        final int mvpSpace = mvp.collapseLocal();
+        Matrix.translateM(arena, mvpSpace, (float) getPosition().getX(), (float) getPosition().getY(), 0.0f);
+        Matrix.scaleM(arena, mvpSpace, getHeight(), getHeight(), 1.0f);
+        System.arraycopy(arena, mvpSpace, textMatrix, Constants.NO_OFFSET, Constants.MATRIX_SIZE);
+        
+        final float left;
+        if (getAlignment() == Paint.Align.LEFT) {
+            left = 0.0f;
+        } else if (getAlignment() == Paint.Align.CENTER) {
+            left = -width / 2.0f;
+        } else { // getAlignment() == Paint.Align.RIGHT
+            left = -width;
+        }
+        final float baseline = glyphMap.getBaseline();
+        final boolean isDistanceField = glyphMap.isDistanceField();
+        
+        for (int iter = 0; iter < numGlyphs; iter++) { // Submit a quad per visible glyph
+            final Glyph glyph = glyphs[iter];
+            if (!glyph.isVisible() || !glyph.isLoaded()) { // If there's no image to draw yet
+                continue;
+            }
+            
+            System.arraycopy(textMatrix, Constants.NO_OFFSET, glyphMatrix, Constants.NO_OFFSET,
+                    Constants.MATRIX_SIZE);
+            Matrix.translateM(glyphMatrix, Constants.NO_OFFSET,
+                    left + penPositions[iter] + glyph.getLeft() + glyph.getWidth() / 2.0f,
+                    baseline + glyph.getBottom() + glyph.getHeight() / 2.0f, 0.0f);
+            Matrix.scaleM(glyphMatrix, Constants.NO_OFFSET, glyph.getWidth(), glyph.getHeight(), 1.0f);
+            
+            final Texture texture = glyph.getTexture();
+            if (isDistanceField) {
+                batch.submitDistanceField(glyphMatrix, Constants.NO_OFFSET, texture.getHandle(),
+                        texture.getU0(), texture.getV0(), texture.getU1(), texture.getV1(),
+                        getColor(), getOpacity());
+            } else {
+                batch.submit(glyphMatrix, Constants.NO_OFFSET, texture.getHandle(), texture.getU0(),
+                        texture.getV0(), texture.getU1(), texture.getV1(), getColor(), getOpacity());
+            }
+        }
+    }
 }
@@ -7,6 +7,12 @@ import java.util.List;
 /**
  * Contains the frames and rendering logic for animations.
  * 
+ * Frames are usually packed into a TextureAtlas, as BaseModule does for every
+ * animation it loads, so a frame must be drawn through its Texture, which
+ * carries its region of the atlas page, rather than through its handle alone:
+ * drawing getHandle() with SimpleTexturedShader.setTexture(int) draws the
+ * whole page.
+ * 
  * @author R. Matt McCann
  */
 public class Animation {
@@ -0,0 +1,192 @@
+package com.rogue.bauble.graphics.textures;
+
+import android.graphics.Bitmap;
+import android.graphics.Paint;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.rogue.bauble.ProxyView;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders text into alpha-only textures off the GL thread. The Canvas work
+ * runs on a background thread, and only the upload of the finished bitmap is
+ * queued onto the GL thread, through the TextureFactory's text cache. As the
+ * textures are colored when drawn, changing the color of text never needs a
+ * request.
+ * 
+ * Each user of the rasterizer owns a Slot. Requests made while a slot's last
+ * request is still waiting to be rasterized replace it, so rapid changes of
+ * the text only rasterize the latest value, and results superseded by the
+ * time they reach the GL thread are dropped. The slot's target keeps its old
+ * texture until swapTexture() hands it the new one.
+ * 
+ * @author R. Matt McCann
+ */
+@Singleton
+public class TextRasterizer {
+    /** Runs the rasterization. */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("TextRasterizer").build());
+    
+    /** Used to rasterize and share the text textures. */
+    private final TextureFactory textureFactory;
+    
+    /** Used to upload the rasterized text on the GL thread. */
+    private final ProxyView view;
+    
+    /** Guice injectable constructor. */
+    @Inject
+    public TextRasterizer(final TextureFactory textureFactory,
+                          final ProxyView view) {
+        this.textureFactory = checkNotNull(textureFactory);
+        this.view = checkNotNull(view);
+    }
+    
+    /**
+     * Drops the slot's pending requests, so its target is handed no more
+     * textures. Requests made afterwards are dropped too.
+     * 
+     * @param slot Must not be null.
+     */
+    public void cancel(final Slot slot) {
+        synchronized (slot) {
+            slot.isCancelled = true;
+            slot.pending = null;
+        }
+    }
+    
+    /**
+     * Rasterizes the text in the background and hands its texture to the
+     * slot's target on the GL thread, unless a newer request for the slot
+     * supersedes it first.
+     * 
+     * @param slot Must not be null.
+     * @param text The string to texturize. Must not be null.
+     * @param align Alignment of the text within the texture. Must not be null.
+     * @param fontSize Desired font size.
+     */
+    public void request(final Slot slot, final String text, final Paint.Align align, final float fontSize) {
+        final Request request = new Request(checkNotNull(text), checkNotNull(align), fontSize);
+        
+        synchronized (slot) {
+            if (slot.isCancelled) {
+                return;
+            }
+            
+            final boolean isQueued = (slot.pending != null);
+            request.number = ++slot.numRequests;
+            slot.pending = request;
+            if (isQueued) { // If the queued rasterization will pick up this request instead
+                return;
+            }
+        }
+        
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                rasterize(slot);
+            }
+        });
+    }
+    
+    /** Rasterizes the slot's latest request and queues its upload. Runs on the rasterizer thread. */
+    private void rasterize(final Slot slot) {
+        final Request request;
+        synchronized (slot) {
+            request = slot.pending;
+            slot.pending = null;
+        }
+        if (request == null) { // If the slot was cancelled
+            return;
+        }
+        
+        // Skip the Canvas work if the text is already cached
+        final TextTextureCache textCache = textureFactory.getTextCache();
+        final Bitmap image = textCache.contains(request.text, request.align, request.fontSize) ?
+                null : textureFactory.rasterizeAlphaText(request.text, request.align, request.fontSize);
+        
+        view.queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                upload(slot, request, image);
+            }
+        });
+    }
+    
+    /** Hands the rasterized request to the slot's target, unless superseded. Runs on the GL thread. */
+    private void upload(final Slot slot, final Request request, final Bitmap image) {
+        synchronized (slot) {
+            if (slot.isCancelled || (slot.pending != null) || (request.number <= slot.shownRequest)) {
+                if (image != null) {
+                    image.recycle();
+                }
+                return;
+            }
+            slot.shownRequest = request.number;
+        }
+        
+        final float[] aspectRatio = new float[1];
+        final int handle = textureFactory.getTextCache().acquire(request.text, request.align,
+                request.fontSize, image, aspectRatio);
+        slot.target.swapTexture(handle, aspectRatio[0]);
+    }
+    
+    /** Receives the textures of a slot's requests. */
+    public interface Target {
+        /**
+         * Replaces the target's texture. Called on the GL thread.
+         * 
+         * @param handle Handle of the new texture, acquired from the text cache on
+         *               the target's behalf and to be released by it.
+         * @param aspectRatio Width-by-height aspect ratio of the new texture.
+         */
+        void swapTexture(int handle, float aspectRatio);
+    }
+    
+    /** Tracks the requests of a single target, such as a glyph string. */
+    public static final class Slot {
+        /** Whether or not the slot's requests are dropped. */
+        private boolean isCancelled = false;
+        
+        /** Number of requests made of the slot. */
+        private int numRequests = 0;
+        
+        /** Latest request not yet picked up for rasterization, null if none. */
+        private Request pending = null;
+        
+        /** Number of the request last handed to the target. */
+        private int shownRequest = 0;
+        
+        /** Receives the textures. */
+        private final Target target;
+        
+        /** @param target Must not be null. */
+        public Slot(final Target target) {
+            this.target = checkNotNull(target);
+        }
+    }
+    
+    /** Text to be rasterized. */
+    private static final class Request {
+        /** Alignment of the text within the texture. */
+        private final Paint.Align align;
+        
+        /** Desired font size. */
+        private final float fontSize;
+        
+        /** Order of the request within its slot. */
+        private int number;
+        
+        /** The string to texturize. */
+        private final String text;
+        
+        Request(final String text, final Paint.Align align, final float fontSize) {
+            this.align = align;
+            this.fontSize = fontSize;
+            this.text = text;
+        }
+    }
+}
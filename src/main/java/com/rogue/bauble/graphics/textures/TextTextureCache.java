@@ -0,0 +1,289 @@
+package com.rogue.bauble.graphics.textures;
+
+import android.graphics.Bitmap;
+import android.graphics.Paint;
+import static com.google.common.base.Preconditions.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shares the textures of rendered text between everything showing the same
+ * text, such as repeated "OK" buttons or slider values that cycle back.
+ * Textures are alpha-only, see TextureFactory.rasterizeAlphaText(), and
+ * colored when drawn, so they are keyed by their text, alignment, and font
+ * size alone, and a hit skips rasterizing and uploading the text entirely.
+ * Text of every color shares the same texture.
+ * 
+ * Each acquire() must be matched by a release() once the texture is no
+ * longer drawn. Released textures are kept for reuse, and the least recently
+ * released are deleted once they exceed the byte budget.
+ * 
+ * Textures are created, released, and deleted on the GL thread, while
+ * contains() may be asked and the budget set from any thread, such as by the
+ * TextRasterizer. Only release() deletes textures.
+ * 
+ * @author R. Matt McCann
+ */
+public class TextTextureCache {
+    /** Default size of the unreferenced textures kept for reuse in bytes. */
+    public static final long DEFAULT_BUDGET = 2 * 1024 * 1024;
+    
+    /** Bytes per texel of the alpha-only text textures. */
+    private static final int BYTES_PER_TEXEL = 1;
+    
+    /** Size of the unreferenced textures kept for reuse in bytes. */
+    private long budget = DEFAULT_BUDGET;
+    
+    /** Cached textures, by key, from least to most recently released. */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
+    
+    /** Cached textures, by handle. */
+    private final Map<Integer, Entry> entriesByHandle = new HashMap<Integer, Entry>();
+    
+    /** Number of acquires served without rendering the text. */
+    private int numHits = 0;
+    
+    /** Number of acquires that rendered the text. */
+    private int numMisses = 0;
+    
+    /** Used to render and delete the textures. */
+    private final TextureFactory textureFactory;
+    
+    /** Size of the unreferenced textures in bytes. */
+    private long unreferencedBytes = 0;
+    
+    /** @param textureFactory Must not be null. */
+    public TextTextureCache(final TextureFactory textureFactory) {
+        this.textureFactory = checkNotNull(textureFactory);
+    }
+    
+    /**
+     * Returns an alpha-only texture of the text, rendering it only if no
+     * texture of the same text is cached.
+     * 
+     * @param text The string to texturize. Must not be null.
+     * @param align Alignment of the text within the texture. Must not be null.
+     * @param fontSize Desired font size.
+     * @param aspectRatio Receives the width-by-height aspect ratio of the texture. Must be of length 1.
+     * @return Handle of the texture. Must be released with release().
+     */
+    public int acquire(final String text, final Paint.Align align,
+                       final float fontSize, final float[] aspectRatio) {
+        return acquire(text, align, fontSize, null, aspectRatio);
+    }
+    
+    /**
+     * Returns an alpha-only texture of the text, loading the image of the
+     * text rendered ahead of time if no texture of the same text is cached,
+     * or rendering it if no image was given.
+     * 
+     * @param text The string to texturize. Must not be null.
+     * @param align Alignment of the text within the texture. Must not be null.
+     * @param fontSize Desired font size.
+     * @param image Text rendered by TextureFactory.rasterizeAlphaText(), recycled by the cache. May be null.
+     * @param aspectRatio Receives the width-by-height aspect ratio of the texture. Must be of length 1.
+     * @return Handle of the texture. Must be released with release().
+     */
+    public synchronized int acquire(final String text, final Paint.Align align, final float fontSize,
+                                    final Bitmap image, final float[] aspectRatio) {
+        checkArgument(aspectRatio.length == 1, "AspectRatio length must be 1, got %s", aspectRatio.length);
+        
+        final Key key = new Key(checkNotNull(text), checkNotNull(align), fontSize);
+        Entry entry = entries.get(key);
+        
+        if (entry == null) { // If the text hasn't been rendered yet
+            entry = load(key, image);
+            entries.put(key, entry);
+            entriesByHandle.put(entry.handle, entry);
+            numMisses++;
+        } else {
+            if (entry.refCount == 0) { // If the texture was kept for reuse
+                unreferencedBytes -= entry.numBytes;
+            }
+            numHits++;
+        }
+        entry.refCount++;
+        aspectRatio[0] = entry.aspectRatio;
+        
+        if (image != null) {
+            image.recycle();
+        }
+        
+        return entry.handle;
+    }
+    
+    /**
+     * @param text The string to texturize. Must not be null.
+     * @param align Alignment of the text within the texture. Must not be null.
+     * @param fontSize Desired font size.
+     * @return Whether or not a texture of the text is cached, at the moment of asking.
+     */
+    public synchronized boolean contains(final String text, final Paint.Align align, final float fontSize) {
+        return entries.containsKey(new Key(checkNotNull(text), checkNotNull(align), fontSize));
+    }
+    
+    /** @return Size of the unreferenced textures kept for reuse in bytes. */
+    public synchronized long getBudget() { return budget; }
+    
+    /** @return Number of acquires served without rendering the text. */
+    public synchronized int getNumHits() { return numHits; }
+    
+    /** @return Number of acquires that rendered the text. */
+    public synchronized int getNumMisses() { return numMisses; }
+    
+    /** @return Number of textures held by the cache. */
+    public synchronized int getNumTextures() { return entries.size(); }
+    
+    /**
+     * Loads the texture of the text, from the image rendered ahead of time if
+     * one is given, or by rendering the text otherwise. Must be called from
+     * the GL thread.
+     * 
+     * @param key Text of the texture.
+     * @param image Text rendered by TextureFactory.rasterizeAlphaText(), left for the caller
+     *              to recycle. May be null.
+     * @return Entry of the new texture, not yet acquired.
+     */
+    Entry load(final Key key, final Bitmap image) {
+        final Bitmap myImage = (image != null) ? image :
+                textureFactory.rasterizeAlphaText(key.text, key.align, key.fontSize);
+        final int handle = textureFactory.loadTexture(myImage);
+        
+        final Entry entry = new Entry(key, handle, (float) myImage.getWidth() / myImage.getHeight(),
+                (long) myImage.getWidth() * myImage.getHeight() * BYTES_PER_TEXEL);
+        if (image == null) {
+            myImage.recycle();
+        }
+        
+        return entry;
+    }
+    
+    /**
+     * Deletes a texture dropped from the cache. Must be called from the GL thread.
+     * 
+     * @param handle Handle of the texture.
+     */
+    void delete(final int handle) {
+        textureFactory.deleteTextures(handle);
+    }
+    
+    /**
+     * Releases a texture returned by acquire(). Once it has no users, it is
+     * kept for reuse within the byte budget, deleting the least recently
+     * released textures that no longer fit. Textures unknown to the cache are
+     * ignored. Must be called from the GL thread.
+     * 
+     * @param handle Handle of the texture.
+     */
+    public synchronized void release(final int handle) {
+        final Entry entry = entriesByHandle.get(handle);
+        if (entry == null) {
+            return;
+        }
+        
+        entry.refCount--;
+        if (entry.refCount == 0) { // If this was the last user of the texture
+            // Move the entry to the most recently released end
+            entries.remove(entry.key);
+            entries.put(entry.key, entry);
+            unreferencedBytes += entry.numBytes;
+        }
+        trim(); // Also applies a budget lowered since the last release
+    }
+    
+    /**
+     * Sets the byte budget. As textures may only be deleted on the GL thread,
+     * textures beyond a lowered budget are deleted by the next release().
+     * 
+     * @param budget Size of the unreferenced textures kept for reuse in bytes.
+     *               Must be >= 0, 0 deleting textures as soon as they are released.
+     */
+    public synchronized void setBudget(final long budget) {
+        checkArgument(budget >= 0, "Budget must be >= 0, got %s", budget);
+        
+        this.budget = budget;
+    }
+    
+    /** Deletes the least recently released textures until the unreferenced ones fit the budget. */
+    private void trim() {
+        final Iterator<Entry> iter = entries.values().iterator();
+        while ((unreferencedBytes > budget) && iter.hasNext()) {
+            final Entry entry = iter.next();
+            
+            if (entry.refCount == 0) {
+                iter.remove();
+                entriesByHandle.remove(entry.handle);
+                unreferencedBytes -= entry.numBytes;
+                delete(entry.handle);
+            }
+        }
+    }
+    
+    /** A cached texture and the number of users holding it. */
+    static final class Entry {
+        /** Width-by-height aspect ratio of the texture. */
+        private final float aspectRatio;
+        
+        /** OpenGL reference to the texture. */
+        private final int handle;
+        
+        /** Text rendered into the texture. */
+        private final Key key;
+        
+        /** Size of the texture in bytes. */
+        private final long numBytes;
+        
+        /** Number of acquires not yet released. */
+        private int refCount = 0;
+        
+        Entry(final Key key, final int handle, final float aspectRatio, final long numBytes) {
+            this.aspectRatio = aspectRatio;
+            this.handle = handle;
+            this.key = key;
+            this.numBytes = numBytes;
+        }
+    }
+    
+    /** Text, alignment, and font size of a texture. */
+    static final class Key {
+        /** Alignment of the text within the texture. */
+        private final Paint.Align align;
+        
+        /** Font size of the text. */
+        private final float fontSize;
+        
+        /** Hash of the key's fields. */
+        private final int hash;
+        
+        /** The rendered text. */
+        private final String text;
+        
+        Key(final String text, final Paint.Align align, final float fontSize) {
+            this.align = align;
+            this.fontSize = fontSize;
+            this.text = text;
+            
+            int myHash = text.hashCode();
+            myHash = 31 * myHash + align.hashCode();
+            this.hash = 31 * myHash + Float.floatToIntBits(fontSize);
+        }
+        
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            
+            final Key key = (Key) other;
+            return (hash == key.hash) && text.equals(key.text) && (align == key.align) &&
+                    (fontSize == key.fontSize);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -5,6 +5,13 @@ import static com.google.common.base.Preconditions.checkArgument;
 /**
  * Contains the texture reference as well as some additional meta-data.
  * 
+ * A texture may be a sub-rectangle of a larger texture, such as a page of a
+ * TextureAtlas, in which case the handle is that of the page and the texture
+ * coordinates locate the image within it. BaseModule packs every named
+ * texture and animation frame into atlas pages, so such textures must be
+ * drawn through SimpleTexturedShader.setTexture(Texture), which also sets
+ * their region.
+ * 
  * @author R. Matt McCann
  */
 public class Texture {
@@ -17,6 +24,18 @@ public class Texture {
     /** Raw image reference. */
     private final int rawImage;
     
+    /** Texture coordinate of the image's left edge. */
+    private float u0 = 0.0f;
+    
+    /** Texture coordinate of the image's right edge. */
+    private float u1 = 1.0f;
+    
+    /** Texture coordinate of the image's top edge. */
+    private float v0 = 0.0f;
+    
+    /** Texture coordinate of the image's bottom edge. */
+    private float v1 = 1.0f;
+    
     /** @param rawImage Resource id of the texture image. */
     public Texture(int rawImage) {
         this.rawImage = rawImage;
@@ -35,14 +54,53 @@ public class Texture {
     
     public float getAspectRatio() { return aspectRatio; }
     
+    /**
+     * Returns the handle of the texture holding the image. For textures packed
+     * into an atlas, such as every named texture of BaseModule, this is the
+     * whole atlas page: drawing it with SimpleTexturedShader.setTexture(int)
+     * draws the whole page rather than the image. Use setTexture(Texture), or
+     * pass the texture coordinates along with the handle.
+     * 
+     * @return OpenGL engine reference of the texture holding the image.
+     */
     public int getHandle() { return handle; }
     
     public int getRawImage() { return rawImage; }
     
+    public float getU0() { return u0; }
+    
+    public float getU1() { return u1; }
+    
+    public float getV0() { return v0; }
+    
+    public float getV1() { return v1; }
+    
+    /** @return Whether or not the image covers the whole of its texture. */
+    public boolean isWholeTexture() {
+        return (u0 == 0.0f) && (v0 == 0.0f) && (u1 == 1.0f) && (v1 == 1.0f);
+    }
+    
     /** @param handle Must be OpenGL engine reference. Must be > 0. */
     public void setHandle(int handle) {
+        setRegion(handle, 0.0f, 0.0f, 1.0f, 1.0f);
+    }
+    
+    /**
+     * Locates the image within a larger texture.
+     * 
+     * @param handle OpenGL engine reference of the larger texture. Must be > 0.
+     * @param u0 Texture coordinate of the image's left edge.
+     * @param v0 Texture coordinate of the image's top edge.
+     * @param u1 Texture coordinate of the image's right edge.
+     * @param v1 Texture coordinate of the image's bottom edge.
+     */
+    public void setRegion(int handle, float u0, float v0, float u1, float v1) {
         checkArgument(handle > 0, "Handle must be > 0, got %s", handle);
         
         this.handle = handle;
+        this.u0 = u0;
+        this.v0 = v0;
+        this.u1 = u1;
+        this.v1 = v1;
     }
 }
@@ -0,0 +1,315 @@
+package com.rogue.bauble.graphics.textures;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import static com.google.common.base.Preconditions.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs images into as few atlas pages as possible, so that textures drawn
+ * together share a texture and can be batched. Images are placed with a
+ * skyline bottom-left packer, tallest first, and each is surrounded by a
+ * border of its own edge pixels so linear filtering never samples a
+ * neighbouring image. Pages are trimmed to the power of two height they use.
+ * 
+ * Images too large for a page are loaded as textures of their own.
+ * 
+ * @author R. Matt McCann
+ */
+public class TextureAtlas {
+    /** Default width and maximum height of the atlas pages in pixels. */
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+    
+    /** Pixels of extruded border around each image. */
+    private static final int PADDING = 1;
+    
+    /** Images waiting to be packed. */
+    private final List<Entry> entries = new ArrayList<Entry>();
+    
+    /** Width and maximum height of the atlas pages in pixels. */
+    private final int pageSize;
+    
+    /** Used to load the pages into the graphics engine. */
+    private final TextureFactory textureFactory;
+    
+    /** @param textureFactory Must not be null. */
+    public TextureAtlas(final TextureFactory textureFactory) {
+        this(textureFactory, DEFAULT_PAGE_SIZE);
+    }
+    
+    /**
+     * @param textureFactory Must not be null.
+     * @param pageSize Width and maximum height of the atlas pages in pixels. Must be > 0.
+     */
+    public TextureAtlas(final TextureFactory textureFactory, final int pageSize) {
+        checkArgument(pageSize > 0, "PageSize must be > 0, got %s", pageSize);
+        
+        this.pageSize = pageSize;
+        this.textureFactory = checkNotNull(textureFactory);
+    }
+    
+    /**
+     * Adds an image to be packed by build().
+     * 
+     * @param texture Texture to locate in the atlas. Must not be null.
+     * @param image Image of the texture, recycled by build(). Must not be null.
+     */
+    public void add(final Texture texture, final Bitmap image) {
+        entries.add(new Entry(checkNotNull(texture), checkNotNull(image)));
+    }
+    
+    /**
+     * Packs the added images into pages, loads the pages into the graphics
+     * engine, and locates each texture within its page. Must be called from
+     * the GL thread.
+     * 
+     * @return Handles of the loaded textures, pages and images too large for a page alike.
+     */
+    public List<Integer> build() {
+        final List<Integer> handles = new ArrayList<Integer>();
+        
+        // Place the tallest images first, which packs a skyline tightest
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(final Entry lhs, final Entry rhs) {
+                return rhs.image.getHeight() - lhs.image.getHeight();
+            }
+        });
+        
+        final List<Entry> page = new ArrayList<Entry>();
+        final Skyline skyline = new Skyline(pageSize);
+        for (Entry entry : entries) {
+            final int width = entry.image.getWidth() + 2 * PADDING;
+            final int height = entry.image.getHeight() + 2 * PADDING;
+            
+            if ((width > pageSize) || (height > pageSize)) { // If the image can't fit on a page
+                final int handle = textureFactory.loadTexture(entry.image);
+                entry.texture.setHandle(handle);
+                entry.image.recycle();
+                handles.add(handle);
+                continue;
+            }
+            
+            if (!skyline.place(entry, width, height)) { // If the page is full
+                handles.add(buildPage(page, skyline.getUsedHeight()));
+                page.clear();
+                skyline.reset();
+                skyline.place(entry, width, height);
+            }
+            page.add(entry);
+        }
+        if (!page.isEmpty()) {
+            handles.add(buildPage(page, skyline.getUsedHeight()));
+        }
+        
+        entries.clear();
+        return handles;
+    }
+    
+    /**
+     * Draws the placed images into a page, loads it, and locates the textures
+     * within it.
+     * 
+     * @param page Placed images. Must not be empty.
+     * @param usedHeight Height of the page used by the images.
+     * @return Handle of the page.
+     */
+    private int buildPage(final List<Entry> page, final int usedHeight) {
+        int pageHeight = 1;
+        while (pageHeight < usedHeight) {
+            pageHeight <<= 1;
+        }
+        
+        final Bitmap pageImage = Bitmap.createBitmap(pageSize, pageHeight, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(pageImage);
+        final Rect source = new Rect();
+        final Rect destination = new Rect();
+        pageImage.eraseColor(0);
+        
+        for (Entry entry : page) {
+            final Bitmap image = entry.image;
+            final int left = entry.x + PADDING;
+            final int top = entry.y + PADDING;
+            final int right = left + image.getWidth();
+            final int bottom = top + image.getHeight();
+            
+            canvas.drawBitmap(image, left, top, null);
+            
+            // Extrude the edges into the padding
+            source.set(0, 0, 1, image.getHeight());
+            destination.set(left - PADDING, top, left, bottom);
+            canvas.drawBitmap(image, source, destination, null);
+            source.set(image.getWidth() - 1, 0, image.getWidth(), image.getHeight());
+            destination.set(right, top, right + PADDING, bottom);
+            canvas.drawBitmap(image, source, destination, null);
+            source.set(0, 0, image.getWidth(), 1);
+            destination.set(left, top - PADDING, right, top);
+            canvas.drawBitmap(image, source, destination, null);
+            source.set(0, image.getHeight() - 1, image.getWidth(), image.getHeight());
+            destination.set(left, bottom, right, bottom + PADDING);
+            canvas.drawBitmap(image, source, destination, null);
+            
+            image.recycle();
+        }
+        
+        final int handle = textureFactory.loadTexture(pageImage);
+        pageImage.recycle();
+        
+        for (Entry entry : page) {
+            final Texture texture = entry.texture;
+            final float left = entry.x + PADDING;
+            final float top = entry.y + PADDING;
+            
+            texture.setRegion(handle, left / pageSize, top / pageHeight,
+                    (left + entry.width) / pageSize, (top + entry.height) / pageHeight);
+        }
+        
+        return handle;
+    }
+    
+    /** An image and where it was placed. */
+    private static final class Entry {
+        /** Height of the image, kept as the image is recycled once drawn. */
+        private final int height;
+        
+        /** Image of the texture. */
+        private final Bitmap image;
+        
+        /** Texture to locate in the atlas. */
+        private final Texture texture;
+        
+        /** Width of the image, kept as the image is recycled once drawn. */
+        private final int width;
+        
+        /** Left edge of the padded image within its page. */
+        private int x;
+        
+        /** Top edge of the padded image within its page. */
+        private int y;
+        
+        Entry(final Texture texture, final Bitmap image) {
+            this.height = image.getHeight();
+            this.image = image;
+            this.texture = texture;
+            this.width = image.getWidth();
+        }
+    }
+    
+    /**
+     * Tracks the top edge of the placed images across a page as a list of
+     * horizontal segments, placing each image as low as it fits.
+     */
+    private static final class Skyline {
+        /** Width and maximum height of the page. */
+        private final int pageSize;
+        
+        /** Segments of the skyline, left to right, as {x, y, width}. */
+        private final List<int[]> segments = new ArrayList<int[]>();
+        
+        /** Height of the page used by the placed images. */
+        private int usedHeight;
+        
+        Skyline(final int pageSize) {
+            this.pageSize = pageSize;
+            reset();
+        }
+        
+        /**
+         * Returns the top edge an image placed at a segment would have.
+         * 
+         * @return Top edge, or -1 if the image doesn't fit there.
+         */
+        private int fit(final int segment, final int width, final int height) {
+            final int x = segments.get(segment)[0];
+            if (x + width > pageSize) {
+                return -1;
+            }
+            
+            int y = 0;
+            int widthLeft = width;
+            for (int iter = segment; widthLeft > 0; iter++) {
+                final int[] current = segments.get(iter);
+                
+                y = Math.max(y, current[1]);
+                if (y + height > pageSize) {
+                    return -1;
+                }
+                widthLeft -= current[2];
+            }
+            
+            return y;
+        }
+        
+        int getUsedHeight() { return usedHeight; }
+        
+        /**
+         * Places an image as low on the page as it fits.
+         * 
+         * @return Whether or not the image fit.
+         */
+        boolean place(final Entry entry, final int width, final int height) {
+            int bestSegment = -1;
+            int bestY = Integer.MAX_VALUE;
+            for (int segment = 0; segment < segments.size(); segment++) {
+                final int y = fit(segment, width, height);
+                
+                if ((y != -1) && (y < bestY)) {
+                    bestSegment = segment;
+                    bestY = y;
+                }
+            }
+            if (bestSegment == -1) {
+                return false;
+            }
+            
+            entry.x = segments.get(bestSegment)[0];
+            entry.y = bestY;
+            usedHeight = Math.max(usedHeight, bestY + height);
+            
+            // Raise the skyline under the image
+            segments.add(bestSegment, new int[] {entry.x, bestY + height, width});
+            final int right = entry.x + width;
+            while (bestSegment + 1 < segments.size()) {
+                final int[] next = segments.get(bestSegment + 1);
+                
+                if (next[0] >= right) { // If the segment is past the image
+                    break;
+                }
+                
+                final int overlap = right - next[0];
+                if (overlap < next[2]) { // If the image covers only part of the segment
+                    next[0] += overlap;
+                    next[2] -= overlap;
+                    break;
+                }
+                segments.remove(bestSegment + 1);
+            }
+            
+            // Merge neighbouring segments of the same height
+            for (int segment = 0; segment + 1 < segments.size(); ) {
+                final int[] current = segments.get(segment);
+                final int[] next = segments.get(segment + 1);
+                
+                if (current[1] == next[1]) {
+                    current[2] += next[2];
+                    segments.remove(segment + 1);
+                } else {
+                    segment++;
+                }
+            }
+            
+            return true;
+        }
+        
+        /** Clears the page. */
+        final void reset() {
+            segments.clear();
+            segments.add(new int[] {0, 0, pageSize});
+            usedHeight = 0;
+        }
+    }
+}
@@ -10,9 +10,11 @@ import android.graphics.Typeface;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.inject.Inject;
 import com.rogue.bauble.graphics.Color;
 import com.rogue.bauble.graphics.DrawMath;
+import com.rogue.bauble.graphics.shaders.ShaderRegistry;
 import com.rogue.unipoint.FloatPoint2D;
 
 /**
@@ -21,27 +23,67 @@ import com.rogue.unipoint.FloatPoint2D;
  * @author R. Matt McCann
  */
 public final class TextureFactory {
+    /** Minimum width of alpha-only text bitmaps, keeping their rows 4-byte aligned for upload. */
+    private static final int MIN_ALPHA_TEXT_WIDTH = 4;
+    
     /** Application context. */
     private final Context context;
     
+    /** Tracks texture bindings, which loading and deleting textures changes. */
+    private final ShaderRegistry registry;
+    
+    /** Shares the textures of identical text. */
+    private final TextTextureCache textCache;
+    
     /** Guice injection constructor. */
     @Inject
-    public TextureFactory(final Context context) {
+    public TextureFactory(final Context context,
+                          final ShaderRegistry registry) {
         this.context = context;
+        this.registry = checkNotNull(registry);
+        this.textCache = new TextTextureCache(this);
     }
     
     /**
-     * Loads a texture into the graphics engine for later use.
-     * @param resourceID The android resource ID of the texture to be loaded.
-     * @return Handle referencing the texture in OpenGL
+     * Deletes textures from the graphics engine. Must be called from the GL thread.
+     * 
+     * @param textureHandles Handles of the textures to delete.
      */
-    public int loadTexture(final int resourceID) {
+    public void deleteTextures(final int... textureHandles) {
+        registry.deleteTextures(textureHandles);
+    }
+    
+    /**
+     * Decodes an image resource at its native size.
+     * 
+     * @param resourceID The android resource ID of the image.
+     * @return The decoded image, which the caller must recycle.
+     */
+    public Bitmap decodeResource(final int resourceID) {
         // Disable the default android image pre-scaling
         final BitmapFactory.Options options = new BitmapFactory.Options();
         options.inScaled = false;
         
         // Load the image from the file system
-        Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), resourceID, options);
+        return BitmapFactory.decodeResource(context.getResources(), resourceID, options);
+    }
+    
+    /**
+     * Returns the cache sharing the textures of identical text, which
+     * strings showing text should acquire their textures from rather than
+     * calling texturizeText() themselves.
+     * 
+     * @return The text texture cache.
+     */
+    public TextTextureCache getTextCache() { return textCache; }
+    
+    /**
+     * Loads a texture into the graphics engine for later use.
+     * @param resourceID The android resource ID of the texture to be loaded.
+     * @return Handle referencing the texture in OpenGL
+     */
+    public int loadTexture(final int resourceID) {
+        Bitmap bitmap = decodeResource(resourceID);
 
         // Load the texture
         int textureHandle = loadTexture(bitmap);
@@ -65,7 +107,7 @@ public final class TextureFactory {
 
         if (textureHandle[0] > 0) {
             // Set the texture handle as active
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
+            registry.bindTexture(0, textureHandle[0]);
             
             // Set the filtering options
             GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
@@ -80,6 +122,19 @@ public final class TextureFactory {
         return textureHandle[0];
     }
     
+    /**
+     * Sets the filtering of a loaded texture. Must be called from the GL thread.
+     * 
+     * @param textureHandle Handle of the texture.
+     * @param minFilter Minification filter, such as GL_LINEAR.
+     * @param magFilter Magnification filter, such as GL_LINEAR.
+     */
+    public void setFiltering(final int textureHandle, final int minFilter, final int magFilter) {
+        registry.bindTexture(0, textureHandle);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, minFilter);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, magFilter);
+    }
+    
     public int texturizeText(final String text,
                              final Color color,
                              final Paint.Align align,
@@ -116,22 +171,116 @@ public final class TextureFactory {
                              final Paint.Align align,
                              final float fontSize, 
                              FloatPoint2D textSize) {
-        // Set up the attributes of the text
+        Bitmap bitmap = rasterizeText(text, color, align, fontSize);
+        textSize.setX(bitmap.getWidth());
+        textSize.setY(bitmap.getHeight());
+        
+        // Load the texture into the graphics engine
+        int resultTextureHandle = loadTexture(bitmap);
+        
+        // Clean up
+        bitmap.recycle();
+        
+        return resultTextureHandle;
+    }
+    
+    /**
+     * Draws the given text into a new bitmap of power of two dimensions,
+     * without touching the graphics engine, so it may be called from any
+     * thread.
+     * 
+     * @param text The string to rasterize.
+     * @param color The font color.
+     * @param align Alignment of the text within the bitmap.
+     * @param fontSize Desired font size.
+     * @return The bitmap, which the caller must recycle.
+     */
+    public Bitmap rasterizeText(final String text,
+                                final Color color,
+                                final Paint.Align align,
+                                final float fontSize) {
+        Paint textPaint = createTextPaint(align, fontSize);
+        textPaint.setARGB((int) color.getAlpha() * 255, (int) color.getRed() * 255, 
+                          (int) color.getGreen() * 255, (int) color.getBlue() * 255);
+        
+        return rasterizeText(text, textPaint, align, fontSize, Bitmap.Config.ARGB_4444, 0);
+    }
+    
+    /**
+     * Draws the coverage of the given text into a new alpha-only bitmap of
+     * power of two dimensions, loaded as a GL_ALPHA texture by loadTexture().
+     * The text takes its color from the shader, see
+     * SimpleTexturedShader.setTint(), so it never needs to be drawn again to
+     * change color, and it takes half the memory of rasterizeText(). Doesn't
+     * touch the graphics engine, so it may be called from any thread.
+     * 
+     * @param text The string to rasterize.
+     * @param align Alignment of the text within the bitmap.
+     * @param fontSize Desired font size.
+     * @return The bitmap, which the caller must recycle.
+     */
+    public Bitmap rasterizeAlphaText(final String text,
+                                     final Paint.Align align,
+                                     final float fontSize) {
+        Paint textPaint = createTextPaint(align, fontSize);
+        textPaint.setARGB(255, 255, 255, 255);
+        
+        return rasterizeText(text, textPaint, align, fontSize, Bitmap.Config.ALPHA_8, MIN_ALPHA_TEXT_WIDTH);
+    }
+    
+    /**
+     * Measures the bitmap rasterizeAlphaText() would draw the given text into,
+     * without drawing it. Doesn't touch the graphics engine, so it may be
+     * called from any thread.
+     * 
+     * @param text The string to measure.
+     * @param fontSize Desired font size.
+     * @return Width-by-height aspect ratio of the bitmap.
+     */
+    public float measureAlphaText(final String text, final float fontSize) {
+        Paint textPaint = createTextPaint(Paint.Align.CENTER, fontSize);
+        
+        return measureText(text, textPaint, MIN_ALPHA_TEXT_WIDTH) / DrawMath.findCeilingPowerOfTwo(fontSize);
+    }
+    
+    /** @return Paint set up with the attributes of the text, but not its color. */
+    private static Paint createTextPaint(final Paint.Align align, final float fontSize) {
         Paint textPaint = new Paint();
         textPaint.setTextSize(fontSize);
         textPaint.setAntiAlias(true);
         textPaint.setTypeface(Typeface.SANS_SERIF);
         textPaint.setFakeBoldText(true);
         textPaint.setTextAlign(align);
-        textPaint.setARGB((int) color.getAlpha() * 255, (int) color.getRed() * 255, 
-                          (int) color.getGreen() * 255, (int) color.getBlue() * 255);
         
+        return textPaint;
+    }
+    
+    /** @return Width of the power of two bitmap holding the text, in pixels. */
+    private static float measureText(final String text, final Paint textPaint, final int minWidth) {
+        return Math.max(minWidth, DrawMath.findCeilingPowerOfTwo(textPaint.measureText(text)));
+    }
+    
+    /**
+     * Draws the given text into a new bitmap of power of two dimensions.
+     * 
+     * @param text The string to rasterize.
+     * @param textPaint Paint set up with the attributes and color of the text.
+     * @param align Alignment of the text within the bitmap.
+     * @param fontSize Desired font size.
+     * @param config Pixel format of the bitmap.
+     * @param minWidth Minimum width of the bitmap in pixels.
+     * @return The bitmap, which the caller must recycle.
+     */
+    private static Bitmap rasterizeText(final String text,
+                                        final Paint textPaint,
+                                        final Paint.Align align,
+                                        final float fontSize,
+                                        final Bitmap.Config config,
+                                        final int minWidth) {
         // Create the bitmap onto which the text will be written
         float textHeight = DrawMath.findCeilingPowerOfTwo(fontSize);
-        float textWidth = DrawMath.findCeilingPowerOfTwo(textPaint.measureText(text));
-        textSize.setY(textHeight);
-        textSize.setX(textWidth);
-        Bitmap bitmap = Bitmap.createBitmap((int) textWidth, (int) textHeight, Bitmap.Config.ARGB_4444);
+        float textWidth = measureText(text, textPaint, minWidth);
+        Bitmap bitmap = Bitmap.createBitmap((int) textWidth, (int) textHeight, config);
         Canvas canvas = new Canvas(bitmap);
         bitmap.eraseColor(0);
 
@@ -146,13 +295,7 @@ public final class TextureFactory {
         } else { // align == Paint.Align.RIGHT
             canvas.drawText(text, textWidth, yPos, textPaint);
         }
-            
-        // Load the texture into the graphics engine
-        int resultTextureHandle = loadTexture(bitmap);
         
-        // Clean up
-        bitmap.recycle();
-        
-        return resultTextureHandle;
+        return bitmap;
     }
 }
\ No newline at end of file
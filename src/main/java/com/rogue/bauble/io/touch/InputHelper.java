@@ -1,21 +1,72 @@
 package com.rogue.bauble.io.touch;
 
+import com.rogue.bauble.graphics.Affine2D;
 import com.rogue.bauble.graphics.MVP;
 import com.rogue.unipoint.FloatPoint2D;
 
 public class InputHelper {
+    /**
+     * Hit tests the unit square of the top of the MVP's model-view stack using
+     * the stack's cached collapsed inverse. Supports rotated and mirrored objects.
+     * 
+     * @param mvp Must not be null.
+     * @param touchLocation Must not be null.
+     * @return Whether or not the unit square of the top model-view level is touched.
+     */
     public static boolean isTouched(final MVP mvp, final FloatPoint2D touchLocation) {
-        return isTouched(mvp.collapse(), touchLocation);
+        return isTouched(mvp.collapseTopInverse(), touchLocation.getX(), touchLocation.getY());
+    }
+    
+    /**
+     * @param inverse Inverse of the collapsed MVP matrix, mapping screen space
+     *                into object space. May be null if the matrix was singular.
+     * @return Whether or not the unit square centered on the object space
+     *         origin contains the screen space point (x, y).
+     */
+    public static boolean isTouched(final Affine2D inverse, final float x, final float y) {
+        if (inverse == null) { // If the object has collapsed to nothing
+            return false;
+        }
+        
+        return isInUnitSquare(inverse.mapX(x, y), inverse.mapY(x, y));
     }
     
     public static boolean isTouched(final float[] transformationSpace, 
                                     final FloatPoint2D touchLocation) {
-        float        height   = transformationSpace[5];
-        FloatPoint2D position = new FloatPoint2D(transformationSpace[12], 
-                                                 transformationSpace[13]);
-        float        width    = transformationSpace[0];
+        return isTouched(transformationSpace, 0, touchLocation);
+    }
+    
+    /**
+     * @param transformationSpace Collapsed MVP matrix. Must not be null.
+     * @param offset Offset of the matrix within transformationSpace.
+     * @param touchLocation Must not be null.
+     * @return Whether or not the unit square transformed by the matrix is touched.
+     *         The touch location is mapped back into object space through the
+     *         inverse of the matrix, so rotated and mirrored squares are supported.
+     */
+    public static boolean isTouched(final float[] transformationSpace,
+                                    final int offset,
+                                    final FloatPoint2D touchLocation) {
+        final float m00 = transformationSpace[offset];
+        final float m01 = transformationSpace[offset + 4];
+        final float m10 = transformationSpace[offset + 1];
+        final float m11 = transformationSpace[offset + 5];
+        final float determinant = m00 * m11 - m01 * m10;
+        
+        if (determinant == 0.0f) { // If the square has collapsed to nothing
+            return false;
+        }
+        
+        final float dx = touchLocation.getX() - transformationSpace[offset + 12];
+        final float dy = touchLocation.getY() - transformationSpace[offset + 13];
         
-        return isTouched(position, width, height, touchLocation);
+        return isInUnitSquare((m11 * dx - m01 * dy) / determinant,
+                              (m00 * dy - m10 * dx) / determinant);
+    }
+    
+    /** @return Whether or not the object space point lies within the unit square. */
+    private static boolean isInUnitSquare(final float x, final float y) {
+        return (Math.abs(x) <= 0.5f) && (Math.abs(y) <= 0.5f);
     }
     
     public static boolean isTouched(final FloatPoint2D position, 
@@ -9,6 +9,9 @@ public abstract class Constants {
     /** Number of bytes in a float value. */
     public static final int BYTES_PER_FLOAT = 4;
     
+    /** Number of bytes in a short value. */
+    public static final int BYTES_PER_SHORT = 2;
+    
     /** Number of cells in a rendering matrix. */
     public static final int MATRIX_SIZE = 16;
     
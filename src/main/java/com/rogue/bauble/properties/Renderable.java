@@ -5,6 +5,9 @@ import com.rogue.bauble.graphics.MVP;
 /**
  * Interface for objects that can be rendered graphically.
  * 
+ * Objects may draw immediately, or submit their draws to the RenderQueue to
+ * have them issued together with the draws submitted alongside them.
+ * 
  * @author R. Matt McCann
  */
 public interface Renderable {
@@ -14,7 +14,6 @@ import com.rogue.bauble.graphics.text.GlyphString;
 import com.rogue.bauble.graphics.text.GlyphString.GlyphStringFactory;
 import com.rogue.bauble.graphics.textures.Texture;
 import com.rogue.bauble.io.touch.InputHelper;
-import com.rogue.bauble.misc.Constants;
 import com.rogue.unipoint.FloatPoint2D;
 import com.rogue.unipoint.Point2D;
 import org.slf4j.Logger;
@@ -73,8 +72,7 @@ public class Button extends RenderableObject {
     /** {@inheritDocs} */
     @Override
     public boolean handleClickExt(MVP transformationSpace, FloatPoint2D clickLocation) {
-        logger.info("Click Position:     " + clickLocation);
-        logger.info("Approve Button Pos: " + transformationSpace.peekM()[12] + " " + transformationSpace.peekM()[13]);
+        logger.debug("Click Position: {}", clickLocation);
         
         if (InputHelper.isTouched(transformationSpace, clickLocation)) {
             return function.apply(null);
@@ -86,21 +84,20 @@ public class Button extends RenderableObject {
     /** {@inheritDocs} */
     @Override
     public void renderExt(MVP mvp) {
-        float[]      modelSpace = mvp.peekCopyM();
-        FloatPoint2D size       = super.getSize();
+        float[]      arena = mvp.getArena();
+        FloatPoint2D size  = super.getSize();
         
         shader.activate();
         
         // Render the body of the button
-        shader.setMVPMatrix(mvp.collapse());
-        shader.setTexture(background.getHandle());
+        shader.setMVPMatrix(arena, mvp.collapseTop());
+        shader.setTexture(background);
         shader.draw();
         
         // Render the text
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, size.getY() / size.getX(), 1, 1);
-        mvp.pushM(modelSpace);
+        Matrix.scaleM(arena, mvp.pushM(), size.getY() / size.getX(), 1, 1);
         text.render(mvp);
-        mvp.popM();
+        mvp.dropM();
     }
 
     public void setText(String text) {
@@ -67,8 +67,8 @@ public class CheckBox extends RenderableObject {
     public void renderExt(MVP mvp) {
         shader.activate();
         
-        shader.setMVPMatrix(mvp.collapse());
-        shader.setTexture(isChecked ? checkedBox.getHandle(): uncheckedBox.getHandle());
+        shader.setMVPMatrix(mvp.getArena(), mvp.collapseTop());
+        shader.setTexture(isChecked ? checkedBox : uncheckedBox);
         shader.draw();
     }
     
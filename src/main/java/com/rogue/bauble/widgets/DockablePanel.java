@@ -7,20 +7,20 @@ import com.google.inject.assistedinject.Assisted;
 import com.google.inject.name.Named;
 import com.rogue.bauble.device.Device;
 import com.rogue.bauble.graphics.Color;
-import com.rogue.bauble.graphics.DrawUtils;
+import com.rogue.bauble.graphics.GeometryCache;
 import com.rogue.bauble.graphics.MVP;
+import com.rogue.bauble.graphics.VertexLayout;
 import com.rogue.bauble.graphics.shaders.SimpleColorShader;
 import com.rogue.bauble.graphics.shaders.SimpleTexturedShader;
+import com.rogue.bauble.graphics.shaders.SpriteShader;
 import com.rogue.bauble.graphics.textures.Texture;
 import com.rogue.bauble.io.touch.ClickHandler;
 import com.rogue.bauble.io.touch.DragHandler;
 import com.rogue.bauble.io.touch.InputHelper;
 import com.rogue.bauble.io.touch.LongPressHandler;
-import com.rogue.bauble.misc.Constants;
 import com.rogue.bauble.properties.Renderable;
 import com.rogue.unipoint.FloatPoint2D;
 import com.rogue.unipoint.Point2D;
-import java.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,7 +31,7 @@ import org.slf4j.LoggerFactory;
  */
 public class DockablePanel implements ClickHandler, DragHandler, LongPressHandler, Renderable {
     /** Backgound VBO of the panel. */
-    private final int backgroundVBO;
+    private final GeometryCache.Geometry backgroundVBO;
     
     /** Texture of the panel's border. */
     private final Texture borderTexture;
@@ -39,6 +39,9 @@ public class DockablePanel implements ClickHandler, DragHandler, LongPressHandle
     /** Width of the panel border. */
     private final float borderWidth;
     
+    /** Shares the background VBOs between panels. */
+    private final GeometryCache geometryCache;
+    
     /** Used to draw the background of the panel. */
     private final SimpleColorShader colorShader;
     
@@ -79,6 +82,15 @@ public class DockablePanel implements ClickHandler, DragHandler, LongPressHandle
     /** Texture of the draggable tab. */
     private final Texture tabTexture;
     
+    /** 
+     * When injected, draws the background, border, and tab through a single
+     * program rather than switching between the color and texture shaders.
+     */
+    private SpriteShader spriteShader = null;
+    
+    /** Backgound VBO of the panel in the sprite shader's vertex format. */
+    private GeometryCache.Geometry spriteBackgroundVBO;
+    
     /** Size of the draggable tab. */
     private final Point2D tabSize = new Point2D(0.1f, 0.2f);
     
@@ -93,10 +105,12 @@ public class DockablePanel implements ClickHandler, DragHandler, LongPressHandle
     public DockablePanel(@Named("PanelBorder") Texture borderTexture,
                          SimpleColorShader colorShader,
                          Device device,
+                         GeometryCache geometryCache,
                          @Assisted("isMirrored") boolean isMirrored,
                          @Named("PanelTab") Texture tabTexture,
                          SimpleTexturedShader textureShader) {
-        this.backgroundVBO = DrawUtils.buildUnitSquarePcVbo(Color.PANEL_GRAY);
+        this.geometryCache = checkNotNull(geometryCache);
+        this.backgroundVBO = geometryCache.acquireUnitSquareVbo(VertexLayout.PACKED_POS_COLOR, Color.PANEL_GRAY);
         this.colorShader = checkNotNull(colorShader);
         this.device = checkNotNull(device);
         this.isMirrored = isMirrored;
@@ -126,6 +140,26 @@ public class DockablePanel implements ClickHandler, DragHandler, LongPressHandle
         DockablePanel create(@Assisted("isMirrored") boolean isMirrored);
     }
     
+    /**
+     * Draws a texture in the current space.
+     * 
+     * @param arena MVP arena holding the transformation.
+     * @param mvpSpace Offset of the transformation within the arena.
+     * @param texture Texture to draw.
+     */
+    private void drawTexture(final float[] arena, final int mvpSpace, final Texture texture) {
+        if (spriteShader != null) {
+            spriteShader.setMVPMatrix(arena, mvpSpace);
+            spriteShader.setTexture(texture);
+            spriteShader.draw();
+        } else {
+            textureShader.activate();
+            textureShader.setMVPMatrix(arena, mvpSpace);
+            textureShader.setTexture(texture);
+            textureShader.draw();
+        }
+    }
+    
     /** 
      * Interface for extending classes to tell the dockable panel how tall the
      * content is for scrolling purposes.
@@ -135,29 +169,29 @@ public class DockablePanel implements ClickHandler, DragHandler, LongPressHandle
     /** {@inheritDocs} */
     @Override
     public boolean handleClick(MVP transformationSpace, FloatPoint2D clickLocation) {
-        float[] modelSpace = transformationSpace.peekCopyM();
+        float[] arena      = transformationSpace.getArena();
+        int     modelSpace = transformationSpace.pushM();
         boolean result;
         
         // Transform into panel space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, (float) position.getX(),
+        Matrix.translateM(arena, modelSpace, (float) position.getX(),
                 (float) position.getY(), 0.0f);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, 1 / device.getAspectRatio(), 1.0f, 1.0f);
+        Matrix.scaleM(arena, modelSpace, 1 / device.getAspectRatio(), 1.0f, 1.0f);
         
         // Transform into background space
         if (isMirrored) {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, 0.5f - contentWidth / 2.0f, 0, 0);
+            Matrix.translateM(arena, modelSpace, 0.5f - contentWidth / 2.0f, 0, 0);
         } else {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, -0.5f + contentWidth / 2.0f, 0, 0);
+            Matrix.translateM(arena, modelSpace, -0.5f + contentWidth / 2.0f, 0, 0);
         }
         
         // Transform into content space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, (float) contentPos.getX(), 
+        Matrix.translateM(arena, modelSpace, (float) contentPos.getX(), 
                     (float) contentPos.getY(), 0.0f);
         
         // Check if the extending content is clicked
-        transformationSpace.pushM(modelSpace);
         result = handleClickExt(transformationSpace, clickLocation);
-        transformationSpace.popM();
+        transformationSpace.dropM();
         
         return result;
     }
@@ -170,29 +204,29 @@ public class DockablePanel implements ClickHandler, DragHandler, LongPressHandle
     /** {@inheritDocs} */
     @Override
     public boolean handleLongPress(MVP transformationSpace, FloatPoint2D pressLocation) {
-        float[] modelSpace = transformationSpace.peekCopyM();
+        float[] arena      = transformationSpace.getArena();
+        int     modelSpace = transformationSpace.pushM();
         boolean result;
         
         // Transform into panel space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, (float) position.getX(),
+        Matrix.translateM(arena, modelSpace, (float) position.getX(),
                 (float) position.getY(), 0.0f);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, 1 / device.getAspectRatio(), 1.0f, 1.0f);
+        Matrix.scaleM(arena, modelSpace, 1 / device.getAspectRatio(), 1.0f, 1.0f);
         
         // Transform into background space
         if (isMirrored) {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, 0.5f - contentWidth / 2.0f, 0, 0);
+            Matrix.translateM(arena, modelSpace, 0.5f - contentWidth / 2.0f, 0, 0);
         } else {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, -0.5f + contentWidth / 2.0f, 0, 0);
+            Matrix.translateM(arena, modelSpace, -0.5f + contentWidth / 2.0f, 0, 0);
         }
         
         // Transform into content space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, (float) contentPos.getX(), 
+        Matrix.translateM(arena, modelSpace, (float) contentPos.getX(), 
                     (float) contentPos.getY(), 0.0f);
         
         // Check if the extending content is clicked
-        transformationSpace.pushM(modelSpace);
         result = handleLongPressExt(transformationSpace, pressLocation);
-        transformationSpace.popM();
+        transformationSpace.dropM();
         
         return result;
     }
@@ -205,75 +239,64 @@ public class DockablePanel implements ClickHandler, DragHandler, LongPressHandle
     /** {@inheritDocs} */
     @Override
     public boolean handlePickUp(MVP transformationSpace, FloatPoint2D touchLocation) {
-        float[] modelSpace = transformationSpace.peekCopyM();
-        float[] transformationMatrix;
+        float[] arena      = transformationSpace.getArena();
+        int     modelSpace = transformationSpace.pushM();
+        int     transformationMatrix;
         
         // Transform into panel space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, (float) position.getX(), 
+        Matrix.translateM(arena, modelSpace, (float) position.getX(), 
                 (float) position.getY(), 0.0f);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, 1.0f / device.getAspectRatio(),
+        Matrix.scaleM(arena, modelSpace, 1.0f / device.getAspectRatio(),
                 1.0f, 1.0f);
         
         // Transform into background space
         if (isMirrored) {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, 0.5f - contentWidth / 2.0f, 0, 0);
+            Matrix.translateM(arena, modelSpace, 0.5f - contentWidth / 2.0f, 0, 0);
         } else {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, -0.5f + contentWidth / 2.0f, 0, 0);
+            Matrix.translateM(arena, modelSpace, -0.5f + contentWidth / 2.0f, 0, 0);
         }
-        transformationSpace.pushM(modelSpace);
         
         // Transform into border space
+        transformationMatrix = transformationSpace.collapseLocal();
         if (isMirrored) {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, -0.5f * contentWidth, 0, 0);
+            Matrix.translateM(arena, transformationMatrix, -0.5f * contentWidth, 0, 0);
         } else {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, 0.5f * contentWidth, 0, 0);
+            Matrix.translateM(arena, transformationMatrix, 0.5f * contentWidth, 0, 0);
         }
         
         // Transform into tab space
         if (isMirrored) {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, 
+            Matrix.translateM(arena, transformationMatrix, 
                     -0.5f * (float) (tabSize.getX() - borderWidth), 0, 0);
         } else {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, 
+            Matrix.translateM(arena, transformationMatrix, 
                     0.5f * (float) (tabSize.getX() - borderWidth), 0, 0);
         }
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, (float) tabSize.getX(),
+        Matrix.scaleM(arena, transformationMatrix, (float) tabSize.getX(),
                 (float) tabSize.getY(), 1);
-        transformationMatrix = transformationSpace.collapseM(modelSpace);
 
         // If the tab is picked up
-        if (InputHelper.isTouched(transformationMatrix, touchLocation)) {
+        if (InputHelper.isTouched(arena, transformationMatrix, touchLocation)) {
             isBeingDragged = true; // Start dragging the panel
-            transformationSpace.popM();
+            transformationSpace.dropM();
             
             return true;
         }
         
-        //  Transform into content space
-        modelSpace = transformationSpace.popM();
-        
         // Check if any of the contents are being dragged
-        transformationSpace.pushM(modelSpace);
         if (handlePickUpExt(transformationSpace, touchLocation)) {
-            transformationSpace.popM();
+            transformationSpace.dropM();
             isContentBeingDragged = true;
             return true;
         }
-        transformationSpace.popM();
 
         // Check if the content is being scrolled
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, contentWidth, 1.0f, 1.0f);
-        transformationMatrix = transformationSpace.collapseM(modelSpace);
-        logger.debug("Content Transformation Matrix: " + Arrays.toString(transformationMatrix));
-        logger.debug("Touch Location: " + touchLocation);
+        transformationMatrix = transformationSpace.collapseLocal();
+        transformationSpace.dropM();
+        Matrix.scaleM(arena, transformationMatrix, contentWidth, 1.0f, 1.0f);
+        logger.debug("Touch Location: {}", touchLocation);
         
-        float        height   = transformationMatrix[0];
-        FloatPoint2D position = new FloatPoint2D(transformationMatrix[12], 
-                                                 transformationMatrix[13]);
-        float        width    = transformationMatrix[5];
-        logger.debug("Size:     " + width + ", " + height);
-        logger.debug("Position: " + position);
-        if (InputHelper.isTouched(transformationMatrix, touchLocation)) {
+        if (InputHelper.isTouched(arena, transformationMatrix, touchLocation)) {
             logger.debug("Content is being scrolled!");
             isBeingScrolled = true;
             return true;
@@ -384,81 +407,109 @@ public class DockablePanel implements ClickHandler, DragHandler, LongPressHandle
     /** {@inheritDocs} */
     @Override
     public void render(MVP mvp) {
-        float[] modelSpace = mvp.peekCopyM();
+        float[] arena      = mvp.getArena();
+        int     modelSpace = mvp.pushM();
+        int     mvpSpace;
 
         // Transform into panel space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, (float) position.getX(),
+        Matrix.translateM(arena, modelSpace, (float) position.getX(),
                 (float) position.getY(), 0.0f);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, 1 / device.getAspectRatio(), 1.0f, 1.0f);
+        Matrix.scaleM(arena, modelSpace, 1 / device.getAspectRatio(), 1.0f, 1.0f);
         
         // Transform into background space
         if (isMirrored) {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, 0.5f - contentWidth / 2.0f, 0, 0);
+            Matrix.translateM(arena, modelSpace, 0.5f - contentWidth / 2.0f, 0, 0);
         } else {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, -0.5f + contentWidth / 2.0f, 0, 0);
+            Matrix.translateM(arena, modelSpace, -0.5f + contentWidth / 2.0f, 0, 0);
         }
-        mvp.pushM(modelSpace);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, contentWidth, 1, 1);
+        mvpSpace = mvp.collapseLocal();
+        Matrix.scaleM(arena, mvpSpace, contentWidth, 1, 1);
         
         // Render the background of the panel
-        colorShader.activate();
-        colorShader.setMVPMatrix(mvp.collapseM(modelSpace));
-        colorShader.setVBO(backgroundVBO);
-        colorShader.draw();
+        if (spriteShader != null) {
+            spriteShader.activate();
+            spriteShader.setMVPMatrix(arena, mvpSpace);
+            spriteShader.setVBO(spriteBackgroundVBO.getVbo());
+            spriteShader.setVertexLayout(VertexLayout.PACKED_POS_COLOR_TEX);
+            spriteShader.draw();
+        } else {
+            colorShader.activate();
+            colorShader.setMVPMatrix(arena, mvpSpace);
+            colorShader.setVBO(backgroundVBO.getVbo());
+            colorShader.setVertexLayout(VertexLayout.PACKED_POS_COLOR);
+            colorShader.draw();
+        }
         
         // Move into border space
-        modelSpace = mvp.peekCopyM();
+        modelSpace = mvp.pushM();
         if (isMirrored) {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, -0.5f * contentWidth, 0, 0);
-            Matrix.rotateM(modelSpace, Constants.NO_OFFSET, 180.0f, 0, 1, 0);
+            Matrix.translateM(arena, modelSpace, -0.5f * contentWidth, 0, 0);
+            Matrix.rotateM(arena, modelSpace, 180.0f, 0, 1, 0);
         } else {
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, 0.5f * contentWidth, 0, 0);
+            Matrix.translateM(arena, modelSpace, 0.5f * contentWidth, 0, 0);
         }
-        mvp.pushM(modelSpace);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, borderWidth, 1, 1);
+        Matrix.scaleM(arena, mvp.pushM(), borderWidth, 1, 1);
         
         // Render the top portion of the panel border
-        mvp.pushM(modelSpace);
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, 0,
+        mvpSpace = mvp.collapseLocal();
+        Matrix.translateM(arena, mvpSpace, 0,
                 0.5f - (float) tabSize.getY() / 2, 0);
-        textureShader.activate();
-        textureShader.setMVPMatrix(mvp.collapseM(modelSpace));
-        textureShader.setTexture(borderTexture.getHandle());
-        textureShader.draw();
+        drawTexture(arena, mvpSpace, borderTexture);
         
         // Render the bottom portion of the panel border
-        modelSpace = mvp.popM();
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, 0,
+        mvpSpace = mvp.collapseLocal();
+        mvp.dropM();
+        Matrix.translateM(arena, mvpSpace, 0,
                 -0.5f + (float) tabSize.getY() / 2, 0);
-        textureShader.setMVPMatrix(mvp.collapseM(modelSpace));
-        textureShader.setTexture(borderTexture.getHandle());
-        textureShader.draw();
+        drawTexture(arena, mvpSpace, borderTexture);
         
         // Move into tab space
-        modelSpace = mvp.popM();
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, 
+        mvpSpace = mvp.collapseLocal();
+        mvp.dropM();
+        Matrix.translateM(arena, mvpSpace, 
                 0.5f * (float) (tabSize.getX() - borderWidth), 0, 0);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, (float) tabSize.getX(),
+        Matrix.scaleM(arena, mvpSpace, (float) tabSize.getX(),
                 (float) tabSize.getY(), 1);
         
         // Render the tab
-        textureShader.setMVPMatrix(mvp.collapseM(modelSpace));
-        textureShader.setTexture(tabTexture.getHandle());
-        textureShader.draw();
+        drawTexture(arena, mvpSpace, tabTexture);
         
-        modelSpace = mvp.popM();
         if (position.getX() != xPosRetracted) { // If the panel is not completely retracted
             // Transform into content space
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, (float) contentPos.getX(), 
+            modelSpace = mvp.pushM();
+            Matrix.translateM(arena, modelSpace, (float) contentPos.getX(), 
                     (float) contentPos.getY(), 0.0f);
 
             // Render the contents of the panel
-            mvp.pushM(modelSpace);
             renderExt(mvp, contentWidth * 0.9f);
-            mvp.popM();
+            mvp.dropM();
         }
+        mvp.dropM();
     }
     
     /** Provides an interface for extending classes to render the panel contents. */
     protected void renderExt(MVP mvp, float contentWidth) { }
+    
+    /**
+     * Opts the panel into drawing through the sprite shader. Injected when
+     * the application binds the sprite shader's sources.
+     * 
+     * @param spriteShader Must not be null.
+     */
+    @Inject(optional = true)
+    public void setSpriteShader(final SpriteShader spriteShader) {
+        this.spriteShader = checkNotNull(spriteShader);
+        this.spriteBackgroundVBO = geometryCache.acquireUnitSquareVbo(VertexLayout.PACKED_POS_COLOR_TEX, Color.PANEL_GRAY);
+    }
+    
+    /**
+     * Releases the panel's share of its background VBOs. Must be called from
+     * the GL thread once the panel is no longer drawn.
+     */
+    public void release() {
+        geometryCache.release(backgroundVBO);
+        if (spriteShader != null) {
+            geometryCache.release(spriteBackgroundVBO);
+        }
+    }
 }
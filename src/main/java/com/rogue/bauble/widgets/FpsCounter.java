@@ -7,7 +7,6 @@ import com.rogue.bauble.device.Device;
 import com.rogue.bauble.graphics.MVP;
 import com.rogue.bauble.graphics.text.GlyphString;
 import com.rogue.bauble.graphics.text.GlyphString.GlyphStringFactory;
-import com.rogue.bauble.misc.Constants;
 import com.rogue.bauble.properties.Renderable;
 import com.rogue.unipoint.Point2D;
 
@@ -50,8 +49,7 @@ public class FpsCounter implements Renderable {
     /** {@inheritDocs} */
     @Override
     public void render(MVP mvp) {
-        float   newFps;
-        float[] model = mvp.peekCopyM();
+        float newFps;
         
         // Calculate the new FPS
         if (lastFps >= 0) {
@@ -68,9 +66,8 @@ public class FpsCounter implements Renderable {
         lastFps = newFps;
         
         // Render the FPS
-        Matrix.scaleM(model, Constants.NO_OFFSET, 1.0f / device.getAspectRatio(), 1.0f, 1.0f);
-        mvp.pushM(model);
+        Matrix.scaleM(mvp.getArena(), mvp.pushM(), 1.0f / device.getAspectRatio(), 1.0f, 1.0f);
         fps.render(mvp);
-        mvp.popM();
+        mvp.dropM();
     }
 }
@@ -9,7 +9,6 @@ import com.rogue.bauble.graphics.shaders.SimpleTexturedShader;
 import com.rogue.bauble.graphics.text.GlyphString;
 import com.rogue.bauble.graphics.text.GlyphString.GlyphStringFactory;
 import com.rogue.bauble.graphics.textures.Texture;
-import com.rogue.bauble.misc.Constants;
 
 /**
  * Labeled version of the check box.
@@ -36,19 +35,17 @@ public class LabeledCheckBox extends CheckBox {
     /** {@inheritDocs} */
     @Override
     public void renderExt(MVP mvp) {
-        float[] modelSpace = mvp.peekCopyM();
-        float   xOffset;
+        float xOffset;
 
         super.renderExt(mvp); // Render the check box
         
         // Move into label space
         xOffset = 0.625f + label.getWidth() / 2;
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, xOffset, 0, 0);
+        Matrix.translateM(mvp.getArena(), mvp.pushM(), xOffset, 0, 0);
 
         // Render the label
-        mvp.pushM(modelSpace);
         label.render(mvp);
-        mvp.popM();
+        mvp.dropM();
     }
     
     public void setLabel(String text) {
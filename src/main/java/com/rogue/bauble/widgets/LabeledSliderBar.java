@@ -15,7 +15,6 @@ import com.rogue.bauble.graphics.textures.Texture;
 import com.rogue.bauble.io.touch.ClickHandler;
 import com.rogue.bauble.io.touch.DragHandler;
 import com.rogue.bauble.io.touch.InputHelper;
-import com.rogue.bauble.misc.Constants;
 import com.rogue.bauble.properties.Renderable;
 import com.rogue.unipoint.FloatPoint2D;
 import com.rogue.unipoint.Point2D;
@@ -127,36 +126,36 @@ public class LabeledSliderBar implements ClickHandler, DragHandler, Renderable {
     /** {@inheritDocs} */
     @Override
     public boolean handleClick(MVP transformationSpace, FloatPoint2D clickLocation) {
-        float[] modelSpace = transformationSpace.peekCopyM();
-        float[] transformationMatrix;
+        float[] arena      = transformationSpace.getArena();
+        int     modelSpace = transformationSpace.pushM();
+        int     transformationMatrix;
         
         // Move into labeled slider bar space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, (float) position.getX(),
+        Matrix.translateM(arena, modelSpace, (float) position.getX(),
                 (float) position.getY() - 0.6125f * typeLabel.getHeight(), 0.0f);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, size, size, 1.0f);
-        transformationSpace.pushM(modelSpace);
+        Matrix.scaleM(arena, modelSpace, size, size, 1.0f);
       
         // Move into minus button space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, -0.5f + buttonSize / 2, 0, 0);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, buttonSize, buttonSize, 1);
-        transformationMatrix = transformationSpace.collapseM(modelSpace);
+        transformationMatrix = transformationSpace.collapseLocal();
+        Matrix.translateM(arena, transformationMatrix, -0.5f + buttonSize / 2, 0, 0);
+        Matrix.scaleM(arena, transformationMatrix, buttonSize, buttonSize, 1);
 
         // If the minus button is clicked
-        if (InputHelper.isTouched(transformationMatrix, clickLocation)) {
+        if (InputHelper.isTouched(arena, transformationMatrix, clickLocation)) {
             currentValue = updatedValueHandler.handleDecreasedValue(currentValue, valueLabel);
             updateSliderPosition();
-            transformationSpace.popM();
+            transformationSpace.dropM();
             return true;
         }
         
         // Move into plus button space
-        modelSpace = transformationSpace.popM();
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, 0.5f - buttonSize / 2, 0, 0);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, buttonSize, buttonSize, 1);
-        transformationMatrix = transformationSpace.collapseM(modelSpace);
+        transformationMatrix = transformationSpace.collapseLocal();
+        transformationSpace.dropM();
+        Matrix.translateM(arena, transformationMatrix, 0.5f - buttonSize / 2, 0, 0);
+        Matrix.scaleM(arena, transformationMatrix, buttonSize, buttonSize, 1);
         
         // If the plus button is clicked
-        if (InputHelper.isTouched(transformationMatrix, clickLocation)) {
+        if (InputHelper.isTouched(arena, transformationMatrix, clickLocation)) {
             currentValue = updatedValueHandler.handleIncreasedValue(currentValue, valueLabel);
             updateSliderPosition();
             return true;
@@ -168,21 +167,20 @@ public class LabeledSliderBar implements ClickHandler, DragHandler, Renderable {
     /** {@inheritDocs} */
     @Override
     public boolean handlePickUp(MVP transformationSpace, FloatPoint2D touchLocation) {
-        float[] modelSpace = transformationSpace.peekCopyM();
-        float[] transformationMatrix;
+        float[] arena                = transformationSpace.getArena();
+        int     transformationMatrix = transformationSpace.collapseLocal();
 
         // Move into labeled slider bar space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, (float) position.getX(),
+        Matrix.translateM(arena, transformationMatrix, (float) position.getX(),
                 (float) position.getY() - 0.6125f * typeLabel.getHeight(), 0.0f);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, size, size, 1.0f);
+        Matrix.scaleM(arena, transformationMatrix, size, size, 1.0f);
         
         // Move into slider space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, sliderPosition, 0, 0);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, buttonSize, buttonSize, 1);
-        transformationMatrix = transformationSpace.collapseM(modelSpace);
+        Matrix.translateM(arena, transformationMatrix, sliderPosition, 0, 0);
+        Matrix.scaleM(arena, transformationMatrix, buttonSize, buttonSize, 1);
         
         // Check if the slider is being picked up
-        return InputHelper.isTouched(transformationMatrix, touchLocation);
+        return InputHelper.isTouched(arena, transformationMatrix, touchLocation);
     }
 
     /** {@inheritDocs} */
@@ -221,60 +219,63 @@ public class LabeledSliderBar implements ClickHandler, DragHandler, Renderable {
     /** {@inheritDocs} */
     @Override
     public void render(MVP transformationSpace) {
-        float[] modelSpace = transformationSpace.peekCopyM();
+        float[] arena      = transformationSpace.getArena();
+        int     modelSpace = transformationSpace.pushM();
+        int     mvpSpace;
         
         // Move into labeled slider bar space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, (float) position.getX(),
+        Matrix.translateM(arena, modelSpace, (float) position.getX(),
                 (float) position.getY() - 0.6125f * typeLabel.getHeight(), 0.0f);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, size, size, 1.0f);
-        transformationSpace.pushM(modelSpace);
+        Matrix.scaleM(arena, modelSpace, size, size, 1.0f);
         
         // Render the type label
-        typeLabel.setPosition(new Point2D(-0.49f + typeLabel.getWidth() / 2, 
-                                          typeLabel.getHeight() * .75f + buttonSize / 2));
+        typeLabel.getPosition().setX(-0.49f + typeLabel.getWidth() / 2);
+        typeLabel.getPosition().setY(typeLabel.getHeight() * .75f + buttonSize / 2);
         typeLabel.render(transformationSpace);
         
         // Render the value label
-        valueLabel.setPosition(new Point2D(0.49f - valueLabel.getWidth() / 2, 
-                                           typeLabel.getHeight() * .75f + buttonSize / 2));
+        valueLabel.getPosition().setX(0.49f - valueLabel.getWidth() / 2);
+        valueLabel.getPosition().setY(typeLabel.getHeight() * .75f + buttonSize / 2);
         valueLabel.render(transformationSpace);
         
         // Move into slider bar space
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, 1 - buttonSize * 2, buttonSize / 5, 1);
+        mvpSpace = transformationSpace.collapseLocal();
+        Matrix.scaleM(arena, mvpSpace, 1 - buttonSize * 2, buttonSize / 5, 1);
         
         // Render the slider bar body
-        shader.setMVPMatrix(transformationSpace.collapseM(modelSpace));
-        shader.setTexture(bar.getHandle());
+        shader.setMVPMatrix(arena, mvpSpace);
+        shader.setTexture(bar);
         shader.draw();
         
         // Move into minus button space
-        modelSpace = transformationSpace.peekCopyM();
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, -0.5f + buttonSize / 2, 0, 0);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, buttonSize, buttonSize, 1);
+        mvpSpace = transformationSpace.collapseLocal();
+        Matrix.translateM(arena, mvpSpace, -0.5f + buttonSize / 2, 0, 0);
+        Matrix.scaleM(arena, mvpSpace, buttonSize, buttonSize, 1);
         
         // Render the minus button
-        shader.setMVPMatrix(transformationSpace.collapseM(modelSpace));
-        shader.setTexture(minusTexture.getHandle());
+        shader.setMVPMatrix(arena, mvpSpace);
+        shader.setTexture(minusTexture);
         shader.draw();
         
         // Move into plus button space
-        modelSpace = transformationSpace.peekCopyM();
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, 0.5f - buttonSize / 2, 0, 0);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, buttonSize, buttonSize, 1);
+        mvpSpace = transformationSpace.collapseLocal();
+        Matrix.translateM(arena, mvpSpace, 0.5f - buttonSize / 2, 0, 0);
+        Matrix.scaleM(arena, mvpSpace, buttonSize, buttonSize, 1);
         
         // Render the minus button
-        shader.setMVPMatrix(transformationSpace.collapseM(modelSpace));
-        shader.setTexture(plusTexture.getHandle());
+        shader.setMVPMatrix(arena, mvpSpace);
+        shader.setTexture(plusTexture);
         shader.draw();
         
         // Move into slider space
-        modelSpace = transformationSpace.popM();
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, sliderPosition, 0, 0);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, buttonSize, buttonSize, 1);
+        mvpSpace = transformationSpace.collapseLocal();
+        transformationSpace.dropM();
+        Matrix.translateM(arena, mvpSpace, sliderPosition, 0, 0);
+        Matrix.scaleM(arena, mvpSpace, buttonSize, buttonSize, 1);
         
         // Render the slider
-        shader.setMVPMatrix(transformationSpace.collapseM(modelSpace));
-        shader.setTexture(slider.getHandle());
+        shader.setMVPMatrix(arena, mvpSpace);
+        shader.setTexture(slider);
         shader.draw();
     }
     
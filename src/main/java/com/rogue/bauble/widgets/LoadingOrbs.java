@@ -1,14 +1,15 @@
 package com.rogue.bauble.widgets;
 
-import android.opengl.Matrix;
 import static com.google.common.base.Preconditions.*;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.rogue.bauble.graphics.Affine2D;
+import com.rogue.bauble.graphics.DrawCommand;
 import com.rogue.bauble.graphics.MVP;
+import com.rogue.bauble.graphics.RenderQueue;
 import com.rogue.bauble.graphics.flow.GameTickEvent;
 import com.rogue.bauble.graphics.shaders.SimpleTexturedShader;
 import com.rogue.bauble.graphics.textures.Texture;
-import com.rogue.bauble.misc.Constants;
 import com.rogue.bauble.properties.Renderable;
 import com.rogue.bauble.properties.Stateful;
 import com.rogue.unipoint.FloatPoint2D;
@@ -20,11 +21,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Widget displaying rotating orbs with an optional progress message
- * in the middle.
+ * in the middle. The orbs are submitted to the RenderQueue, which issues
+ * them together once they have all been collected.
  * 
  * @author R. Matt McCann
  */
-public class LoadingOrbs implements Renderable, Stateful {
+public class LoadingOrbs implements DrawCommand, Renderable, Stateful {
     /** Interface for logging events. */
     private static final Logger logger = LoggerFactory.getLogger("LoadingOrbs");
     
@@ -37,12 +39,18 @@ public class LoadingOrbs implements Renderable, Stateful {
     /** Texture of the orb used to create the spinning orbs effect. */
     private final Texture orb;
     
+    /** Reused transformation into the space of the orb being rendered. */
+    private final Affine2D orbSpace = new Affine2D();
+    
     /** Radial spacing between the orbs in degrees. */
     private float orbSpacing;
     
     /** Rendering position of the loading orbs widget. */
     private FloatPoint2D position = new FloatPoint2D(0, 0);
     
+    /** Used to issue the orb draws together. */
+    private final RenderQueue renderQueue;
+    
     /** Rotational position of the primary orb in degrees. */
     private float rotationPos;
     
@@ -60,11 +68,13 @@ public class LoadingOrbs implements Renderable, Stateful {
     public LoadingOrbs(Configuration config,
                        EventBus notifier,
                        @Named("Orb") Texture orb,
+                       RenderQueue renderQueue,
                        SimpleTexturedShader shader) {
         this.notifier = checkNotNull(notifier);
         this.numOrbs = config.getInt("LoadingOrbs.NumOrbs", 9);
         this.orb = checkNotNull(orb);
         this.orbSpacing = config.getFloat("LoadingOrbs.OrbSpacing", 30);
+        this.renderQueue = checkNotNull(renderQueue);
         this.rotationPeriod = config.getFloat("LoadingOrbs.RotationPeriod", 1);
         this.shader = checkNotNull(shader);
     }
@@ -78,6 +88,15 @@ public class LoadingOrbs implements Renderable, Stateful {
     @Override
     public void cleanUp() { }
     
+    /** {@inheritDocs} */
+    @Override
+    public void draw(int tag, float[] matrix, int offset) {
+        shader.activate();
+        shader.setMVPMatrix(matrix, offset);
+        shader.setTexture(orb);
+        shader.draw();
+    }
+    
     /**
      * This is called every time a game tick event is published by the 
      * game flow controller. Used to rotate the orbs.
@@ -98,14 +117,12 @@ public class LoadingOrbs implements Renderable, Stateful {
     /** {@inheritDocs} */
     @Override
     public void render(MVP mvp) {
-        float[] modelSpace = mvp.peekCopyM();
-        
-        shader.activate(); // Turn on our shader
+        float[] arena = mvp.getArena();
+        int     mvpSpace;
         
         // Move into loading orbs widget space
-        Matrix.translateM(modelSpace, Constants.NO_OFFSET, position.getX(), position.getY(), 0);
-        Matrix.scaleM(modelSpace, Constants.NO_OFFSET, size.getX(), size.getY(), 1);
-        mvp.pushM(modelSpace);
+        mvp.pushM(orbSpace.set(size.getX(), 0, 0, size.getY(),
+                position.getX(), position.getY()));
         
         // Render each of the loading orbs
         for (int orbIter = 0; orbIter < numOrbs; orbIter++) {
@@ -115,20 +132,18 @@ public class LoadingOrbs implements Renderable, Stateful {
             float orbSize           = largestOrbSize * (float) Math.pow(0.85f, orbIter);
             float translationOffset = 0.5f - largestOrbSize / 2.0f; 
             
-            modelSpace = mvp.peekCopyM(); // Undo the last orbs transformations
-            
             // Transform into orb space
-            Matrix.rotateM(modelSpace, Constants.NO_OFFSET, angularOffset, 0, 0, 1);
-            Matrix.translateM(modelSpace, Constants.NO_OFFSET, translationOffset, 0, 0);
-            Matrix.scaleM(modelSpace, Constants.NO_OFFSET, orbSize, orbSize, 1);
+            orbSpace.setIdentity()
+                    .rotate(angularOffset)
+                    .translate(translationOffset, 0)
+                    .scale(orbSize, orbSize);
+            mvpSpace = mvp.collapseLocal(orbSpace);
             
-            // Render the orb
-            shader.setMVPMatrix(mvp.collapseM(modelSpace));
-            shader.setTexture(orb.getHandle());
-            shader.draw();
+            // Queue the orb, which blends over the orbs before it
+            renderQueue.submit(RenderQueue.translucentKey(0), this, orbIter, arena, mvpSpace);
         }
         
-        mvp.popM();
+        mvp.dropM();
     }
     
     public void setPosition(FloatPoint2D position) {
@@ -44,8 +44,8 @@ public class PopUp extends RenderableObject {
         // Render the drop-shadow background
         logger.info("Rendering drop-shadow background...");
         shader.activate();
-        shader.setMVPMatrix(mvp.collapse());
-        shader.setTexture(dropShadow.getHandle());
+        shader.setMVPMatrix(mvp.getArena(), mvp.collapseTop());
+        shader.setTexture(dropShadow);
         shader.draw();
         
         // Render the pop-up contents
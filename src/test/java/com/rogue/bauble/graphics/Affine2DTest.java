@@ -0,0 +1,114 @@
+package com.rogue.bauble.graphics;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit tests for Affine2D class.
+ * 
+ * @author R. Matt McCann
+ */
+public class Affine2DTest {
+    /** Tolerance of the float comparisons. */
+    private static final float EPSILON = 1e-5f;
+    
+    @Test
+    public void testApplyToIdentity() {
+        final Affine2D transform = new Affine2D().translate(3, -2).rotate(30).scale(2, 0.5f);
+        final float[] matrix = new float[20];
+        matrix[4] = 1;
+        matrix[9] = 1;
+        matrix[14] = 1;
+        matrix[19] = 1;
+        final float[] expected = new float[20];
+        
+        transform.applyTo(matrix, 4);
+        transform.toMatrix(expected, 4);
+        
+        assertArrayEquals(expected, matrix, EPSILON);
+    }
+    
+    @Test
+    public void testConcatenate() {
+        final Affine2D chained = new Affine2D().translate(1, 2).rotate(45).scale(3, 4);
+        final Affine2D concatenated = new Affine2D().translate(1, 2).concatenate(
+                new Affine2D().rotate(45).concatenate(new Affine2D().scale(3, 4)));
+        
+        assertEquals(chained.getM00(), concatenated.getM00(), EPSILON);
+        assertEquals(chained.getM01(), concatenated.getM01(), EPSILON);
+        assertEquals(chained.getM10(), concatenated.getM10(), EPSILON);
+        assertEquals(chained.getM11(), concatenated.getM11(), EPSILON);
+        assertEquals(chained.getTx(), concatenated.getTx(), EPSILON);
+        assertEquals(chained.getTy(), concatenated.getTy(), EPSILON);
+    }
+    
+    @Test
+    public void testInvert() {
+        final Affine2D transform = new Affine2D().translate(5, -3).rotate(-60).scale(2, -0.25f);
+        final Affine2D inverse = new Affine2D();
+        
+        assertTrue(transform.invert(inverse));
+        
+        final float[] point = new float[] {0.75f, -1.5f};
+        transform.mapPoint(point, 0);
+        inverse.mapPoint(point, 0);
+        assertEquals(0.75f, point[0], EPSILON);
+        assertEquals(-1.5f, point[1], EPSILON);
+        
+        inverse.concatenate(transform);
+        assertEquals(1, inverse.getM00(), EPSILON);
+        assertEquals(0, inverse.getM01(), EPSILON);
+        assertEquals(0, inverse.getM10(), EPSILON);
+        assertEquals(1, inverse.getM11(), EPSILON);
+        assertEquals(0, inverse.getTx(), EPSILON);
+        assertEquals(0, inverse.getTy(), EPSILON);
+    }
+    
+    @Test
+    public void testInvertInPlace() {
+        final Affine2D transform = new Affine2D().translate(2, 3).scale(4, 5);
+        
+        assertTrue(transform.invert(transform));
+        assertEquals(0.25f, transform.getM00(), EPSILON);
+        assertEquals(0.2f, transform.getM11(), EPSILON);
+        assertEquals(-0.5f, transform.getTx(), EPSILON);
+        assertEquals(-0.6f, transform.getTy(), EPSILON);
+    }
+    
+    @Test
+    public void testInvertSingular() {
+        final Affine2D transform = new Affine2D().translate(1, 1).scale(0, 2);
+        final Affine2D result = new Affine2D().translate(7, 8);
+        
+        assertFalse(transform.invert(result));
+        assertEquals(7, result.getTx(), EPSILON);
+        assertEquals(8, result.getTy(), EPSILON);
+    }
+    
+    @Test
+    public void testRotate() {
+        final Affine2D transform = new Affine2D().rotate(90);
+        
+        assertEquals(0, transform.mapX(1, 0), EPSILON);
+        assertEquals(1, transform.mapY(1, 0), EPSILON);
+        assertEquals(-1, transform.mapX(0, 1), EPSILON);
+        assertEquals(0, transform.mapY(0, 1), EPSILON);
+    }
+    
+    @Test
+    public void testRotateAfterTranslate() {
+        // Post-multiplied, so the rotation applies in the translated space
+        final Affine2D transform = new Affine2D().translate(10, 0).rotate(90);
+        
+        assertEquals(10, transform.mapX(1, 0), EPSILON);
+        assertEquals(1, transform.mapY(1, 0), EPSILON);
+    }
+    
+    @Test
+    public void testTranslateThenScale() {
+        final Affine2D transform = new Affine2D().translate(1, 2).scale(2, 3);
+        
+        assertEquals(3, transform.mapX(1, 1), EPSILON);
+        assertEquals(5, transform.mapY(1, 1), EPSILON);
+    }
+}
@@ -0,0 +1,196 @@
+package com.rogue.bauble.graphics;
+
+import com.rogue.bauble.graphics.shaders.Batch;
+import com.rogue.bauble.graphics.shaders.ShaderRegistry;
+import com.rogue.bauble.misc.Constants;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for RenderQueue class.
+ * 
+ * @author R. Matt McCann
+ */
+public class RenderQueueTest {
+    /** Records the tags of the issued draws, in the order they were issued. */
+    private final RecordingCommand command = new RecordingCommand();
+    
+    /** Matrix submitted with the draws. */
+    private final float[] matrix = new float[Constants.MATRIX_SIZE];
+    
+    /** Queue under test. */
+    private RenderQueue queue;
+    
+    /** Flushes the queue. */
+    private ShaderRegistry registry;
+    
+    @Before
+    public void setUp() {
+        registry = new ShaderRegistry();
+        queue = new RenderQueue(registry, 4);
+    }
+    
+    /** @return Tags of the draws issued by flushing the registry's pending batches. */
+    private List<Integer> flush() {
+        command.tags.clear();
+        registry.flushPendingBatch();
+        return command.tags;
+    }
+    
+    /** Submits a draw with a tag and a key. */
+    private void submit(final int tag, final long key) {
+        queue.submit(key, command, tag, matrix, 0);
+    }
+    
+    @Test
+    public void testEqualKeysKeepSubmissionOrder() {
+        queue.setStable(false);
+        final long key = RenderQueue.opaqueKey(3, 7, 11, 13);
+        for (int tag = 0; tag < 10; tag++) {
+            submit(tag, key);
+        }
+        
+        assertEquals(list(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), flush());
+    }
+    
+    @Test
+    public void testFlushClears() {
+        submit(0, RenderQueue.translucentKey(0));
+        
+        assertEquals(list(0), flush());
+        assertEquals(0, queue.getSize());
+        assertEquals(list(), flush());
+    }
+    
+    @Test
+    public void testGrowsPastCapacity() {
+        for (int tag = 0; tag < 100; tag++) {
+            submit(tag, RenderQueue.opaqueKey(0, 1, 2, 3));
+        }
+        
+        assertEquals(100, queue.getSize());
+        assertEquals(100, flush().size());
+    }
+    
+    @Test
+    public void testInvalidateDropsDraws() {
+        submit(0, RenderQueue.translucentKey(0));
+        registry.invalidate();
+        
+        assertEquals(0, queue.getSize());
+        assertEquals(list(), flush());
+    }
+    
+    @Test
+    public void testLayersSortedWhenStable() {
+        assertTrue(queue.isStable());
+        
+        submit(0, RenderQueue.translucentKey(2));
+        submit(1, RenderQueue.opaqueKey(0, 9, 9, 9));
+        submit(2, RenderQueue.opaqueKey(1, 1, 1, 1));
+        submit(3, RenderQueue.opaqueKey(0, 1, 1, 1));
+        submit(4, RenderQueue.translucentKey(0));
+        
+        assertEquals(list(1, 3, 4, 2, 0), flush());
+    }
+    
+    @Test
+    public void testMatrixCopiedOnSubmit() {
+        matrix[5] = 2.0f;
+        submit(0, RenderQueue.translucentKey(0));
+        matrix[5] = 3.0f;
+        
+        flush();
+        assertEquals(2.0f, command.lastMatrix[5], 0.0f);
+    }
+    
+    @Test
+    public void testOpaqueSortedByStateWhenNotStable() {
+        queue.setStable(false);
+        
+        submit(0, RenderQueue.translucentKey(0));
+        submit(1, RenderQueue.opaqueKey(0, 2, 1, 1));
+        submit(2, RenderQueue.opaqueKey(0, 1, 2, 1));
+        submit(3, RenderQueue.opaqueKey(0, 1, 1, 2));
+        submit(4, RenderQueue.translucentKey(0));
+        submit(5, RenderQueue.opaqueKey(0, 1, 1, 1));
+        
+        assertEquals(list(5, 3, 2, 1, 0, 4), flush());
+    }
+    
+    @Test
+    public void testSortMatchesStableReferenceSort() {
+        queue.setStable(false);
+        final Random random = new Random(1234);
+        final List<Long> keys = new ArrayList<Long>();
+        final List<Integer> expected = new ArrayList<Integer>();
+        
+        for (int tag = 0; tag < 1000; tag++) {
+            final int layer = random.nextInt(RenderQueue.MAX_LAYER + 1);
+            final long key = random.nextBoolean() ? RenderQueue.translucentKey(layer) :
+                    RenderQueue.opaqueKey(layer, random.nextInt(4), random.nextInt(4), random.nextInt(4));
+            
+            keys.add(key);
+            expected.add(tag);
+            submit(tag, key);
+        }
+        
+        // Keys are compared unsigned, as layers above 127 set the top bit
+        Collections.sort(expected, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer first, final Integer second) {
+                final long firstKey = keys.get(first) ^ Long.MIN_VALUE;
+                final long secondKey = keys.get(second) ^ Long.MIN_VALUE;
+                return (firstKey < secondKey) ? -1 : ((firstKey == secondKey) ? 0 : 1);
+            }
+        });
+        assertEquals(expected, flush());
+    }
+    
+    @Test
+    public void testSubmitFlushesOtherPendingBatch() {
+        final List<Integer> order = command.tags;
+        registry.setPendingBatch(new Batch() {
+            @Override
+            public void flush() {
+                order.add(-1);
+            }
+            
+            @Override
+            public void invalidate() { }
+        });
+        
+        submit(0, RenderQueue.translucentKey(0));
+        
+        assertEquals(list(-1), order);
+        assertEquals(1, queue.getSize());
+    }
+    
+    /** @return List of the values. */
+    private static List<Integer> list(final Integer... values) {
+        final List<Integer> list = new ArrayList<Integer>();
+        Collections.addAll(list, values);
+        return list;
+    }
+    
+    /** Records the draws it is asked to issue. */
+    private static final class RecordingCommand implements DrawCommand {
+        /** Matrix of the last draw. */
+        private final float[] lastMatrix = new float[Constants.MATRIX_SIZE];
+        
+        /** Tags of the draws. */
+        private final List<Integer> tags = new ArrayList<Integer>();
+        
+        @Override
+        public void draw(final int tag, final float[] matrix, final int offset) {
+            System.arraycopy(matrix, offset, lastMatrix, 0, Constants.MATRIX_SIZE);
+            tags.add(tag);
+        }
+    }
+}
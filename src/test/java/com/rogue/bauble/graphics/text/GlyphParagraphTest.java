@@ -0,0 +1,97 @@
+package com.rogue.bauble.graphics.text;
+
+import com.rogue.bauble.graphics.MVP;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for GlyphParagraph class.
+ * 
+ * @author R. Matt McCann
+ */
+public class GlyphParagraphTest {
+    /** Width of the wrapped lines, in characters of the fake glyph strings. */
+    private static final float MAX_WIDTH = 5.0f;
+    
+    /** Paragraph under test, measuring with fake glyph strings. */
+    private GlyphParagraph paragraph;
+    
+    @Before
+    public void setUp() {
+        paragraph = new GlyphParagraph(new GlyphString.GlyphStringFactory() {
+            @Override
+            public GlyphString create() {
+                return new FakeGlyphString();
+            }
+        });
+    }
+    
+    @Test
+    public void testWrapBreaksAtSpaces() {
+        assertEquals(list("hello", "world"), paragraph.wrap("hello world", MAX_WIDTH));
+        assertEquals(list("ab cd", "ef"), paragraph.wrap("ab cd ef", MAX_WIDTH));
+    }
+    
+    @Test
+    public void testWrapBreaksLongWords() {
+        assertEquals(list("abcde", "fghij", "kl"), paragraph.wrap("abcdefghijkl", MAX_WIDTH));
+        assertEquals(list("ab", "cdefg", "hi"), paragraph.wrap("ab cdefghi", MAX_WIDTH));
+    }
+    
+    @Test
+    public void testWrapEmptyLine() {
+        assertEquals(list(""), paragraph.wrap("", MAX_WIDTH));
+    }
+    
+    @Test
+    public void testWrapKeepsFittingLine() {
+        assertEquals(list("ab cd"), paragraph.wrap("ab cd", MAX_WIDTH));
+    }
+    
+    @Test
+    public void testWrapNarrowerThanCharacter() {
+        assertEquals(list("a", "b"), paragraph.wrap("ab", 0.5f));
+    }
+    
+    @Test
+    public void testWrapSpacesOnly() {
+        assertEquals(list("   "), paragraph.wrap("   ", MAX_WIDTH));
+        
+        final List<String> wrapped = paragraph.wrap("            ", MAX_WIDTH);
+        assertEquals(1, wrapped.size());
+        assertTrue(wrapped.get(0).length() <= MAX_WIDTH);
+    }
+    
+    /** @return List of the values. */
+    private static List<String> list(final String... values) {
+        final List<String> list = new ArrayList<String>();
+        Collections.addAll(list, values);
+        return list;
+    }
+    
+    /** Glyph string measuring each character as one line height wide. */
+    private static final class FakeGlyphString extends GlyphString {
+        @Override
+        public void delete() { }
+        
+        @Override
+        public float getWidth() {
+            return getHeight() * getText().length();
+        }
+        
+        @Override
+        public float measure(final CharSequence text, final int start, final int end) {
+            return end - start;
+        }
+        
+        @Override
+        public void render(final MVP mvp) { }
+        
+        @Override
+        protected void updateRendering() { }
+    }
+}
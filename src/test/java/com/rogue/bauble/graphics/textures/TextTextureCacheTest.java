@@ -0,0 +1,175 @@
+package com.rogue.bauble.graphics.textures;
+
+import android.graphics.Bitmap;
+import android.graphics.Paint;
+import com.rogue.bauble.graphics.shaders.ShaderRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for TextTextureCache class.
+ * 
+ * @author R. Matt McCann
+ */
+public class TextTextureCacheTest {
+    /** Size of every texture loaded by the cache under test in bytes. */
+    private static final long TEXTURE_BYTES = 100;
+    
+    /** Receives the aspect ratio of acquired textures. */
+    private final float[] aspectRatio = new float[1];
+    
+    /** Cache under test, loading fake textures. */
+    private FakeTextTextureCache cache;
+    
+    @Before
+    public void setUp() {
+        cache = new FakeTextTextureCache();
+    }
+    
+    /** @return Handle of the acquired texture of the text. */
+    private int acquire(final String text) {
+        return cache.acquire(text, Paint.Align.CENTER, 20.0f, aspectRatio);
+    }
+    
+    @Test
+    public void testAcquireSharesSameText() {
+        final int first = acquire("OK");
+        final int second = acquire("OK");
+        
+        assertEquals(first, second);
+        assertEquals(1, cache.loaded.size());
+        assertEquals(1, cache.getNumHits());
+        assertEquals(1, cache.getNumMisses());
+        assertEquals(2.0f, aspectRatio[0], 0.0f);
+    }
+    
+    @Test
+    public void testAcquireKeysByAlignAndFontSize() {
+        final int centered = acquire("OK");
+        final int left = cache.acquire("OK", Paint.Align.LEFT, 20.0f, aspectRatio);
+        final int larger = cache.acquire("OK", Paint.Align.CENTER, 30.0f, aspectRatio);
+        
+        assertTrue(centered != left);
+        assertTrue(centered != larger);
+        assertEquals(3, cache.getNumTextures());
+    }
+    
+    @Test
+    public void testContains() {
+        assertFalse(cache.contains("OK", Paint.Align.CENTER, 20.0f));
+        acquire("OK");
+        assertTrue(cache.contains("OK", Paint.Align.CENTER, 20.0f));
+        assertFalse(cache.contains("OK", Paint.Align.CENTER, 30.0f));
+    }
+    
+    @Test
+    public void testLeastRecentlyReleasedDeletedFirst() {
+        cache.setBudget(2 * TEXTURE_BYTES);
+        final int a = acquire("A");
+        final int b = acquire("B");
+        final int c = acquire("C");
+        
+        cache.release(b);
+        cache.release(a);
+        assertTrue(cache.deleted.isEmpty());
+        
+        cache.release(c);
+        assertEquals(list(b), cache.deleted);
+        assertTrue(cache.contains("A", Paint.Align.CENTER, 20.0f));
+        assertTrue(cache.contains("C", Paint.Align.CENTER, 20.0f));
+    }
+    
+    @Test
+    public void testReacquireTakesTextureOutOfBudget() {
+        cache.setBudget(TEXTURE_BYTES + TEXTURE_BYTES / 2);
+        final int a = acquire("A");
+        final int b = acquire("B");
+        
+        cache.release(a);
+        assertEquals(a, acquire("A")); // Served from the unreferenced textures
+        cache.release(b);
+        assertTrue(cache.deleted.isEmpty());
+        
+        cache.release(a);
+        assertEquals(list(b), cache.deleted);
+    }
+    
+    @Test
+    public void testReferencedTexturesNeverDeleted() {
+        cache.setBudget(0);
+        final int a = acquire("A");
+        acquire("A");
+        
+        cache.release(a);
+        assertTrue(cache.deleted.isEmpty());
+        
+        cache.release(a);
+        assertEquals(list(a), cache.deleted);
+        assertEquals(0, cache.getNumTextures());
+    }
+    
+    @Test
+    public void testReleaseUnknownIgnored() {
+        cache.setBudget(0);
+        final int a = acquire("A");
+        
+        cache.release(a + 1000);
+        cache.release(a);
+        cache.release(a);
+        assertEquals(list(a), cache.deleted);
+    }
+    
+    @Test
+    public void testSetBudgetDefersDeletes() {
+        final int a = acquire("A");
+        final int b = acquire("B");
+        cache.release(a);
+        cache.release(b);
+        
+        cache.setBudget(0);
+        assertTrue(cache.deleted.isEmpty());
+        assertEquals(0, cache.getBudget());
+        
+        final int c = acquire("C");
+        cache.release(c);
+        assertEquals(list(a, b, c), cache.deleted);
+    }
+    
+    /** @return List of the values. */
+    private static List<Integer> list(final int... values) {
+        final List<Integer> list = new ArrayList<Integer>();
+        for (int value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+    
+    /** Cache loading fake textures, recording the loads and deletes instead of touching GL. */
+    private static final class FakeTextTextureCache extends TextTextureCache {
+        /** Handles of the deleted textures, in order. */
+        private final List<Integer> deleted = new ArrayList<Integer>();
+        
+        /** Handles of the loaded textures, in order. */
+        private final List<Integer> loaded = new ArrayList<Integer>();
+        
+        FakeTextTextureCache() {
+            super(new TextureFactory(null, new ShaderRegistry()));
+        }
+        
+        @Override
+        void delete(final int handle) {
+            deleted.add(handle);
+        }
+        
+        @Override
+        Entry load(final Key key, final Bitmap image) {
+            final int handle = loaded.size() + 1;
+            loaded.add(handle);
+            
+            return new Entry(key, handle, 2.0f, TEXTURE_BYTES);
+        }
+    }
+}
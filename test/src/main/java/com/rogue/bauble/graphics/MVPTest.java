@@ -0,0 +1,165 @@
+package com.rogue.bauble.graphics;
+
+import android.opengl.Matrix;
+import com.rogue.bauble.misc.Constants;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for MVP class. Runs on the device, as MVP multiplies its
+ * matrices with android.opengl.Matrix.
+ * 
+ * @author R. Matt McCann
+ */
+public class MVPTest extends TestCase {
+    /** Tolerance of the float comparisons. */
+    private static final float EPSILON = 1e-5f;
+    
+    /** Model-View-Projection matrices under test. */
+    private MVP mvp;
+    
+    /** Projection pushed onto the projection stack. */
+    private final float[] projection = new float[Constants.MATRIX_SIZE];
+    
+    @Override
+    protected void setUp() {
+        mvp = new MVP();
+        
+        Matrix.setIdentityM(projection, 0);
+        Matrix.scaleM(projection, 0, 0.5f, 2.0f, 1.0f);
+        Matrix.translateM(projection, 0, 1.0f, -1.0f, 0.0f);
+        mvp.pushP(projection);
+    }
+    
+    /** @return Product of the projection and the matrix on top of the model-view stack. */
+    private float[] expectedTop() {
+        final float[] expected = new float[Constants.MATRIX_SIZE];
+        Matrix.multiplyMM(expected, 0, mvp.getArena(), mvp.topP(), mvp.getArena(), mvp.topM());
+        return expected;
+    }
+    
+    /** Asserts the matrices are equal within EPSILON. */
+    private static void assertMatrixEquals(final float[] expected, final float[] actual, final float epsilon) {
+        for (int iter = 0; iter < Constants.MATRIX_SIZE; iter++) {
+            assertEquals("Element " + iter, expected[iter], actual[iter], epsilon);
+        }
+    }
+    
+    /** @return Copy of the collapsed matrix at the arena offset. */
+    private float[] copyOf(final int offset) {
+        final float[] copy = new float[Constants.MATRIX_SIZE];
+        System.arraycopy(mvp.getArena(), offset, copy, 0, Constants.MATRIX_SIZE);
+        return copy;
+    }
+    
+    public void testCollapseTop() {
+        Matrix.translateM(mvp.getArena(), mvp.pushM(), 3.0f, 4.0f, 0.0f);
+        
+        assertMatrixEquals(expectedTop(), copyOf(mvp.collapseTop()), EPSILON);
+    }
+    
+    public void testCollapseTopNoticesInPlaceEdits() {
+        final int modelSpace = mvp.pushM();
+        final float[] arena = mvp.getArena();
+        Matrix.translateM(arena, modelSpace, 3.0f, 4.0f, 0.0f);
+        mvp.collapseTop();
+        
+        // Edit the collapsed level without invalidating it
+        Matrix.scaleM(arena, modelSpace, 2.0f, 5.0f, 1.0f);
+        
+        assertMatrixEquals(expectedTop(), copyOf(mvp.collapseTop()), EPSILON);
+    }
+    
+    public void testCollapseTopAfterDrop() {
+        Matrix.translateM(mvp.getArena(), mvp.pushM(), 3.0f, 4.0f, 0.0f);
+        final float[] parent = copyOf(mvp.collapseTop());
+        
+        Matrix.scaleM(mvp.getArena(), mvp.pushM(), 2.0f, 2.0f, 1.0f);
+        mvp.collapseTop();
+        mvp.dropM();
+        
+        assertMatrixEquals(parent, copyOf(mvp.collapseTop()), EPSILON);
+    }
+    
+    public void testCollapseTopAfterProjectionChange() {
+        Matrix.translateM(mvp.getArena(), mvp.pushM(), 3.0f, 4.0f, 0.0f);
+        mvp.collapseTop();
+        
+        final float[] otherProjection = new float[Constants.MATRIX_SIZE];
+        Matrix.orthoM(otherProjection, 0, -2, 2, -1, 1, -1, 1);
+        mvp.pushP(otherProjection);
+        assertMatrixEquals(expectedTop(), copyOf(mvp.collapseTop()), EPSILON);
+        
+        mvp.dropP();
+        assertMatrixEquals(expectedTop(), copyOf(mvp.collapseTop()), EPSILON);
+    }
+    
+    public void testCollapseTopNoticesInPlaceProjectionEdits() {
+        Matrix.translateM(mvp.getArena(), mvp.pushM(), 3.0f, 4.0f, 0.0f);
+        mvp.collapseTop();
+        
+        // Edit the projection without pushing or setting it
+        Matrix.scaleM(mvp.getArena(), mvp.topP(), 3.0f, 0.25f, 1.0f);
+        
+        assertMatrixEquals(expectedTop(), copyOf(mvp.collapseTop()), EPSILON);
+    }
+    
+    public void testPushAffineAfterProjectionEdited() {
+        Matrix.translateM(mvp.getArena(), mvp.pushM(), 3.0f, 4.0f, 0.0f);
+        mvp.collapseTop();
+        
+        Matrix.translateM(mvp.getArena(), mvp.topP(), -1.0f, 0.5f, 0.0f);
+        mvp.pushM(new Affine2D().rotate(90));
+        
+        assertMatrixEquals(expectedTop(), copyOf(mvp.collapseTop()), EPSILON);
+    }
+    
+    public void testPushAffineExtendsCollapsedParent() {
+        Matrix.translateM(mvp.getArena(), mvp.pushM(), 3.0f, 4.0f, 0.0f);
+        mvp.collapseTop();
+        
+        mvp.pushM(new Affine2D().translate(1, 2).rotate(30).scale(2, 3));
+        
+        assertMatrixEquals(expectedTop(), copyOf(mvp.collapseTop()), EPSILON);
+    }
+    
+    public void testPushAffineAfterParentEdited() {
+        final int modelSpace = mvp.pushM();
+        Matrix.translateM(mvp.getArena(), modelSpace, 3.0f, 4.0f, 0.0f);
+        mvp.collapseTop();
+        
+        // Edit the collapsed parent without invalidating it before pushing
+        Matrix.scaleM(mvp.getArena(), modelSpace, 0.5f, 0.5f, 1.0f);
+        mvp.pushM(new Affine2D().rotate(90));
+        
+        assertMatrixEquals(expectedTop(), copyOf(mvp.collapseTop()), EPSILON);
+    }
+    
+    public void testCollapseTopInverse() {
+        mvp.pushM(new Affine2D().translate(0.25f, -0.5f).rotate(45).scale(0.5f, 2.0f));
+        final float[] collapsed = copyOf(mvp.collapseTop());
+        
+        // Map an object space point to screen space, and back
+        final float x = collapsed[0] * 0.3f + collapsed[4] * -0.2f + collapsed[12];
+        final float y = collapsed[1] * 0.3f + collapsed[5] * -0.2f + collapsed[13];
+        final Affine2D inverse = mvp.collapseTopInverse();
+        
+        assertNotNull(inverse);
+        assertEquals(0.3f, inverse.mapX(x, y), EPSILON);
+        assertEquals(-0.2f, inverse.mapY(x, y), EPSILON);
+    }
+    
+    public void testCollapseTopInverseAfterInPlaceEdit() {
+        final int modelSpace = mvp.pushM();
+        assertNotNull(mvp.collapseTopInverse());
+        
+        Matrix.scaleM(mvp.getArena(), modelSpace, 0.0f, 1.0f, 1.0f);
+        
+        assertNull(mvp.collapseTopInverse());
+    }
+    
+    public void testCollapseTopInverseSingular() {
+        mvp.pushM(new Affine2D().scale(0, 1));
+        
+        assertNull(mvp.collapseTopInverse());
+    }
+}
@@ -16,6 +16,10 @@ public class TestGlyphString extends GlyphString {
     @Override
     public float getWidth() { return 1; }
 
+    /** {@inheritDocs} */
+    @Override
+    public float measure(CharSequence text, int start, int end) { return end - start; }
+    
     /** {@inheritDocs} */
     @Override
     protected void updateRendering() { }